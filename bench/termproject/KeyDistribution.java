@@ -0,0 +1,136 @@
+package termproject;
+
+import java.util.Random;
+
+/**
+ * Title:        Term Project 2-4 Trees
+ * Description:  Key sequences used by the benchmarks.  Every distribution
+ *               produces pre-boxed Integer keys, so boxing never shows up in
+ *               a measured loop.
+ * @version 1.0
+ */
+
+public enum KeyDistribution {
+
+        // 0, 1, 2, ... in order; looked up in the same order
+    SEQUENTIAL {
+        Integer[] keys(int count, long seed) {
+            Integer[] keys = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = Integer.valueOf(i);
+            }
+            return keys;
+        }
+        Integer[] probes(Integer[] keys, long seed) {
+            return keys.clone();
+        }
+    },
+        // uniform over the whole int range
+    RANDOM {
+        Integer[] keys(int count, long seed) {
+            Random rand = new Random(seed);
+            Integer[] keys = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = Integer.valueOf(rand.nextInt());
+            }
+            return keys;
+        }
+    },
+        // Zipfian over count distinct keys, skew 0.99, scattered over the
+        // int range so hot keys are not neighbours in the tree; lookups are
+        // a second sample, so they hit the hot keys just as often
+    ZIPFIAN {
+        Integer[] keys(int count, long seed) {
+            Random rand = new Random(seed);
+            ZipfianGenerator zipf = new ZipfianGenerator(count, 0.99);
+            Integer[] keys = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = Integer.valueOf(scatter(zipf.next(rand)));
+            }
+            return keys;
+        }
+        Integer[] probes(Integer[] keys, long seed) {
+            return keys(keys.length, seed);
+        }
+    },
+        // about ten copies of every key, like the second test in
+        // TwoFourTree.main
+    DUPLICATES {
+        Integer[] keys(int count, long seed) {
+            Random rand = new Random(seed);
+            int distinct = Math.max(1, count / 10);
+            Integer[] keys = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = Integer.valueOf(rand.nextInt(distinct));
+            }
+            return keys;
+        }
+    };
+
+        // count keys, the same ones for the same seed
+    abstract Integer[] keys(int count, long seed);
+
+        // keys to look up in a tree built from keys; by default the same
+        // keys in random order, so every lookup is a hit
+    Integer[] probes(Integer[] keys, long seed) {
+        Integer[] probes = keys.clone();
+        shuffle(probes, new Random(seed));
+        return probes;
+    }
+
+    static void shuffle(Object[] array, Random rand) {
+        for (int i = array.length - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            Object swap = array[i];
+            array[i] = array[j];
+            array[j] = swap;
+        }
+    }
+
+        // spreads rank r over the int range without collisions
+    static int scatter(long rank) {
+        return (int) (rank * 0x9E3779B1L);
+    }
+
+    /**
+     * Zipfian rank generator after Gray et al., "Quickly Generating
+     * Billion-Record Synthetic Databases"; O(n) setup, O(1) per sample
+     */
+    static final class ZipfianGenerator {
+        private final long items;
+        private final double theta;
+        private final double alpha;
+        private final double zetan;
+        private final double eta;
+
+        ZipfianGenerator(long items, double theta) {
+            this.items = items;
+            this.theta = theta;
+            double zeta2 = zeta(2, theta);
+            this.alpha = 1.0 / (1.0 - theta);
+            this.zetan = zeta(items, theta);
+            this.eta = (1 - Math.pow(2.0 / items, 1 - theta))
+                       / (1 - zeta2 / zetan);
+        }
+
+        private static double zeta(long n, double theta) {
+            double sum = 0;
+            for (long i = 0; i < n; i++) {
+                sum += 1 / Math.pow(i + 1, theta);
+            }
+            return sum;
+        }
+
+        long next(Random rand) {
+            double u = rand.nextDouble();
+            double uz = u * zetan;
+            if (uz < 1.0) {
+                return 0;
+            }
+            if (uz < 1.0 + Math.pow(0.5, theta)) {
+                return 1;
+            }
+            return (long) (items * Math.pow(eta * u - eta + 1, alpha));
+        }
+    }
+}
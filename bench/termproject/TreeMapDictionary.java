@@ -0,0 +1,46 @@
+package termproject;
+
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Title:        Term Project 2-4 Trees
+ * Description:  java.util.TreeMap behind the Dictionary interface, as the
+ *               baseline the benchmarks compare TwoFourTree against.
+ *               TreeMap keeps one entry per key, so duplicate inserts
+ *               overwrite instead of adding a second item.
+ * @version 1.0
+ */
+
+public class TreeMapDictionary implements Dictionary {
+
+    private TreeMap<Object, Object> map = new TreeMap<Object, Object>();
+
+    public int size() {
+        return map.size();
+    }
+
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    public Object findElement(Object key) {
+        return map.get(key);
+    }
+
+    public void insertElement(Object key, Object element) {
+        map.put(key, element);
+    }
+
+    public Object removeElement(Object key) throws ElementNotFoundException {
+        Object element = map.remove(key);
+        if (element == null) {
+            throw new ElementNotFoundException();
+        }
+        return element;
+    }
+
+    public Set<Object> keys() {
+        return map.keySet();
+    }
+}
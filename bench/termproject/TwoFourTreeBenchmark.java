@@ -0,0 +1,259 @@
+package termproject;
+
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Title:        Term Project 2-4 Trees
+ * Description:  JMH benchmarks for the Dictionary operations of
+ *               TwoFourTree, with java.util.TreeMap as the baseline.  Run
+ *               with "ant bench"; pass JMH options through bench.args, e.g.
+ *               ant bench -Dbench.args="-p size=1000000 -p impl=TwoFourTree"
+ *
+ *               build   - insertElement of size keys into an empty tree
+ *               find    - findElement against a tree of size keys
+ *               drain   - removeElement of every distinct key
+ *
+ *               build and drain each work through a batch of
+ *               max(1, 100000 / size) dictionaries per operation, so
+ *               that an operation at a small size still takes long
+ *               enough to time; their scores are per batch.
+ *
+ *               scan    - in-order walk over every item, with a
+ *                         TwoFourTreeCursor, a TreeMap iterator or
+ *                         ShardedTwoFourTree.scan
+ *               ingest  - insertElement of random keys into a dictionary
+ *                         shared by all threads and emptied each iteration
+ *
+ *               find and ingest scale across threads with JMH's -t option;
+ *               only ConcurrentTwoFourTree and ShardedTwoFourTree are safe
+ *               to mix with writers.
+ * @version 1.0
+ */
+
+@Fork(1)
+@State(Scope.Benchmark)
+public class TwoFourTreeBenchmark {
+
+    private static final long SEED = 42;
+        // keys build and drain cover per operation, at the least
+    private static final int BATCH_KEYS = 100000;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN", "DUPLICATES"})
+    public KeyDistribution distribution;
+
+    @Param({"TwoFourTree", "TreeMap", "ConcurrentTwoFourTree",
+            "ShardedTwoFourTree"})
+    public String impl;
+
+        // node order for TwoFourTree; ignored by TreeMap
+    @Param({"4"})
+    public int order;
+
+    private Integer[] keys;
+    private Integer[] probes;
+    private Integer[] distinctKeys;
+    private Dictionary filled;
+
+    @Setup(Level.Trial)
+    public void setUpKeys() {
+        keys = distribution.keys(size, SEED);
+        probes = distribution.probes(keys, SEED + 1);
+
+        LinkedHashSet<Integer> distinct = new LinkedHashSet<Integer>();
+        for (int i = 0; i < keys.length; i++) {
+            distinct.add(keys[i]);
+        }
+        distinctKeys = distinct.toArray(new Integer[distinct.size()]);
+        KeyDistribution.shuffle(distinctKeys, new Random(SEED + 2));
+
+        filled = fill(newDictionary());
+    }
+
+    private Dictionary newDictionary() {
+        if ("TreeMap".equals(impl)) {
+            return new TreeMapDictionary();
+        }
+        if ("ConcurrentTwoFourTree".equals(impl)) {
+            return new ConcurrentTwoFourTree(new IntegerComparator(), order);
+        }
+        if ("ShardedTwoFourTree".equals(impl)) {
+            return new ShardedTwoFourTree(new IntegerComparator());
+        }
+        return new TwoFourTree(new IntegerComparator(), order);
+    }
+
+    private int batch() {
+        return Math.max(1, BATCH_KEYS / size);
+    }
+
+    private Dictionary fill(Dictionary dict) {
+        for (int i = 0; i < keys.length; i++) {
+            dict.insertElement(keys[i], keys[i]);
+        }
+        return dict;
+    }
+
+    /**
+     * Per-thread position in the probe sequence for find
+     */
+    @State(Scope.Thread)
+    public static class Probe {
+        int next;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public Object find(Probe probe) {
+        int index = probe.next;
+        probe.next = (index + 1 == probes.length) ? 0 : index + 1;
+        return filled.findElement(probes[index]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public long scan() {
+        long sum = 0;
+        if (filled instanceof TreeMapDictionary) {
+            for (Object key : ((TreeMapDictionary) filled).keys()) {
+                sum += ((Integer) key).intValue();
+            }
+            return sum;
+        }
+        if (filled instanceof ShardedTwoFourTree) {
+            final long[] total = new long[1];
+            ((ShardedTwoFourTree) filled).scan(null, null, new EntryVisitor() {
+                public boolean visit(Object key, Object element) {
+                    total[0] += ((Integer) key).intValue();
+                    return true;
+                }
+            });
+            return total[0];
+        }
+            // ConcurrentTwoFourTree has no cursor, so there is nothing to scan
+        if (!(filled instanceof TwoFourTree)) {
+            return sum;
+        }
+        TwoFourTreeCursor cursor = ((TwoFourTree) filled).cursor();
+        for (boolean valid = cursor.first(); valid; valid = cursor.next()) {
+            sum += ((Integer) cursor.key()).intValue();
+        }
+        return sum;
+    }
+
+    /**
+     * Fresh empty dictionaries for every build.  Setting up per
+     * invocation is safe here because the batch keeps each invocation in
+     * the milliseconds.
+     */
+    @State(Scope.Thread)
+    public static class Empty {
+        Dictionary[] dicts;
+
+        @Setup(Level.Invocation)
+        public void setUp(TwoFourTreeBenchmark bench) {
+            dicts = new Dictionary[bench.batch()];
+            for (int i = 0; i < dicts.length; i++) {
+                dicts[i] = bench.newDictionary();
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public Dictionary[] build(Empty empty) {
+        Dictionary[] dicts = empty.dicts;
+        for (int i = 0; i < dicts.length; i++) {
+            fill(dicts[i]);
+        }
+        return dicts;
+    }
+
+    /**
+     * Freshly filled dictionaries for every drain
+     */
+    @State(Scope.Thread)
+    public static class Full {
+        Dictionary[] dicts;
+
+        @Setup(Level.Invocation)
+        public void setUp(TwoFourTreeBenchmark bench) {
+            dicts = new Dictionary[bench.batch()];
+            for (int i = 0; i < dicts.length; i++) {
+                dicts[i] = bench.fill(bench.newDictionary());
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public Dictionary[] drain(Full full) {
+        Dictionary[] dicts = full.dicts;
+        for (int j = 0; j < dicts.length; j++) {
+            for (int i = 0; i < distinctKeys.length; i++) {
+                dicts[j].removeElement(distinctKeys[i]);
+            }
+        }
+        return dicts;
+    }
+
+    /**
+     * Dictionary that all threads insert into, emptied each iteration
+     */
+    @State(Scope.Benchmark)
+    public static class Shared {
+        Dictionary dict;
+
+        @Setup(Level.Iteration)
+        public void setUp(TwoFourTreeBenchmark bench) {
+            dict = bench.newDictionary();
+        }
+    }
+
+    /**
+     * Per-thread source of keys for ingest
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+        Random random = new Random(SEED + Thread.currentThread().getId());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void ingest(Shared shared, Writer writer) {
+        Integer key = Integer.valueOf(writer.random.nextInt());
+        shared.dict.insertElement(key, key);
+    }
+}
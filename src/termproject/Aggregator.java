@@ -0,0 +1,21 @@
+package termproject;
+
+/**
+ * Title:        Term Project 2-4 Trees
+ * Description:  Summarizes the items of a TwoFourTree, so that a tree can
+ *               keep a summary of every subtree and answer a range query
+ *               from a few of them.  combine() must be associative, and
+ *               identity() must leave any value unchanged when combined
+ *               with it on either side; combine() need not be commutative,
+ *               since values are always combined in key order.
+ * @version 1.0
+ */
+
+public interface Aggregator {
+
+    public Object identity ();
+
+    public Object valueOf (Object key, Object element);
+
+    public Object combine (Object left, Object right);
+}
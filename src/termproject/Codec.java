@@ -0,0 +1,20 @@
+package termproject;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Title:        Term Project 2-4 Trees
+ * Description:  Turns keys or elements into bytes and back, for the classes
+ *               that write a tree out to a file.  read() must take exactly
+ *               the bytes that write() produced.
+ * @version 1.0
+ */
+
+public interface Codec {
+
+    public void write (DataOutput out, Object obj) throws IOException;
+
+    public Object read (DataInput in) throws IOException;
+}
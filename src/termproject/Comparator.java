@@ -11,6 +11,14 @@ package termproject;
 
 public interface Comparator {
 
+    /**
+     * Three-way comparison; lets a caller learn less, equal or greater from
+     * a single call instead of chaining the boolean tests below
+     * @return negative, zero or positive as obj1 is less than, equal to or
+     * greater than obj2
+     */
+    public int compare (Object obj1, Object obj2);
+
     public boolean isLessThan (Object obj1, Object obj2);
 
     public boolean isLessThanOrEqualTo (Object obj1, Object obj2);
@@ -0,0 +1,80 @@
+package termproject;
+
+/**
+ * Title:        Term Project 2-4 Trees
+ * Description:  Adapts a java.util.Comparator, or the natural ordering of
+ *               Comparable keys, to the termproject.Comparator interface.
+ *               Every test is answered from one call to compare().
+ * @version 1.0
+ */
+
+public class ComparatorAdapter implements Comparator {
+
+    private java.util.Comparator<Object> comp;
+
+        // uses the natural ordering of keys, which must be Comparable
+    public ComparatorAdapter() {
+        this (null);
+    }
+
+        // comp is only ever handed keys of the type it was written for,
+        // those of the tree it orders
+    @SuppressWarnings("unchecked")
+    public ComparatorAdapter(java.util.Comparator<?> comp) {
+        this.comp = (java.util.Comparator<Object>) comp;
+    }
+
+    @SuppressWarnings("unchecked")
+    public int compare (Object obj1, Object obj2) {
+        if (comp != null) {
+            return comp.compare (obj1, obj2);
+        }
+        try {
+            return ((Comparable) obj1).compareTo (obj2);
+        }
+        catch (ClassCastException exc) {
+            throw new TwoFourTreeException ("Object not comparable");
+        }
+    }
+
+    public boolean isLessThan (Object obj1, Object obj2) {
+        return ( compare (obj1, obj2) < 0 );
+    }
+
+    public boolean isLessThanOrEqualTo (Object obj1, Object obj2) {
+        return ( compare (obj1, obj2) <= 0 );
+    }
+
+    public boolean isGreaterThan (Object obj1, Object obj2) {
+        return ( compare (obj1, obj2) > 0 );
+    }
+
+    public boolean isGreaterThanOrEqualTo (Object obj1, Object obj2) {
+        return ( compare (obj1, obj2) >= 0 );
+    }
+
+    public boolean isEqual (Object obj1, Object obj2) {
+        return ( compare (obj1, obj2) == 0 );
+    }
+
+    public boolean isComparable (Object obj) {
+        if (comp != null) {
+            return (obj != null);
+        }
+        return (obj instanceof Comparable);
+    }
+
+        // adapters of equal comparators, or both of the natural ordering,
+        // order keys the same way
+    public boolean equals (Object obj) {
+        if (!(obj instanceof ComparatorAdapter)) {
+            return false;
+        }
+        java.util.Comparator<Object> other = ((ComparatorAdapter) obj).comp;
+        return (comp == null ? other == null : comp.equals (other));
+    }
+
+    public int hashCode () {
+        return (comp == null ? 0 : comp.hashCode ());
+    }
+}
@@ -0,0 +1,187 @@
+package termproject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Basic storage element for the ConcurrentTwoFourTree
+ *
+ * @version 1.0
+ * Description: The node for a ConcurrentTwoFourTree.  Items and children sit
+ * in atomic arrays so readers can look at a node while a writer changes it;
+ * they then check the node's version to find out whether what they saw was
+ * consistent.  Unlike TFNode there is no spare slot: the tree splits full
+ * nodes before it descends into them, so a node never holds more than
+ * maxItems items, and there are no parent pointers.
+ */
+
+public class ConcurrentTFNode {
+
+        // the version word: bit 0 is set once the node has been unlinked
+        // from the tree, bit 1 while a writer holds the node, and the rest
+        // counts the changes made to it
+    public static final long OBSOLETE = 1;
+    public static final long LOCKED = 2;
+        // returned by readLock() when the caller has to start over
+    public static final long RESTART = -1;
+
+    private final AtomicLong version = new AtomicLong();
+    private final int maxItems;
+    private final boolean leaf;
+    private volatile int numItems = 0;
+    private final AtomicReferenceArray<Item> nodeItems;
+    private final AtomicReferenceArray<ConcurrentTFNode> nodeChildren;
+
+    public ConcurrentTFNode(int maxItems, boolean leaf) {
+        if (maxItems < 2)
+            throw new TFNodeException();
+        this.maxItems = maxItems;
+        this.leaf = leaf;
+        nodeItems = new AtomicReferenceArray<Item>(maxItems);
+        nodeChildren = leaf ? null
+                            : new AtomicReferenceArray<ConcurrentTFNode>(maxItems+1);
+    }
+
+        // waits out a writer and returns the version to validate against
+        // later, or RESTART if the node is no longer in the tree
+    public long readLock() {
+        long current = version.get();
+        while ((current & LOCKED) != 0) {
+            Thread.yield();
+            current = version.get();
+        }
+        return ((current & OBSOLETE) != 0) ? RESTART : current;
+    }
+        // true if nothing has changed since readLock() returned current
+    public boolean validate(long current) {
+        return (version.get() == current);
+    }
+        // takes the lock if the node is still at the version read; never
+        // waits, so a writer holding other locks cannot deadlock here
+    public boolean upgrade(long current) {
+        return version.compareAndSet(current, current + LOCKED);
+    }
+        // takes the lock if the node is free and still in the tree
+    public boolean tryLock() {
+        long current = version.get();
+        if ((current & (LOCKED | OBSOLETE)) != 0)
+            return false;
+        return upgrade(current);
+    }
+    public void unlock() {
+        version.addAndGet(LOCKED);
+    }
+        // releases the lock on a node that has just been unlinked
+    public void unlockObsolete() {
+        version.addAndGet(LOCKED + OBSOLETE);
+    }
+
+        // the count may be stale for a reader that has not validated yet,
+        // but never exceeds maxItems
+    public int getNumItems () {
+        return numItems;
+    }
+
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    public boolean isLeaf() {
+        return leaf;
+    }
+
+        // slots past the item count may be read while a writer shifts
+        // items; they hold null or a stale item
+    public Item getItem(int index) {
+        if ( (index < 0) || (index >= maxItems) )
+            throw new TFNodeException();
+        return nodeItems.get(index);
+    }
+    public void setItem(int index, Item data) {
+        if ( (index < 0) || (index > (numItems-1) ) )
+            throw new TFNodeException();
+        nodeItems.set(index, data);
+    }
+    public ConcurrentTFNode getChild (int index) {
+        if ( leaf || (index < 0) || (index > maxItems) )
+            throw new TFNodeException();
+        return nodeChildren.get(index);
+    }
+    public void setChild (int index, ConcurrentTFNode child) {
+        if ( leaf || (index < 0) || (index > numItems) )
+            throw new TFNodeException();
+        nodeChildren.set(index, child);
+    }
+
+        // inserts an item along with the child to its right; the child is
+        // ignored in a leaf
+    public void insertItem (int index, Item data, ConcurrentTFNode rightChild) {
+        if ( (index < 0) || (index > numItems) || (numItems == maxItems) )
+            throw new TFNodeException();
+        for (int ind=numItems; ind > index; ind--) {
+            nodeItems.set(ind, nodeItems.get(ind-1));
+        }
+        nodeItems.set(index, data);
+        if (!leaf) {
+            for (int ind=numItems+1; ind > index+1; ind--) {
+                nodeChildren.set(ind, nodeChildren.get(ind-1));
+            }
+            nodeChildren.set(index+1, rightChild);
+        }
+        numItems++;
+    }
+
+        // removes an item along with the child to its right
+    public Item removeItem (int index) {
+        if ( (index < 0) || (index > (numItems-1) ) )
+            throw new TFNodeException();
+        Item removedItem = nodeItems.get(index);
+        for (int ind=index; ind < numItems-1; ind++) {
+            nodeItems.set(ind, nodeItems.get(ind+1));
+        }
+        nodeItems.set(numItems-1, null);
+        if (!leaf) {
+            for (int ind=index+1; ind < numItems; ind++) {
+                nodeChildren.set(ind, nodeChildren.get(ind+1));
+            }
+            nodeChildren.set(numItems, null);
+        }
+        numItems--;
+        return removedItem;
+    }
+
+        // removes the first item along with the child to its left
+    public Item removeFirstItem () {
+        if (numItems == 0)
+            throw new TFNodeException();
+        if (!leaf) {
+            nodeChildren.set(0, nodeChildren.get(1));
+        }
+        return removeItem(0);
+    }
+
+        // moves the items after index, and the children to their left and
+        // right, into a new node; the item at index is dropped from this
+        // node and left to the caller
+    public ConcurrentTFNode splitAt (int index) {
+        if ( (index < 0) || (index > (numItems-1) ) )
+            throw new TFNodeException();
+        ConcurrentTFNode rightNode = new ConcurrentTFNode(maxItems, leaf);
+        for (int ind=index+1; ind < numItems; ind++) {
+            rightNode.nodeItems.set(ind-index-1, nodeItems.get(ind));
+            nodeItems.set(ind, null);
+            if (!leaf) {
+                rightNode.nodeChildren.set(ind-index-1, nodeChildren.get(ind));
+                nodeChildren.set(ind, null);
+            }
+        }
+        if (!leaf) {
+            rightNode.nodeChildren.set(numItems-index-1, nodeChildren.get(numItems));
+            nodeChildren.set(numItems, null);
+        }
+        rightNode.numItems = numItems-index-1;
+        nodeItems.set(index, null);
+        numItems = index;
+        return rightNode;
+    }
+}
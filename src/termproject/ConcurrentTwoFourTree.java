@@ -0,0 +1,666 @@
+package termproject;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class implements a thread-safe (2,4)-Tree using the Dictionary
+ * interface.
+ *
+ * Title: Term Project 2-4 Trees
+ * @version 1.0
+ * File: ConcurrentTwoFourTree.java
+ * Description: A B-tree that any number of threads may use at once, built on
+ * optimistic lock coupling. Every ConcurrentTFNode carries a version; readers
+ * take no locks, but read a node's version before looking at it and check
+ * it again before trusting what they saw or moving on to a child, starting
+ * over from the root if it changed. Writers lock only the nodes they change,
+ * by moving them on from the version they read.
+ *
+ * To keep those nodes few, all restructuring happens on the way down:
+ * insertElement() splits every full node before descending into it, and
+ * removeElement() tops up every node holding the minimum before descending
+ * into it, by a transfer from a sibling or a fusion with one. The item
+ * itself then goes into or out of a leaf that has room, and nothing ever
+ * propagates back up. After each split or top-up the operation starts over,
+ * so a writer holds at most four locks, all taken without waiting; a failed
+ * attempt just starts over, which rules out deadlock.
+ *
+ * Splitting ahead of time needs an even order (4 gives the 2-4 tree), so a
+ * full node splits into two halves that are both legal. Duplicate keys are
+ * handled the same way as in TwoFourTree.
+ */
+
+public class ConcurrentTwoFourTree implements Dictionary {
+
+    // Variable declaration
+    private static final int DEFAULT_ORDER = 4;
+    // Nodes with more items than this are searched by bisection
+    private static final int LINEAR_SEARCH_ITEMS = 8;
+    // Returned by findIndex when a node changed under the reader
+    private static final int RESTART_INDEX = Integer.MIN_VALUE;
+    private final Comparator treeComp;
+    private final AtomicInteger size = new AtomicInteger();
+    // Never null; an empty tree is an empty leaf
+    private final AtomicReference<ConcurrentTFNode> treeRoot;
+    private final int maxItems;
+    private final int minItems;
+
+    /**
+     * Constructor
+     * @param comp
+     */
+    public ConcurrentTwoFourTree(Comparator comp) {
+        this(comp, DEFAULT_ORDER);
+    }
+
+    /**
+     * Constructor for a B-tree of the given order
+     * @param comp
+     * @param order most children a node may have; even and at least 4
+     */
+    public ConcurrentTwoFourTree(Comparator comp, int order) {
+        if (order < 4 || order % 2 != 0) {
+            throw new TwoFourTreeException("Order must be even and at least 4");
+        }
+        treeComp = comp;
+        maxItems = order - 1;
+        minItems = order / 2 - 1;
+        treeRoot = new AtomicReference<ConcurrentTFNode>(
+                new ConcurrentTFNode(maxItems, true));
+    }
+
+    /**
+     * Returns size of the tree
+     * @return size of the tree
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns true is the tree has no elements in it
+     * @return true is size is zero
+     */
+    public boolean isEmpty() {
+        return (size() == 0);
+    }
+
+    /**
+     * Searches dictionary to determine if key is present
+     * @param key to be searched for
+     * @return object corresponding to key; null if not found
+     */
+    public Object findElement(Object key) {
+        restart:
+        while (true) {
+            ConcurrentTFNode node = treeRoot.get();
+            long version = node.readLock();
+            if (version == ConcurrentTFNode.RESTART || node != treeRoot.get()) {
+                continue;
+            }
+
+            while (true) {
+                int index = findIndex(node, key);
+                if (index == RESTART_INDEX) {
+                    continue restart;
+                }
+
+                // Only trust a hit or a miss if the node held still
+                if (index >= 0) {
+                    Item foundItem = node.getItem(index);
+                    if (!node.validate(version)) {
+                        continue restart;
+                    }
+                    return foundItem.element();
+                }
+                if (node.isLeaf()) {
+                    if (!node.validate(version)) {
+                        continue restart;
+                    }
+                    return null;
+                }
+
+                // Read the child's version before checking that the pointer
+                // to it was still current
+                ConcurrentTFNode child = node.getChild(-index - 1);
+                if (child == null) {
+                    continue restart;
+                }
+                long childVersion = child.readLock();
+                if (childVersion == ConcurrentTFNode.RESTART
+                        || !node.validate(version)) {
+                    continue restart;
+                }
+                node = child;
+                version = childVersion;
+            }
+        }
+    }
+
+    /**
+     * Inserts provided element into the Dictionary
+     * @param key of object to be inserted
+     * @param element to be inserted
+     */
+    public void insertElement(Object key, Object element) {
+        Item newItem = new Item(key, element);
+        restart:
+        while (true) {
+            ConcurrentTFNode node = treeRoot.get();
+            long version = node.readLock();
+            if (version == ConcurrentTFNode.RESTART || node != treeRoot.get()) {
+                continue;
+            }
+            ConcurrentTFNode parent = null;
+            long parentVersion = 0;
+            int childIndex = 0;
+
+            while (true) {
+                // Split a full node before going into it, so the leaf has
+                // room and a split never has to go back up
+                if (node.getNumItems() == maxItems) {
+                    if (parent != null && !parent.upgrade(parentVersion)) {
+                        continue restart;
+                    }
+                    if (!node.upgrade(version)) {
+                        if (parent != null) {
+                            parent.unlock();
+                        }
+                        continue restart;
+                    }
+                    if (parent == null && treeRoot.get() != node) {
+                        node.unlock();
+                        continue restart;
+                    }
+                    split(node, parent, childIndex);
+                    node.unlock();
+                    if (parent != null) {
+                        parent.unlock();
+                    }
+                    continue restart;
+                }
+
+                int index = findIndex(node, key);
+                if (index == RESTART_INDEX) {
+                    continue restart;
+                }
+
+                // Put the item in the leaf, in front of any equal items
+                if (node.isLeaf()) {
+                    if (!node.upgrade(version)) {
+                        continue restart;
+                    }
+                    if (parent != null && !parent.validate(parentVersion)) {
+                        node.unlock();
+                        continue restart;
+                    }
+                    node.insertItem((index >= 0) ? index : -index - 1,
+                                    newItem, null);
+                    node.unlock();
+                    size.incrementAndGet();
+                    return;
+                }
+
+                // A tie at an inner node goes ahead of its inorder successor
+                int next = (index >= 0) ? index + 1 : -index - 1;
+                ConcurrentTFNode child = node.getChild(next);
+                if (child == null) {
+                    continue restart;
+                }
+                long childVersion = child.readLock();
+                if (childVersion == ConcurrentTFNode.RESTART
+                        || !node.validate(version)) {
+                    continue restart;
+                }
+                parent = node;
+                parentVersion = version;
+                childIndex = next;
+                node = child;
+                version = childVersion;
+            }
+        }
+    }
+
+    /**
+     * Searches dictionary to determine if key is present, then
+     * removes and returns corresponding object
+     * @param key of data to be removed
+     * @return object corresponding to key
+     * @exception ElementNotFoundException if the key is not in dictionary
+     */
+    public Object removeElement(Object key) throws ElementNotFoundException {
+        restart:
+        while (true) {
+            ConcurrentTFNode node = treeRoot.get();
+            long version = node.readLock();
+            if (version == ConcurrentTFNode.RESTART || node != treeRoot.get()) {
+                continue;
+            }
+            ConcurrentTFNode parent = null;
+            long parentVersion = 0;
+            // Inner node holding the key, once found; its item is replaced
+            // by the inorder successor taken from a leaf
+            ConcurrentTFNode found = null;
+            long foundVersion = 0;
+            int foundIndex = 0;
+
+            while (true) {
+                // Below the found item, follow the leftmost path
+                int index = -1;
+                if (found == null) {
+                    index = findIndex(node, key);
+                    if (index == RESTART_INDEX) {
+                        continue restart;
+                    }
+                }
+
+                if (node.isLeaf()) {
+                    if (found == null) {
+                        if (index < 0) {
+                            // Only the root leaf of an empty tree is empty
+                            boolean empty = (node.getNumItems() == 0);
+                            if (!node.validate(version)) {
+                                continue restart;
+                            }
+                            if (empty) {
+                                // As TwoFourTree does for an empty tree
+                                throw new TwoFourTreeException();
+                            }
+                            throw new ElementNotFoundException();
+                        }
+                        if (!node.upgrade(version)) {
+                            continue restart;
+                        }
+                        if (parent != null && !parent.validate(parentVersion)) {
+                            node.unlock();
+                            continue restart;
+                        }
+                        Item removedItem = node.removeItem(index);
+                        node.unlock();
+                        size.decrementAndGet();
+                        return removedItem.element();
+                    }
+
+                    // Move the inorder successor up over the removed item;
+                    // with both versions unchanged, this leaf is still the
+                    // leftmost one under it
+                    if (!found.upgrade(foundVersion)) {
+                        continue restart;
+                    }
+                    if (!node.upgrade(version)) {
+                        found.unlock();
+                        continue restart;
+                    }
+                    Item removedItem = found.getItem(foundIndex);
+                    found.setItem(foundIndex, node.removeItem(0));
+                    node.unlock();
+                    found.unlock();
+                    size.decrementAndGet();
+                    return removedItem.element();
+                }
+
+                int next;
+                if (found != null) {
+                    next = 0;
+                }
+                else if (index >= 0) {
+                    found = node;
+                    foundVersion = version;
+                    foundIndex = index;
+                    next = index + 1;
+                }
+                else {
+                    next = -index - 1;
+                }
+                ConcurrentTFNode child = node.getChild(next);
+                if (child == null) {
+                    continue restart;
+                }
+                long childVersion = child.readLock();
+                if (childVersion == ConcurrentTFNode.RESTART
+                        || !node.validate(version)) {
+                    continue restart;
+                }
+
+                // Give a child at the minimum an extra item before going
+                // into it, so the removal never has to fix anything above
+                if (child.getNumItems() <= minItems) {
+                    refill(node, version, child, childVersion, next);
+                    continue restart;
+                }
+                parent = node;
+                parentVersion = version;
+                node = child;
+                version = childVersion;
+            }
+        }
+    }
+
+    /**
+     * Finds the first item which is larger or equal to the given key, using
+     * a single three-way comparison per item. The node may be changing, so
+     * the count is clamped and a missing item reported
+     * @param thisNode
+     * @param key
+     * @return index of that item if it is equal to key; otherwise
+     * (-(child index to follow) - 1); RESTART_INDEX if the node was seen
+     * in the middle of a change
+     */
+    private int findIndex(ConcurrentTFNode thisNode, Object key) {
+        int numItems = Math.min(thisNode.getNumItems(), maxItems);
+
+        // Bisect wide nodes, remembering the comparison that last moved
+        // the upper bound so equality needs no extra call
+        if (numItems > LINEAR_SEARCH_ITEMS) {
+            int low = 0;
+            int high = numItems;
+            int highCmp = 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                Item item = thisNode.getItem(mid);
+                if (item == null) {
+                    return RESTART_INDEX;
+                }
+                int cmp = treeComp.compare(item.key(), key);
+                if (cmp < 0) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                    highCmp = cmp;
+                }
+            }
+            return (low < numItems && highCmp == 0) ? low : (-low - 1);
+        }
+
+        for (int i = 0; i < numItems; i++) {
+            Item item = thisNode.getItem(i);
+            if (item == null) {
+                return RESTART_INDEX;
+            }
+            int cmp = treeComp.compare(item.key(), key);
+            if (cmp >= 0) {
+                return (cmp == 0) ? i : (-i - 1);
+            }
+        }
+        return -numItems - 1;
+    }
+
+    /**
+     * Splits a full node around its middle item, which moves up into the
+     * parent, or into a new root; both nodes are locked by the caller
+     * @param node full node
+     * @param parent null if node is the root
+     * @param childIndex of node in parent
+     */
+    private void split(ConcurrentTFNode node, ConcurrentTFNode parent,
+                       int childIndex) {
+        int middle = maxItems / 2;
+        Item promotedItem = node.getItem(middle);
+        ConcurrentTFNode splitNode = node.splitAt(middle);
+
+        if (parent == null) {
+            ConcurrentTFNode newRoot = new ConcurrentTFNode(maxItems, false);
+            newRoot.setChild(0, node);
+            newRoot.insertItem(0, promotedItem, splitNode);
+            treeRoot.set(newRoot);
+        }
+        else {
+            parent.insertItem(childIndex, promotedItem, splitNode);
+        }
+    }
+
+    /**
+     * Gives a child holding the minimum one more item, by a transfer from
+     * a sibling that can spare one or else a fusion with it. Locks the
+     * parent, the child and the sibling, or gives up if any of them has
+     * changed; the caller starts over either way
+     * @param parent
+     * @param parentVersion
+     * @param child
+     * @param childVersion
+     * @param childIndex of child in parent
+     */
+    private void refill(ConcurrentTFNode parent, long parentVersion,
+                        ConcurrentTFNode child, long childVersion,
+                        int childIndex) {
+        if (!parent.upgrade(parentVersion)) {
+            return;
+        }
+        if (!child.upgrade(childVersion)) {
+            parent.unlock();
+            return;
+        }
+
+        // Prefer the left sibling, as underflow() in TwoFourTree does
+        int siblingIndex = (childIndex > 0) ? childIndex - 1 : childIndex + 1;
+        ConcurrentTFNode sibling = parent.getChild(siblingIndex);
+        if (!sibling.tryLock()) {
+            child.unlock();
+            parent.unlock();
+            return;
+        }
+
+        if (sibling.getNumItems() > minItems) {
+            if (siblingIndex < childIndex) {
+                leftTransfer(parent, child, sibling, childIndex);
+            }
+            else {
+                rightTransfer(parent, child, sibling, childIndex);
+            }
+            sibling.unlock();
+            child.unlock();
+            parent.unlock();
+            return;
+        }
+
+        // Fuse into the left one of the pair and unlink the right one
+        int leftIndex = Math.min(childIndex, siblingIndex);
+        ConcurrentTFNode leftNode = (leftIndex == childIndex) ? child : sibling;
+        ConcurrentTFNode rightNode = (leftIndex == childIndex) ? sibling : child;
+        fuse(parent, leftNode, rightNode, leftIndex);
+
+        // A root left without items gives way to its only child
+        boolean rootGone = (parent.getNumItems() == 0
+                            && treeRoot.get() == parent);
+        if (rootGone) {
+            treeRoot.set(leftNode);
+        }
+        rightNode.unlockObsolete();
+        leftNode.unlock();
+        if (rootGone) {
+            parent.unlockObsolete();
+        }
+        else {
+            parent.unlock();
+        }
+    }
+
+    /**
+     * Rotates the left sibling's last item up into the parent and the
+     * parent item down to the front of the child
+     * @param parent
+     * @param child
+     * @param sibling
+     * @param childIndex
+     */
+    private void leftTransfer(ConcurrentTFNode parent, ConcurrentTFNode child,
+                              ConcurrentTFNode sibling, int childIndex) {
+        int last = sibling.getNumItems() - 1;
+        ConcurrentTFNode movedChild = sibling.isLeaf() ? null
+                                                      : sibling.getChild(last + 1);
+        child.insertItem(0, parent.getItem(childIndex - 1),
+                         child.isLeaf() ? null : child.getChild(0));
+        if (!child.isLeaf()) {
+            child.setChild(0, movedChild);
+        }
+        parent.setItem(childIndex - 1, sibling.removeItem(last));
+    }
+
+    /**
+     * Rotates the right sibling's first item up into the parent and the
+     * parent item down to the end of the child
+     * @param parent
+     * @param child
+     * @param sibling
+     * @param childIndex
+     */
+    private void rightTransfer(ConcurrentTFNode parent, ConcurrentTFNode child,
+                               ConcurrentTFNode sibling, int childIndex) {
+        ConcurrentTFNode movedChild = sibling.isLeaf() ? null
+                                                      : sibling.getChild(0);
+        child.insertItem(child.getNumItems(), parent.getItem(childIndex),
+                         movedChild);
+        parent.setItem(childIndex, sibling.removeFirstItem());
+    }
+
+    /**
+     * Fuses two neighbouring children around the parent item between them,
+     * keeping the left node
+     * @param parent
+     * @param leftNode
+     * @param rightNode
+     * @param leftIndex child index of leftNode
+     */
+    private void fuse(ConcurrentTFNode parent, ConcurrentTFNode leftNode,
+                      ConcurrentTFNode rightNode, int leftIndex) {
+        boolean leaf = leftNode.isLeaf();
+        leftNode.insertItem(leftNode.getNumItems(), parent.getItem(leftIndex),
+                            leaf ? null : rightNode.getChild(0));
+        for (int i = 0; i < rightNode.getNumItems(); i++) {
+            leftNode.insertItem(leftNode.getNumItems(), rightNode.getItem(i),
+                                leaf ? null : rightNode.getChild(i + 1));
+        }
+        parent.removeItem(leftIndex);
+    }
+
+    /**
+     * Checks the order of the keys, the fill of the nodes and the depth of
+     * the leaves under a node, once no thread is changing the tree
+     * @param node
+     * @param depth of node
+     * @return depth of the leaves
+     */
+    private int checkNode(ConcurrentTFNode node, int depth) {
+        int numItems = node.getNumItems();
+        if (numItems > maxItems ||
+                (node != treeRoot.get() && numItems < minItems)) {
+            throw new TwoFourTreeException("checkNode: bad number of items");
+        }
+        for (int i = 1; i < numItems; i++) {
+            if (treeComp.compare(node.getItem(i - 1).key(), node.getItem(i).key()) > 0) {
+                throw new TwoFourTreeException("checkNode: keys out of order");
+            }
+        }
+        if (node.isLeaf()) {
+            return depth;
+        }
+        int leafDepth = -1;
+        for (int i = 0; i <= numItems; i++) {
+            ConcurrentTFNode child = node.getChild(i);
+            if ((i > 0 && treeComp.compare(child.getItem(0).key(), node.getItem(i - 1).key()) < 0) ||
+                    (i < numItems && treeComp.compare(child.getItem(child.getNumItems() - 1).key(),
+                                                      node.getItem(i).key()) > 0)) {
+                throw new TwoFourTreeException("checkNode: child out of order");
+            }
+            int childDepth = checkNode(child, depth + 1);
+            if (leafDepth >= 0 && childDepth != leafDepth) {
+                throw new TwoFourTreeException("checkNode: leaves at different depths");
+            }
+            leafDepth = childDepth;
+        }
+        return leafDepth;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final ConcurrentTwoFourTree myTree =
+                new ConcurrentTwoFourTree(new IntegerComparator());
+        final int THREADS = 4;
+        final int TEST_SIZE = 20000;
+        final int STABLE_KEYS = 1000;
+
+        // Removing from an empty tree fails as TwoFourTree's does
+        try {
+            myTree.removeElement(Integer.valueOf(0));
+            throw new TwoFourTreeException("main: removed from empty tree");
+        }
+        catch (TwoFourTreeException exc) {
+            if (exc.getMessage().startsWith("main:")) {
+                throw exc;
+            }
+        }
+
+        // Keys below STABLE_KEYS stay in the tree the whole time, and
+        // readers keep looking them up while the writers split and fuse
+        // the nodes around them
+        for (int i = 0; i < STABLE_KEYS; i++) {
+            myTree.insertElement(Integer.valueOf(i), Integer.valueOf(i));
+        }
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger writersLeft = new AtomicInteger(THREADS);
+        Thread[] threads = new Thread[2 * THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int first = STABLE_KEYS + t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    // Each writer inserts its own keys, then removes two
+                    // in three of them again
+                    for (int i = first; i < STABLE_KEYS + TEST_SIZE; i += THREADS) {
+                        myTree.insertElement(Integer.valueOf(i), Integer.valueOf(i));
+                    }
+                    for (int i = first; i < STABLE_KEYS + TEST_SIZE; i += THREADS) {
+                        if (i % 3 != 0) {
+                            Object out = myTree.removeElement(Integer.valueOf(i));
+                            if (!Integer.valueOf(i).equals(out)) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    }
+                    writersLeft.decrementAndGet();
+                }
+            });
+            final int seed = t;
+            threads[THREADS + t] = new Thread(new Runnable() {
+                public void run() {
+                    Random rand = new Random(seed);
+                    while (writersLeft.get() > 0) {
+                        int num = rand.nextInt(STABLE_KEYS);
+                        if (!Integer.valueOf(num).equals(
+                                myTree.findElement(Integer.valueOf(num)))) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.println("Correct concurrent results? " + (failures.get() == 0));
+        if (failures.get() != 0) {
+            throw new TwoFourTreeException("main: wrong element found or removed");
+        }
+
+        // Only the stable keys and every third writer key are left
+        int expected = STABLE_KEYS;
+        for (int i = STABLE_KEYS; i < STABLE_KEYS + TEST_SIZE; i++) {
+            Object found = myTree.findElement(Integer.valueOf(i));
+            boolean kept = (i % 3 == 0);
+            if (kept ? !Integer.valueOf(i).equals(found) : found != null) {
+                throw new TwoFourTreeException("main: wrong contents at key " + i);
+            }
+            if (kept) {
+                expected++;
+            }
+        }
+        myTree.checkNode(myTree.treeRoot.get(), 0);
+        System.out.println("Correct size? " + (myTree.size() == expected));
+
+        System.out.println("done");
+    }
+}
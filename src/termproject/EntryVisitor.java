@@ -0,0 +1,19 @@
+package termproject;
+
+/**
+ * Title:        Term Project 2-4 Trees
+ * Description:  Callback for scans that hand out one key and element at a
+ *               time
+ * @version 1.0
+ */
+
+public interface EntryVisitor {
+
+    /**
+     * Receives the next entry of a scan
+     * @param key
+     * @param element
+     * @return true to go on, false to stop the scan here
+     */
+    public boolean visit (Object key, Object element);
+}
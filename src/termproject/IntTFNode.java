@@ -0,0 +1,125 @@
+package termproject;
+
+/**
+ * Basic storage element for the int-keyed 2-4 Tree
+ *
+ * @version 1.0
+ * Description: The node for an IntTwoFourTree.  Same layout as TFNode, but
+ * keys are stored unboxed in an int array alongside a parallel array of
+ * elements, so no Item or Integer objects are needed per entry.
+ */
+
+public class IntTFNode {
+
+    private static final int MAX_ITEMS = 3;
+
+    private int numItems = 0;
+    private IntTFNode nodeParent;
+    private IntTFNode[] nodeChildren;
+    private int[] nodeKeys;
+    private Object[] nodeElements;
+
+    public IntTFNode() {
+            // make them one bigger than needed, so can handle oversize nodes
+            // during inserts
+        nodeChildren = new IntTFNode[MAX_ITEMS+2];
+        nodeKeys = new int[MAX_ITEMS+1];
+        nodeElements = new Object[MAX_ITEMS+1];
+    }
+
+    public int getNumItems () {
+        return numItems;
+    }
+
+    public int getMaxItems() {
+        return MAX_ITEMS;
+    }
+
+    public boolean isLeaf() {
+        return (nodeChildren[0] == null);
+    }
+
+    public IntTFNode getParent() {
+        return nodeParent;
+    }
+    public void setParent (IntTFNode parent) {
+        nodeParent = parent;
+    }
+    public int getKey(int index) {
+        if ( (index < 0) || (index > (numItems-1) ) )
+            throw new TFNodeException();
+        return nodeKeys[index];
+    }
+    public Object getElement(int index) {
+        if ( (index < 0) || (index > (numItems-1) ) )
+            throw new TFNodeException();
+        return nodeElements[index];
+    }
+        // adds, but does not extend array; so it overwrites anything there
+    public void addItem (int index, int key, Object element) {
+        if ( (index < 0) || (index > numItems) || (index > MAX_ITEMS) )
+            throw new TFNodeException();
+        nodeKeys[index] = key;
+        nodeElements[index] = element;
+        numItems++;
+    }
+        // inserts an item and shifts the child pointers the same way
+        // TFNode.insertItem does
+    public void insertItem (int index, int key, Object element) {
+        if ( (index < 0) || (index > numItems) || (index > MAX_ITEMS) )
+            throw new TFNodeException();
+        for (int ind=numItems; ind > index; ind--) {
+            nodeKeys[ind] = nodeKeys[ind-1];
+            nodeElements[ind] = nodeElements[ind-1];
+        }
+        nodeKeys[index] = key;
+        nodeElements[index] = element;
+        for (int ind=numItems+1; ind > index; ind--) {
+            nodeChildren[ind] = nodeChildren[ind-1];
+        }
+        numItems++;
+    }
+        // removes item and the child with the same index, and shrinks arrays;
+        // returns the removed element
+    public Object removeItem (int index) {
+        if ( (index < 0) || (index > (numItems-1) ) )
+            throw new TFNodeException();
+        Object removedElement = nodeElements[index];
+        for (int ind=index; ind < numItems-1; ind++) {
+            nodeKeys[ind] = nodeKeys[ind+1];
+            nodeElements[ind] = nodeElements[ind+1];
+        }
+        nodeElements[numItems-1] = null;
+        for (int ind=index; ind < numItems; ind++) {
+            nodeChildren[ind] = nodeChildren[ind+1];
+        }
+        nodeChildren[numItems] = null;
+        numItems--;
+        return removedElement;
+    }
+        // removes the last item, but leaves the child pointers alone
+    public void deleteLastItem () {
+        if (numItems == 0)
+            throw new TFNodeException();
+        numItems--;
+        nodeElements[numItems] = null;
+    }
+        // replaces the item at index
+    public void replaceItem (int index, int key, Object element) {
+        if ( (index < 0) || (index > (numItems-1) ) )
+            throw new TFNodeException();
+        nodeKeys[index] = key;
+        nodeElements[index] = element;
+    }
+
+    public IntTFNode getChild (int index) {
+        if ( (index < 0) || (index > (MAX_ITEMS+1)) )
+            throw new TFNodeException();
+        return nodeChildren[index];
+    }
+    public void setChild (int index, IntTFNode child) {
+        if ( (index < 0) || (index > (MAX_ITEMS+1)) )
+            throw new TFNodeException();
+        nodeChildren[index] = child;
+    }
+}
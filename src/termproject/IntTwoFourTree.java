@@ -0,0 +1,226 @@
+package termproject;
+
+/**
+ * This class implements the (2,4)-Tree ADT for int keys.
+ *
+ * Title: Term Project 2-4 Trees
+ * @version 1.0
+ * File: IntTwoFourTree.java
+ * Description: A primitive-specialized version of TwoFourTree. Keys are held
+ * unboxed in IntTFNode slots and compared directly with the relational
+ * operators, so the lookup path never goes through a Comparator or allocates
+ * an Integer. The int overloads of findElement(), insertElement() and
+ * removeElement() are the fast path; the Dictionary methods accept Integer
+ * keys and unbox them once on entry. The search loop is this class's own,
+ * over IntTFNode directly, so the lookup path makes no calls that another
+ * node class could share; the split and fusion algorithms are those of
+ * PrimitiveTwoFourTree, shared with LongTwoFourTree, which widens int keys
+ * to longs.
+ */
+
+public class IntTwoFourTree extends PrimitiveTwoFourTree<IntTFNode>
+        implements Dictionary {
+
+    /**
+     * Constructor
+     */
+    public IntTwoFourTree() {
+        super(null, 0);
+    }
+
+    /**
+     * Searches dictionary to determine if key is present
+     * @param key to be searched for; must be an Integer
+     * @return object corresponding to key; null if not found
+     */
+    public Object findElement(Object key) {
+        return findElement(toInt(key));
+    }
+
+    /**
+     * Searches dictionary to determine if key is present
+     * @param key to be searched for
+     * @return object corresponding to key; null if not found
+     */
+    public Object findElement(int key) {
+        // An empty tree has nothing to find
+        if (isEmpty()) {
+            return null;
+        }
+
+        // Find the node that contains the key, or the leaf where the
+        // search for it ended
+        IntTFNode foundNode = findNode(key);
+        int index = FFGTE(foundNode, key);
+
+        if (!isMatch(foundNode, index, key)) {
+            return null;
+        }
+        return foundNode.getElement(index);
+    }
+
+    /**
+     * Inserts provided element into the Dictionary
+     * @param key of object to be inserted; must be an Integer
+     * @param element to be inserted
+     */
+    public void insertElement(Object key, Object element) {
+        insertElement(toInt(key), element);
+    }
+
+    /**
+     * Inserts provided element into the Dictionary
+     * @param key of object to be inserted
+     * @param element to be inserted
+     */
+    public void insertElement(int key, Object element) {
+        // Perform a shifting insert into the leaf, then fix any overflow
+        IntTFNode insertNode = leafFor(key);
+        insertNode.insertItem(foundIndex(), key, element);
+        itemInserted(insertNode);
+    }
+
+    /**
+     * Searches dictionary to determine if key is present, then
+     * removes and returns corresponding object
+     * @param key of data to be removed; must be an Integer
+     * @return object corresponding to key
+     * @exception ElementNotFoundException if the key is not in dictionary
+     */
+    public Object removeElement(Object key) throws ElementNotFoundException {
+        return removeElement(toInt(key));
+    }
+
+    /**
+     * Searches dictionary to determine if key is present, then
+     * removes and returns corresponding object
+     * @param key of data to be removed
+     * @return object corresponding to key
+     * @exception ElementNotFoundException if the key is not in dictionary
+     */
+    public Object removeElement(int key) throws ElementNotFoundException {
+        IntTFNode deleteNode = match(key);
+        int deleteIndex = foundIndex();
+        Object removedObject = deleteNode.getElement(deleteIndex);
+        removeFound(deleteNode, deleteIndex);
+        return removedObject;
+    }
+
+    /**
+     * Unboxes a Dictionary key
+     * @param key
+     * @return int value of key
+     */
+    private int toInt(Object key) {
+        try {
+            return ((Integer) key).intValue();
+        }
+        catch (ClassCastException exc) {
+            throw new InvalidIntegerException("Object not an integer");
+        }
+    }
+
+    /**
+     * Walks down from the root to the node containing key
+     * @param key to be searched for
+     * @return node containing key; the leaf where the search ended if not found
+     */
+    protected IntTFNode findNode(long key) {
+        IntTFNode node = treeRoot();
+        while (true) {
+            int index = FFGTE(node, key);
+            if (isMatch(node, index, key) || node.isLeaf()) {
+                return node;
+            }
+            node = node.getChild(index);
+        }
+    }
+
+    /**
+     * Determines if the item at index holds the given key
+     * @param node
+     * @param index as returned by FFGTE
+     * @param key
+     * @return true if the item at index is equal to key
+     */
+    private boolean isMatch(IntTFNode node, int index, long key) {
+        return (index != node.getNumItems() && node.getKey(index) == key);
+    }
+
+    /**
+     * Finds the first item which is larger or equal to the given key
+     * @param thisNode
+     * @param key
+     * @return index of that item; number of items if there is none
+     */
+    protected int FFGTE(IntTFNode thisNode, long key) {
+        int numItems = thisNode.getNumItems();
+        for (int i = 0; i < numItems; i++) {
+            if (thisNode.getKey(i) >= key) {
+                return i;
+            }
+        }
+        return numItems;
+    }
+
+    // ----- node access for PrimitiveTwoFourTree
+
+    protected IntTFNode newNode() {
+        return new IntTFNode();
+    }
+
+    protected int getNumItems(IntTFNode node) {
+        return node.getNumItems();
+    }
+
+    protected int getMaxItems(IntTFNode node) {
+        return node.getMaxItems();
+    }
+
+    protected boolean isLeaf(IntTFNode node) {
+        return node.isLeaf();
+    }
+
+    protected IntTFNode getParent(IntTFNode node) {
+        return node.getParent();
+    }
+
+    protected void setParent(IntTFNode node, IntTFNode parent) {
+        node.setParent(parent);
+    }
+
+    protected IntTFNode getChild(IntTFNode node, int index) {
+        return node.getChild(index);
+    }
+
+    protected void setChild(IntTFNode node, int index, IntTFNode child) {
+        node.setChild(index, child);
+    }
+
+    protected long getKey(IntTFNode node, int index) {
+        return node.getKey(index);
+    }
+
+    protected void addItem(IntTFNode node, int index, IntTFNode from,
+                           int fromIndex) {
+        node.addItem(index, from.getKey(fromIndex), from.getElement(fromIndex));
+    }
+
+    protected void insertItem(IntTFNode node, int index, IntTFNode from,
+                              int fromIndex) {
+        node.insertItem(index, from.getKey(fromIndex), from.getElement(fromIndex));
+    }
+
+    protected void replaceItem(IntTFNode node, int index, IntTFNode from,
+                               int fromIndex) {
+        node.replaceItem(index, from.getKey(fromIndex), from.getElement(fromIndex));
+    }
+
+    protected void removeItem(IntTFNode node, int index) {
+        node.removeItem(index);
+    }
+
+    protected void deleteLastItem(IntTFNode node) {
+        node.deleteLastItem();
+    }
+}
@@ -0,0 +1,30 @@
+package termproject;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Title:        Term Project 2-4 Trees
+ * Description:  Codec for Integer keys and elements, as four bytes
+ * @version 1.0
+ */
+
+public class IntegerCodec implements Codec {
+
+    public IntegerCodec() {
+    }
+
+    public void write (DataOutput out, Object obj) throws IOException {
+        try {
+            out.writeInt(((Integer) obj).intValue());
+        }
+        catch (ClassCastException exc) {
+            throw new InvalidIntegerException ("Object not an integer");
+        }
+    }
+
+    public Object read (DataInput in) throws IOException {
+        return Integer.valueOf(in.readInt());
+    }
+}
@@ -14,34 +14,38 @@ public class IntegerComparator implements Comparator {
     public IntegerComparator() {
     }
 
-    public boolean isLessThan (Object obj1, Object obj2) {
-        Integer myInt1;
-        Integer myInt2;
+    public int compare (Object obj1, Object obj2) {
+        int myInt1;
+        int myInt2;
         try {
-            myInt1 = (Integer) obj1;
-            myInt2 = (Integer) obj2;
+            myInt1 = ((Integer) obj1).intValue();
+            myInt2 = ((Integer) obj2).intValue();
         }
         catch (ClassCastException exc) {
             throw new InvalidIntegerException ("Object not an integer");
         }
 
-        return ( myInt1.intValue() < myInt2.intValue() );
+        return ( (myInt1 < myInt2) ? -1 : ((myInt1 == myInt2) ? 0 : 1) );
+    }
+
+    public boolean isLessThan (Object obj1, Object obj2) {
+        return ( compare (obj1, obj2) < 0 );
     }
 
     public boolean isLessThanOrEqualTo (Object obj1, Object obj2) {
-        return ( ! isLessThan (obj2, obj1) );
+        return ( compare (obj1, obj2) <= 0 );
     }
 
     public boolean isGreaterThan (Object obj1, Object obj2) {
-        return ( isLessThan (obj2, obj1) );
+        return ( compare (obj1, obj2) > 0 );
     }
 
     public boolean isGreaterThanOrEqualTo (Object obj1, Object obj2) {
-        return ( ! isLessThan (obj1, obj2) );
+        return ( compare (obj1, obj2) >= 0 );
     }
 
     public boolean isEqual (Object obj1, Object obj2) {
-        return ( (! isLessThan (obj1, obj2)) && (! isLessThan (obj2, obj1)) );
+        return ( compare (obj1, obj2) == 0 );
     }
 
     public boolean isComparable (Object obj) {
@@ -0,0 +1,33 @@
+package termproject;
+
+/**
+ * Title:        Term Project 2-4 Trees
+ * Description:  Aggregator adding up Integer elements; the sums are Longs,
+ *               so they do not overflow where the elements would
+ * @version 1.0
+ */
+
+public class IntegerSumAggregator implements Aggregator {
+
+    private static final Long ZERO = Long.valueOf(0);
+
+    public IntegerSumAggregator() {
+    }
+
+    public Object identity () {
+        return ZERO;
+    }
+
+    public Object valueOf (Object key, Object element) {
+        try {
+            return Long.valueOf(((Integer) element).intValue());
+        }
+        catch (ClassCastException exc) {
+            throw new InvalidIntegerException ("Object not an integer");
+        }
+    }
+
+    public Object combine (Object left, Object right) {
+        return Long.valueOf(((Long) left).longValue() + ((Long) right).longValue());
+    }
+}
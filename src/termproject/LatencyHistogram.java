@@ -0,0 +1,89 @@
+package termproject;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Title:        Term Project 2-4 Trees
+ * Description:  Counts how long operations take, in buckets by powers of
+ *               two: bucket b holds the times from 2^(b-1) up to 2^b - 1
+ *               nanoseconds, and bucket 0 the times of 0.  Recording is one
+ *               atomic add, and the buckets cover every long, so nothing is
+ *               ever out of range; the price is that a percentile is only
+ *               known to within a factor of two.  The percentile reported
+ *               is the upper end of the bucket it falls in.
+ * @version 1.0
+ */
+
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    public LatencyHistogram() {
+    }
+
+    /**
+     * Adds one operation
+     * @param nanos how long it took
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(Math.min(BUCKETS - 1,
+                BUCKETS - Long.numberOfLeadingZeros(nanos)));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            count += buckets.get(b);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the time under which a share of the operations took
+     * @param fraction in [0, 1]; 0.99 for the 99th percentile
+     * @return upper end of the bucket holding that percentile, in
+     * nanoseconds; 0 if nothing has been recorded
+     */
+    public long getPercentile(double fraction) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            counts[b] = buckets.get(b);
+            total += counts[b];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= wanted) {
+                return upperBound(b);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    /**
+     * Returns the upper end of the highest bucket in use
+     * @return nanoseconds; 0 if nothing has been recorded
+     */
+    public long getMax() {
+        for (int b = BUCKETS - 1; b >= 0; b--) {
+            if (buckets.get(b) > 0) {
+                return upperBound(b);
+            }
+        }
+        return 0;
+    }
+
+    private static long upperBound(int bucket) {
+        return (bucket == BUCKETS - 1) ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
@@ -0,0 +1,422 @@
+package termproject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+/**
+ * This class implements a crash-safe Dictionary: a TwoFourTree whose
+ * changes are logged ahead in a WriteAheadLog.
+ *
+ * Title: Term Project 2-4 Trees
+ * @version 1.0
+ * File: LoggedTwoFourTree.java
+ * Description: Every insertElement() and removeElement() first checks that
+ * the tree will take the change, appends a record of it to the log, applies
+ * it to the tree, and then waits until the log has forced the record to
+ * disk, so a change that has returned survives a crash. A change the tree
+ * would refuse, or the log cannot take because it has failed or been
+ * closed, is refused before anything is changed, so the tree never holds a
+ * change the log does not. The log forces records in groups (see
+ * WriteAheadLog), and the waiting happens outside the tree's lock, so
+ * threads that write at the same time share their forces. If the log fails
+ * while a change waits for its force, the change throws and the log takes
+ * no more; opening the directory again gives the tree as it was forced.
+ *
+ * Once checkpointInterval records have been logged, the next change first
+ * writes the whole tree out in key order to a checkpoint file, which
+ * replaces the old one by a rename, and empties the log; if that fails, the
+ * change is not made. Opening the directory again loads the checkpoint
+ * through the bulk-loading constructor of TwoFourTree and replays the log
+ * records that came after it. Where a key is held more than once, replaying
+ * a remove takes out one of its items, as removeElement() does.
+ *
+ * A checkpoint file is
+ *
+ *      int     MAGIC
+ *      int     VERSION
+ *      long    lsn of the last record it covers
+ *      int     number of items
+ *      then for each item in key order, key and element by their Codecs
+ */
+
+public class LoggedTwoFourTree implements Dictionary, Closeable {
+
+    // Variable declaration
+    private static final int MAGIC = 0x32344350;    // "24CP"
+    private static final int VERSION = 1;
+    private static final String LOG_FILE = "tree.log";
+    private static final String CHECKPOINT_FILE = "tree.checkpoint";
+    private static final int DEFAULT_BATCH_SIZE = 256;
+    private static final long DEFAULT_MAX_DELAY_MILLIS = 0;
+    private static final long DEFAULT_CHECKPOINT_INTERVAL = 1000000;
+
+    private final File directory;
+    private final Codec keyCodec;
+    private final Codec elementCodec;
+    private final Comparator treeComp;
+    private final long checkpointInterval;
+    private final TwoFourTree tree;
+    private final WriteAheadLog log;
+    private long sinceCheckpoint = 0;
+
+    /**
+     * Opens the tree kept in a directory, recovering it from its checkpoint
+     * and log; the directory is created if needed
+     * @param directory
+     * @param comp
+     * @param keyCodec
+     * @param elementCodec
+     * @exception IOException
+     */
+    public LoggedTwoFourTree(File directory, Comparator comp, Codec keyCodec,
+                             Codec elementCodec) throws IOException {
+        this(directory, comp, keyCodec, elementCodec, DEFAULT_BATCH_SIZE,
+             DEFAULT_MAX_DELAY_MILLIS, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Opens the tree kept in a directory, recovering it from its checkpoint
+     * and log; the directory is created if needed
+     * @param directory
+     * @param comp
+     * @param keyCodec
+     * @param elementCodec
+     * @param batchSize log records that are forced together at once
+     * @param maxDelayMillis longest a change waits for its force
+     * @param checkpointInterval log records between checkpoints
+     * @exception IOException
+     */
+    public LoggedTwoFourTree(File directory, Comparator comp, Codec keyCodec,
+                             Codec elementCodec, int batchSize,
+                             long maxDelayMillis, long checkpointInterval)
+            throws IOException {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("checkpointInterval < 1");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.directory = directory;
+        this.keyCodec = keyCodec;
+        this.elementCodec = elementCodec;
+        treeComp = comp;
+        this.checkpointInterval = checkpointInterval;
+
+        // Load the checkpoint, then replay what the log has on top of it
+        long checkpointLsn = 0;
+        TwoFourTree loaded = new TwoFourTree(comp);
+        File checkpoint = new File(directory, CHECKPOINT_FILE);
+        if (checkpoint.exists()) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(checkpoint)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Not a checkpoint file: " + checkpoint);
+                }
+                checkpointLsn = in.readLong();
+                int count = in.readInt();
+                Object[] keys = new Object[count];
+                Object[] elements = new Object[count];
+                for (int i = 0; i < count; i++) {
+                    keys[i] = keyCodec.read(in);
+                    elements[i] = elementCodec.read(in);
+                }
+                loaded = new TwoFourTree(comp, keys, elements);
+            }
+            finally {
+                in.close();
+            }
+        }
+        tree = loaded;
+        log = new WriteAheadLog(new File(directory, LOG_FILE), keyCodec,
+                                elementCodec, batchSize, maxDelayMillis);
+        try {
+            sinceCheckpoint = log.recover(checkpointLsn, tree);
+        }
+        catch (IOException exc) {
+            log.close();
+            throw exc;
+        }
+    }
+
+    /**
+     * Returns size of the tree
+     * @return size of the tree
+     */
+    public synchronized int size() {
+        return tree.size();
+    }
+
+    /**
+     * Returns true is the tree has no elements in it
+     * @return true is size is zero
+     */
+    public synchronized boolean isEmpty() {
+        return tree.isEmpty();
+    }
+
+    /**
+     * Searches dictionary to determine if key is present
+     * @param key to be searched for
+     * @return object corresponding to key; null if not found
+     */
+    public synchronized Object findElement(Object key) {
+        return tree.findElement(key);
+    }
+
+    /**
+     * Inserts provided element into the Dictionary, returning once the
+     * change is on disk
+     * @param key of object to be inserted
+     * @param element to be inserted
+     */
+    public void insertElement(Object key, Object element) {
+        long lsn;
+        synchronized (this) {
+            // A key the tree rejects never reaches the log, and a record
+            // the log refuses never reaches the tree
+            checkpointIfDue();
+            if (!treeComp.isComparable(key)) {
+                throw new TwoFourTreeException("Key not comparable");
+            }
+            lsn = log.append(WriteAheadLog.INSERT, key, element);
+            sinceCheckpoint++;
+            tree.insertElement(key, element);
+        }
+        log.awaitDurable(lsn);
+    }
+
+    /**
+     * Searches dictionary to determine if key is present, then
+     * removes and returns corresponding object, returning once the change
+     * is on disk
+     * @param key of data to be removed
+     * @return object corresponding to key
+     * @exception ElementNotFoundException if the key is not in dictionary
+     */
+    public Object removeElement(Object key) throws ElementNotFoundException {
+        long lsn;
+        Object removed;
+        synchronized (this) {
+            // A remove the tree would refuse fails here as it would there,
+            // before anything is logged
+            checkpointIfDue();
+            if (tree.isEmpty()) {
+                throw new TwoFourTreeException();
+            }
+            if (tree.findItem(key) == null) {
+                throw new ElementNotFoundException();
+            }
+            lsn = log.append(WriteAheadLog.REMOVE, key, null);
+            sinceCheckpoint++;
+            removed = tree.removeElement(key);
+        }
+        log.awaitDurable(lsn);
+        return removed;
+    }
+
+    /**
+     * Writes the whole tree to a new checkpoint and empties the log
+     * @exception IOException
+     */
+    public synchronized void checkpoint() throws IOException {
+        // Every record the checkpoint covers has to be on disk first, in
+        // case the rename below does not make it
+        log.sync();
+        long lsn = log.lastLsn();
+
+        File temp = new File(directory, CHECKPOINT_FILE + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temp);
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(lsn);
+            out.writeInt(tree.size());
+            TwoFourTreeCursor cursor = tree.cursor();
+            for (boolean valid = cursor.first(); valid; valid = cursor.next()) {
+                keyCodec.write(out, cursor.key());
+                elementCodec.write(out, cursor.element());
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        finally {
+            stream.close();
+        }
+
+        // File.renameTo will not replace a file on every platform
+        File checkpoint = new File(directory, CHECKPOINT_FILE);
+        if (!temp.renameTo(checkpoint)) {
+            if (!checkpoint.delete() || !temp.renameTo(checkpoint)) {
+                throw new IOException("Cannot replace " + checkpoint);
+            }
+        }
+        log.truncate();
+        sinceCheckpoint = 0;
+    }
+
+    /**
+     * Forces the log and closes it; the tree opens again from the
+     * checkpoint and the log
+     * @exception IOException
+     */
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+
+        // checkpoints once enough records are logged; run before a change,
+        // so a checkpoint that fails leaves the change unmade
+    private void checkpointIfDue() {
+        if (sinceCheckpoint < checkpointInterval) {
+            return;
+        }
+        try {
+            checkpoint();
+        }
+        catch (IOException exc) {
+            throw new TwoFourTreeException("Checkpoint failed", exc);
+        }
+    }
+
+    // deletes the files of a tree's directory, then the directory
+    private static void deleteTree(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    // checks that a tree holds exactly the keys 0 to limit - 1 that pass
+    // kept, each with itself as element
+    private static void checkContents(LoggedTwoFourTree tree, int limit,
+                                      boolean[] kept, String what) {
+        int count = 0;
+        for (int i = 0; i < limit; i++) {
+            Object found = tree.findElement(Integer.valueOf(i));
+            if (kept[i] ? !Integer.valueOf(i).equals(found) : found != null) {
+                throw new TwoFourTreeException("main: " + what + " wrong at key " + i);
+            }
+            if (kept[i]) {
+                count++;
+            }
+        }
+        if (tree.size() != count) {
+            throw new TwoFourTreeException("main: " + what + " wrong size");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Comparator myComp = new IntegerComparator();
+        Codec codec = new IntegerCodec();
+        File dir = new File(System.getProperty("java.io.tmpdir"),
+                            "LoggedTwoFourTree" + System.nanoTime());
+        final int TEST_SIZE = 1000;
+        boolean[] kept = new boolean[TEST_SIZE + 1];
+
+        // Replay: every change comes back from the log alone
+        LoggedTwoFourTree myTree = new LoggedTwoFourTree(dir, myComp, codec, codec);
+        for (int i = 0; i < TEST_SIZE; i++) {
+            myTree.insertElement(Integer.valueOf(i), Integer.valueOf(i));
+            kept[i] = true;
+        }
+        for (int i = 0; i < TEST_SIZE; i += 3) {
+            myTree.removeElement(Integer.valueOf(i));
+            kept[i] = false;
+        }
+        myTree.close();
+        myTree = new LoggedTwoFourTree(dir, myComp, codec, codec);
+        checkContents(myTree, TEST_SIZE, kept, "replay");
+        System.out.println("Correct replay? true");
+
+        // A closed log refuses changes, and the tree is left as it was
+        myTree.close();
+        try {
+            myTree.insertElement(Integer.valueOf(TEST_SIZE), Integer.valueOf(TEST_SIZE));
+            throw new TwoFourTreeException("main: insert into closed log");
+        }
+        catch (TwoFourTreeException exc) {
+            if (exc.getMessage().startsWith("main:")) {
+                throw exc;
+            }
+        }
+        try {
+            myTree.removeElement(Integer.valueOf(1));
+            throw new TwoFourTreeException("main: remove from closed log");
+        }
+        catch (TwoFourTreeException exc) {
+            if (exc.getMessage().startsWith("main:")) {
+                throw exc;
+            }
+        }
+        checkContents(myTree, TEST_SIZE + 1, kept, "closed log");
+        myTree = new LoggedTwoFourTree(dir, myComp, codec, codec);
+        checkContents(myTree, TEST_SIZE + 1, kept, "reopen after closed log");
+        System.out.println("Correct closed log? true");
+
+        // Torn tail: cut the last record short, as a crash mid-write would;
+        // it is dropped, the log is cut back to the record before, and new
+        // records go after that one
+        myTree.insertElement(Integer.valueOf(TEST_SIZE), Integer.valueOf(TEST_SIZE));
+        myTree.close();
+        File logFile = new File(dir, LOG_FILE);
+        long fullLength = logFile.length();
+        RandomAccessFile raf = new RandomAccessFile(logFile, "rw");
+        raf.setLength(fullLength - 3);
+        raf.close();
+        myTree = new LoggedTwoFourTree(dir, myComp, codec, codec);
+        checkContents(myTree, TEST_SIZE + 1, kept, "torn tail");
+        if (logFile.length() >= fullLength - 3) {
+            throw new TwoFourTreeException("main: torn record not cut off");
+        }
+        myTree.insertElement(Integer.valueOf(TEST_SIZE), Integer.valueOf(TEST_SIZE));
+        kept[TEST_SIZE] = true;
+        myTree.close();
+        myTree = new LoggedTwoFourTree(dir, myComp, codec, codec);
+        checkContents(myTree, TEST_SIZE + 1, kept, "append after torn tail");
+        myTree.close();
+        System.out.println("Correct torn tail? true");
+        deleteTree(dir);
+
+        // Checkpoint then replay: the tree comes back from the last
+        // checkpoint plus the records logged after it
+        myTree = new LoggedTwoFourTree(dir, myComp, codec, codec, 16, 0, 100);
+        Random rand = new Random(1);
+        kept = new boolean[TEST_SIZE];
+        for (int i = 0; i < 5 * TEST_SIZE; i++) {
+            int num = rand.nextInt(TEST_SIZE);
+            if (kept[num]) {
+                myTree.removeElement(Integer.valueOf(num));
+            }
+            else {
+                myTree.insertElement(Integer.valueOf(num), Integer.valueOf(num));
+            }
+            kept[num] = !kept[num];
+        }
+        myTree.close();
+        if (!new File(dir, CHECKPOINT_FILE).exists() ||
+                new File(dir, LOG_FILE).length() == 0) {
+            throw new TwoFourTreeException("main: no checkpoint and log to replay");
+        }
+        myTree = new LoggedTwoFourTree(dir, myComp, codec, codec, 16, 0, 100);
+        checkContents(myTree, TEST_SIZE, kept, "checkpoint replay");
+        myTree.close();
+        System.out.println("Correct checkpoint replay? true");
+        deleteTree(dir);
+
+        System.out.println("done");
+    }
+}
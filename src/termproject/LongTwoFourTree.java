@@ -0,0 +1,225 @@
+package termproject;
+
+/**
+ * This class implements the (2,4)-Tree ADT for long keys.
+ *
+ * Title: Term Project 2-4 Trees
+ * @version 1.0
+ * File: LongTwoFourTree.java
+ * Description: A primitive-specialized version of TwoFourTree. Keys are held
+ * unboxed in LongTFNode slots and compared directly with the relational
+ * operators, so the lookup path never goes through a Comparator or allocates
+ * a Long. The long overloads of findElement(), insertElement() and
+ * removeElement() are the fast path; the Dictionary methods accept Long
+ * keys and unbox them once on entry. The search loop is this class's own,
+ * over LongTFNode directly, so the lookup path makes no calls that another
+ * node class could share; the split and fusion algorithms are those of
+ * PrimitiveTwoFourTree, shared with IntTwoFourTree.
+ */
+
+public class LongTwoFourTree extends PrimitiveTwoFourTree<LongTFNode>
+        implements Dictionary {
+
+    /**
+     * Constructor
+     */
+    public LongTwoFourTree() {
+        super(null, 0);
+    }
+
+    /**
+     * Searches dictionary to determine if key is present
+     * @param key to be searched for; must be a Long
+     * @return object corresponding to key; null if not found
+     */
+    public Object findElement(Object key) {
+        return findElement(toLong(key));
+    }
+
+    /**
+     * Searches dictionary to determine if key is present
+     * @param key to be searched for
+     * @return object corresponding to key; null if not found
+     */
+    public Object findElement(long key) {
+        // An empty tree has nothing to find
+        if (isEmpty()) {
+            return null;
+        }
+
+        // Find the node that contains the key, or the leaf where the
+        // search for it ended
+        LongTFNode foundNode = findNode(key);
+        int index = FFGTE(foundNode, key);
+
+        if (!isMatch(foundNode, index, key)) {
+            return null;
+        }
+        return foundNode.getElement(index);
+    }
+
+    /**
+     * Inserts provided element into the Dictionary
+     * @param key of object to be inserted; must be a Long
+     * @param element to be inserted
+     */
+    public void insertElement(Object key, Object element) {
+        insertElement(toLong(key), element);
+    }
+
+    /**
+     * Inserts provided element into the Dictionary
+     * @param key of object to be inserted
+     * @param element to be inserted
+     */
+    public void insertElement(long key, Object element) {
+        // Perform a shifting insert into the leaf, then fix any overflow
+        LongTFNode insertNode = leafFor(key);
+        insertNode.insertItem(foundIndex(), key, element);
+        itemInserted(insertNode);
+    }
+
+    /**
+     * Searches dictionary to determine if key is present, then
+     * removes and returns corresponding object
+     * @param key of data to be removed; must be a Long
+     * @return object corresponding to key
+     * @exception ElementNotFoundException if the key is not in dictionary
+     */
+    public Object removeElement(Object key) throws ElementNotFoundException {
+        return removeElement(toLong(key));
+    }
+
+    /**
+     * Searches dictionary to determine if key is present, then
+     * removes and returns corresponding object
+     * @param key of data to be removed
+     * @return object corresponding to key
+     * @exception ElementNotFoundException if the key is not in dictionary
+     */
+    public Object removeElement(long key) throws ElementNotFoundException {
+        LongTFNode deleteNode = match(key);
+        int deleteIndex = foundIndex();
+        Object removedObject = deleteNode.getElement(deleteIndex);
+        removeFound(deleteNode, deleteIndex);
+        return removedObject;
+    }
+
+    /**
+     * Unboxes a Dictionary key
+     * @param key
+     * @return long value of key
+     */
+    private long toLong(Object key) {
+        try {
+            return ((Long) key).longValue();
+        }
+        catch (ClassCastException exc) {
+            throw new InvalidIntegerException("Object not a long");
+        }
+    }
+
+    /**
+     * Walks down from the root to the node containing key
+     * @param key to be searched for
+     * @return node containing key; the leaf where the search ended if not found
+     */
+    protected LongTFNode findNode(long key) {
+        LongTFNode node = treeRoot();
+        while (true) {
+            int index = FFGTE(node, key);
+            if (isMatch(node, index, key) || node.isLeaf()) {
+                return node;
+            }
+            node = node.getChild(index);
+        }
+    }
+
+    /**
+     * Determines if the item at index holds the given key
+     * @param node
+     * @param index as returned by FFGTE
+     * @param key
+     * @return true if the item at index is equal to key
+     */
+    private boolean isMatch(LongTFNode node, int index, long key) {
+        return (index != node.getNumItems() && node.getKey(index) == key);
+    }
+
+    /**
+     * Finds the first item which is larger or equal to the given key
+     * @param thisNode
+     * @param key
+     * @return index of that item; number of items if there is none
+     */
+    protected int FFGTE(LongTFNode thisNode, long key) {
+        int numItems = thisNode.getNumItems();
+        for (int i = 0; i < numItems; i++) {
+            if (thisNode.getKey(i) >= key) {
+                return i;
+            }
+        }
+        return numItems;
+    }
+
+    // ----- node access for PrimitiveTwoFourTree
+
+    protected LongTFNode newNode() {
+        return new LongTFNode();
+    }
+
+    protected int getNumItems(LongTFNode node) {
+        return node.getNumItems();
+    }
+
+    protected int getMaxItems(LongTFNode node) {
+        return node.getMaxItems();
+    }
+
+    protected boolean isLeaf(LongTFNode node) {
+        return node.isLeaf();
+    }
+
+    protected LongTFNode getParent(LongTFNode node) {
+        return node.getParent();
+    }
+
+    protected void setParent(LongTFNode node, LongTFNode parent) {
+        node.setParent(parent);
+    }
+
+    protected LongTFNode getChild(LongTFNode node, int index) {
+        return node.getChild(index);
+    }
+
+    protected void setChild(LongTFNode node, int index, LongTFNode child) {
+        node.setChild(index, child);
+    }
+
+    protected long getKey(LongTFNode node, int index) {
+        return node.getKey(index);
+    }
+
+    protected void addItem(LongTFNode node, int index, LongTFNode from,
+                           int fromIndex) {
+        node.addItem(index, from.getKey(fromIndex), from.getElement(fromIndex));
+    }
+
+    protected void insertItem(LongTFNode node, int index, LongTFNode from,
+                              int fromIndex) {
+        node.insertItem(index, from.getKey(fromIndex), from.getElement(fromIndex));
+    }
+
+    protected void replaceItem(LongTFNode node, int index, LongTFNode from,
+                               int fromIndex) {
+        node.replaceItem(index, from.getKey(fromIndex), from.getElement(fromIndex));
+    }
+
+    protected void removeItem(LongTFNode node, int index) {
+        node.removeItem(index);
+    }
+
+    protected void deleteLastItem(LongTFNode node) {
+        node.deleteLastItem();
+    }
+}
@@ -0,0 +1,211 @@
+package termproject;
+
+import java.util.HashMap;
+
+/**
+ * Title:        Term Project 2-4 Trees
+ * Description:  A bounded map from keys to the Items a TwoFourTree holds
+ *               for them, kept in front of findElement() so that a key
+ *               looked up often is found with one hash probe instead of a
+ *               descent from the root.
+ *
+ *               Entries are replaced by the CLOCK policy: the entries sit
+ *               in a ring of capacity slots, and a hit sets the entry's
+ *               referenced bit.  To make room, the hand sweeps the ring,
+ *               clearing set bits and taking the first slot whose bit was
+ *               already clear, so an entry looked up again since the hand
+ *               last passed survives another turn.  A hit costs a hash
+ *               lookup and a store; no list is relinked as an LRU would.
+ *
+ *               A key that misses is not let in just for having missed,
+ *               since under a skewed load most misses are keys that will
+ *               not come again soon.  Every lookup is counted in a small
+ *               frequency sketch, four 4-bit counters per key out of a
+ *               shared table, with the smallest of the four as the
+ *               estimate; a missed key takes the place of the entry under
+ *               the hand only if it has been looked up more often (the
+ *               TinyLFU admission rule).  The counters are halved every
+ *               ten lookups per slot, so the sketch follows a load that
+ *               changes.
+ *
+ *               Keys are hashed with hashCode() and equals().  The tree
+ *               files each entry under the key stored in its Item and drops
+ *               it by that key when the Item is removed, and checks a hit
+ *               with its Comparator, so the two need not agree; where they
+ *               do not, a lookup by a key the Comparator finds equal to the
+ *               stored one is just a miss.  The cache is not thread safe:
+ *               with one, findElement() changes state and needs the same
+ *               exclusion as the tree's writers.
+ * @version 1.0
+ */
+
+public class LookupCache {
+
+        // counters per slot in the sketch, and lookups per slot between
+        // halvings
+    private static final int SKETCH_WIDTH = 16;
+    private static final int SAMPLE_FACTOR = 10;
+
+    private final HashMap<Object, Entry> entries;
+    private final Entry[] ring;
+    private int hand = 0;
+    private final byte[] sketch;
+    private final int sketchMask;
+    private final int sampleSize;
+    private int samples = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Creates an empty cache
+     * @param capacity most keys held at once; at least 1
+     */
+    public LookupCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity < 1");
+        }
+        entries = new HashMap<Object, Entry>(capacity * 2);
+        ring = new Entry[capacity];
+        int width = Integer.highestOneBit(capacity * SKETCH_WIDTH - 1) << 1;
+        sketch = new byte[width];
+        sketchMask = width - 1;
+        sampleSize = capacity * SAMPLE_FACTOR;
+    }
+
+    /**
+     * Looks up a key, counting a hit or a miss
+     * @param key
+     * @return the Item cached for key; null if there is none
+     */
+    public Item get(Object key) {
+        count(key);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        entry.referenced = true;
+        return entry.item;
+    }
+
+    /**
+     * Offers the Item found for a key to the cache, which takes it if
+     * there is a free slot or the key is looked up more often than the
+     * entry it would evict
+     * @param key
+     * @param item
+     */
+    public void put(Object key, Item item) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.item = item;
+            return;
+        }
+
+        // Sweep until a free slot or one not referenced since the last pass
+        while (ring[hand] != null && ring[hand].referenced) {
+            ring[hand].referenced = false;
+            hand = (hand + 1) % ring.length;
+        }
+        if (ring[hand] != null) {
+            if (frequency(key) <= frequency(ring[hand].key)) {
+                return;
+            }
+            entries.remove(ring[hand].key);
+        }
+        entry = new Entry(key, item, hand);
+        ring[hand] = entry;
+        entries.put(key, entry);
+        hand = (hand + 1) % ring.length;
+    }
+
+    /**
+     * Drops the entry for a key, if there is one
+     * @param key
+     */
+    public void invalidate(Object key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            ring[entry.slot] = null;
+        }
+    }
+
+    /**
+     * Drops every entry; the counters are kept
+     */
+    public void clear() {
+        entries.clear();
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = null;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    // adds a lookup of key to the sketch
+    private void count(Object key) {
+        int hash = spread(key.hashCode());
+        int step = (hash >>> 16) | 1;
+        for (int i = 0; i < 4; i++) {
+            int index = (hash + i * step) & sketchMask;
+            if (sketch[index] < 15) {
+                sketch[index]++;
+            }
+        }
+        if (++samples == sampleSize) {
+            for (int i = 0; i < sketch.length; i++) {
+                sketch[i] >>= 1;
+            }
+            samples = 0;
+        }
+    }
+
+    // estimated lookups of key since the sketch was last halved
+    private int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int step = (hash >>> 16) | 1;
+        int min = 15;
+        for (int i = 0; i < 4; i++) {
+            min = Math.min(min, sketch[(hash + i * step) & sketchMask]);
+        }
+        return min;
+    }
+
+    // mixes the bits of a hash code, which for small Integers are the
+    // value itself
+    private static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 15);
+    }
+
+    /**
+     * A cached key, its Item, its slot in the ring and its referenced bit
+     */
+    private static class Entry {
+        final Object key;
+        Item item;
+        final int slot;
+        boolean referenced = false;
+
+        Entry(Object key, Item item, int slot) {
+            this.key = key;
+            this.item = item;
+            this.slot = slot;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package termproject;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class implements a read-only Dictionary over a tree snapshot, used
+ * in place.
+ *
+ * Title: Term Project 2-4 Trees
+ * @version 1.0
+ * File: MappedTwoFourTree.java
+ * Description: Searches a file written by TwoFourTreeSnapshot without
+ * loading it. The file is mapped into memory, and findElement() walks the
+ * node records directly, starting from the root's at the offset in the
+ * trailer: it decodes the keys of one node at a time, skips elements by
+ * their lengths, and jumps back to a child by the distance stored in the
+ * node. Only the pages a search touches are ever read. Each search makes
+ * one view onto the buffer and decodes every key through it, so nothing
+ * else is put on the heap besides the keys it compares and the element it
+ * returns.
+ *
+ * One mapping cannot be larger than 2 GB, so neither can the file. The
+ * tree cannot be changed; insertElement() and removeElement() throw a
+ * TwoFourTreeException. Searches only read the buffer, so any number of
+ * threads may search at once.
+ */
+
+public class MappedTwoFourTree implements Dictionary {
+
+    // Variable declaration
+    private final ByteBuffer buffer;
+    private final Comparator treeComp;
+    private final Codec keyCodec;
+    private final Codec elementCodec;
+    private final int size;
+    private final int height;
+    private final int rootStart;
+
+    /**
+     * Maps a snapshot file
+     * @param file
+     * @param comp
+     * @param keyCodec
+     * @param elementCodec
+     * @exception IOException if the file is not a snapshot this version can
+     * read
+     */
+    public MappedTwoFourTree(File file, Comparator comp, Codec keyCodec,
+                             Codec elementCodec) throws IOException {
+        this(map(file), comp, keyCodec, elementCodec);
+    }
+
+    /**
+     * Uses a snapshot already in a buffer, from its position to its limit
+     * @param buffer
+     * @param comp
+     * @param keyCodec
+     * @param elementCodec
+     * @exception IOException if the buffer does not hold a snapshot this
+     * version can read
+     */
+    public MappedTwoFourTree(ByteBuffer buffer, Comparator comp,
+                             Codec keyCodec, Codec elementCodec)
+            throws IOException {
+        this.buffer = buffer.slice();
+        treeComp = comp;
+        this.keyCodec = keyCodec;
+        this.elementCodec = elementCodec;
+        int limit = this.buffer.limit();
+        if (limit < TwoFourTreeSnapshot.HEADER_BYTES +
+                    TwoFourTreeSnapshot.TRAILER_BYTES ||
+                this.buffer.getInt(0) != TwoFourTreeSnapshot.MAGIC) {
+            throw new IOException("Not a tree snapshot");
+        }
+        if (this.buffer.getInt(4) != TwoFourTreeSnapshot.VERSION) {
+            throw new IOException("Unsupported snapshot version");
+        }
+        size = this.buffer.getInt(12);
+        height = this.buffer.getInt(16);
+        long root = this.buffer.getLong(limit - TwoFourTreeSnapshot.TRAILER_BYTES);
+        if (root < TwoFourTreeSnapshot.HEADER_BYTES ||
+                root > limit - TwoFourTreeSnapshot.TRAILER_BYTES) {
+            throw new IOException("Corrupt snapshot trailer");
+        }
+        rootStart = (int) root;
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // The mapping stays valid after the file is closed
+            FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns size of the tree
+     * @return size of the tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true is the tree has no elements in it
+     * @return true is size is zero
+     */
+    public boolean isEmpty() {
+        return (size == 0);
+    }
+
+    /**
+     * Searches dictionary to determine if key is present
+     * @param key to be searched for
+     * @return object corresponding to key; null if not found
+     */
+    public Object findElement(Object key) {
+        BufferInput input = new BufferInput(buffer);
+        DataInputStream view = new DataInputStream(input);
+        try {
+            input.next = rootStart;
+            for (int level = 0; level < height; level++) {
+                int recordStart = input.next;
+                long header = input.readVarint();
+                int numItems = (int) (header >>> 1);
+                boolean leaf = ((header & 1) == 0);
+                if (leaf != (level == height - 1)) {
+                    throw new IOException("Node at the wrong level");
+                }
+
+                // Pass over the distances to the children for now
+                int distances = input.next;
+                for (int i = 0; i <= numItems && !leaf; i++) {
+                    input.readVarint();
+                }
+
+                // Find the first item greater than key, skipping the
+                // elements of the ones before it
+                int child = numItems;
+                for (int i = 0; i < numItems; i++) {
+                    int keyLength = (int) input.readVarint();
+                    int cmp = treeComp.compare(decode(input, view, keyCodec, keyLength), key);
+                    int elementLength = (int) input.readVarint();
+                    if (cmp == 0) {
+                        return decode(input, view, elementCodec, elementLength);
+                    }
+                    if (cmp > 0) {
+                        child = i;
+                        break;
+                    }
+                    input.next += elementLength;
+                }
+                if (leaf) {
+                    return null;
+                }
+                input.next = distances;
+                for (int i = 0; i < child; i++) {
+                    input.readVarint();
+                }
+                input.next = recordStart - (int) input.readVarint();
+            }
+            return null;
+        }
+        catch (IOException exc) {
+            throw new TwoFourTreeException("Corrupt snapshot", exc);
+        }
+    }
+
+    /**
+     * Not supported; the snapshot is read-only
+     * @exception TwoFourTreeException always
+     */
+    public void insertElement(Object key, Object element) {
+        throw new TwoFourTreeException("Snapshot is read-only");
+    }
+
+    /**
+     * Not supported; the snapshot is read-only
+     * @exception TwoFourTreeException always
+     */
+    public Object removeElement(Object key) throws ElementNotFoundException {
+        throw new TwoFourTreeException("Snapshot is read-only");
+    }
+
+    // decodes the length bytes at the input's position through view,
+    // and moves the position past them
+    private static Object decode(BufferInput input, DataInputStream view,
+                                 Codec codec, int length) throws IOException {
+        int end = input.next + length;
+        input.end = end;
+        try {
+            return codec.read(view);
+        }
+        finally {
+            input.next = end;
+            input.end = input.buffer.limit();
+        }
+    }
+
+    /**
+     * Reads the buffer from a position of its own, without moving the
+     * buffer's, so searches need not share one. decode() narrows it to one
+     * key or element at a time.
+     */
+    private static class BufferInput extends InputStream {
+        private final ByteBuffer buffer;
+        private int next;
+        private int end;
+
+        BufferInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+            end = buffer.limit();
+        }
+
+        public int read() {
+            return (next < end) ? (buffer.get(next++) & 0xFF) : -1;
+        }
+
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (next >= end) {
+                return -1;
+            }
+            int count = Math.min(length, end - next);
+            for (int i = 0; i < count; i++) {
+                bytes[offset + i] = buffer.get(next++);
+            }
+            return count;
+        }
+
+        // reads a varint and moves past it
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (next >= end) {
+                    throw new IOException("Truncated varint");
+                }
+                int b = buffer.get(next++) & 0xFF;
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+    }
+}
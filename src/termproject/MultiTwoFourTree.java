@@ -0,0 +1,275 @@
+package termproject;
+
+/**
+ * This class implements an ordered multimap: a Dictionary that holds any
+ * number of elements under one key in a single TwoFourTree item.
+ *
+ * Title: Term Project 2-4 Trees
+ * @version 1.0
+ * File: MultiTwoFourTree.java
+ * Description: TwoFourTree itself takes duplicate keys, but gives each one
+ * an Item of its own and a place in the tree, so a key held a thousand
+ * times costs a thousand Items and makes the tree that much taller. Here
+ * the tree holds one Item per distinct key. A key with a single element
+ * keeps the element in its Item directly; once a second one arrives the
+ * Item holds a ValueBucket instead, a growable ring of the elements in
+ * the order they were inserted. The tree's height then depends only on
+ * the number of distinct keys, and a duplicate costs one array slot.
+ *
+ * findElement() returns the first element inserted under a key that is
+ * still there, and removeElement() and removeOne() take out that same
+ * element, so a key's elements leave in the order they came. findAll(),
+ * count() and removeAll() deal with all of a key's elements at once.
+ * size() counts elements, not keys.
+ */
+
+public class MultiTwoFourTree implements Dictionary {
+
+    // Variable declaration
+    private static final Object[] NO_ELEMENTS = new Object[0];
+    private final TwoFourTree tree;
+    private int size = 0;
+
+    /**
+     * Constructor
+     * @param comp
+     */
+    public MultiTwoFourTree(Comparator comp) {
+        tree = new TwoFourTree(comp);
+    }
+
+    /**
+     * Constructor for a multimap over a B-tree of the given order
+     * @param comp
+     * @param order most children a node may have; at least 3
+     */
+    public MultiTwoFourTree(Comparator comp, int order) {
+        tree = new TwoFourTree(comp, order);
+    }
+
+    /**
+     * Returns number of elements in the multimap
+     * @return number of elements, counting every one under a key
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true is the multimap has no elements in it
+     * @return true is size is zero
+     */
+    public boolean isEmpty() {
+        return (size == 0);
+    }
+
+    /**
+     * Returns number of distinct keys in the multimap
+     * @return number of keys
+     */
+    public int keyCount() {
+        return tree.size();
+    }
+
+    /**
+     * Searches the multimap for the first element under a key
+     * @param key to be searched for
+     * @return earliest inserted element still under key; null if not found
+     */
+    public Object findElement(Object key) {
+        Item item = tree.findItem(key);
+        if (item == null) {
+            return null;
+        }
+        Object held = item.element();
+        if (held instanceof ValueBucket) {
+            return ((ValueBucket) held).get(0);
+        }
+        return held;
+    }
+
+    /**
+     * Finds every element under a key
+     * @param key to be searched for
+     * @return the elements in the order they were inserted; empty if the
+     * key is not present
+     */
+    public Object[] findAll(Object key) {
+        Item item = tree.findItem(key);
+        return (item == null) ? NO_ELEMENTS : elementsOf(item);
+    }
+
+    /**
+     * Counts the elements under a key
+     * @param key to be searched for
+     * @return number of elements; 0 if the key is not present
+     */
+    public int count(Object key) {
+        Item item = tree.findItem(key);
+        if (item == null) {
+            return 0;
+        }
+        Object held = item.element();
+        return (held instanceof ValueBucket) ? ((ValueBucket) held).size() : 1;
+    }
+
+    /**
+     * Adds an element under a key, after any already there
+     * @param key of object to be inserted
+     * @param element to be inserted
+     */
+    public void insertElement(Object key, Object element) {
+        Item item = tree.findItem(key);
+        if (item == null) {
+            tree.insertElement(key, element);
+        }
+        else if (item.element() instanceof ValueBucket) {
+            ((ValueBucket) item.element()).add(element);
+        }
+        else {
+            // The second element turns the Item's element into a bucket;
+            // the Item stays where it is in the tree
+            ValueBucket bucket = new ValueBucket(item.element());
+            bucket.add(element);
+            item.setElement(bucket);
+        }
+        size++;
+    }
+
+    /**
+     * Removes and returns the first element inserted under a key, the one
+     * findElement() returns
+     * @param key of data to be removed
+     * @return the element removed
+     * @exception TwoFourTreeException if the multimap is empty
+     * @exception ElementNotFoundException if the key is not in the multimap
+     */
+    public Object removeElement(Object key) throws ElementNotFoundException {
+        return removeOne(key);
+    }
+
+    /**
+     * Removes and returns the first element inserted under a key, the one
+     * findElement() returns
+     * @param key of data to be removed
+     * @return the element removed
+     * @exception TwoFourTreeException if the multimap is empty
+     * @exception ElementNotFoundException if the key is not in the multimap
+     */
+    public Object removeOne(Object key) throws ElementNotFoundException {
+        // If tree is empty throw exception, as TwoFourTree does
+        if (isEmpty()) {
+            throw new TwoFourTreeException();
+        }
+
+        Item item = tree.findItem(key);
+        if (item == null) {
+            throw new ElementNotFoundException();
+        }
+        Object removed;
+        if (item.element() instanceof ValueBucket) {
+            ValueBucket bucket = (ValueBucket) item.element();
+            removed = bucket.removeFirst();
+            // Down to one element, the Item holds it directly again
+            if (bucket.size() == 1) {
+                item.setElement(bucket.get(0));
+            }
+        }
+        else {
+            removed = tree.removeElement(key);
+        }
+        size--;
+        return removed;
+    }
+
+    /**
+     * Removes every element under a key
+     * @param key of data to be removed
+     * @return the elements removed, in the order they were inserted; empty
+     * if the key was not present
+     */
+    public Object[] removeAll(Object key) {
+        Item item = tree.findItem(key);
+        if (item == null) {
+            return NO_ELEMENTS;
+        }
+        Object[] removed = elementsOf(item);
+        tree.removeElement(key);
+        size -= removed.length;
+        return removed;
+    }
+
+    // the elements an Item holds, oldest first
+    private static Object[] elementsOf(Item item) {
+        Object held = item.element();
+        if (held instanceof ValueBucket) {
+            return ((ValueBucket) held).toArray();
+        }
+        return new Object[] { held };
+    }
+
+    /**
+     * Holds two or more elements of one key, oldest first, in a ring so
+     * that the oldest can be taken out without shifting the rest
+     */
+    private static class ValueBucket {
+        // A power of two long, so an index wraps with a mask
+        private Object[] elements;
+        private int head;
+        private int count;
+
+        ValueBucket(Object first) {
+            elements = new Object[4];
+            elements[0] = first;
+            head = 0;
+            count = 1;
+        }
+
+        int size() {
+            return count;
+        }
+
+        Object get(int index) {
+            return elements[(head + index) & (elements.length - 1)];
+        }
+
+        void add(Object element) {
+            if (count == elements.length) {
+                resize(count * 2);
+            }
+            elements[(head + count) & (elements.length - 1)] = element;
+            count++;
+        }
+
+        Object removeFirst() {
+            Object removed = elements[head];
+            elements[head] = null;
+            head = (head + 1) & (elements.length - 1);
+            count--;
+            // Give back room once a key has lost most of its elements
+            if (count >= 4 && count * 4 <= elements.length) {
+                resize(elements.length / 2);
+            }
+            return removed;
+        }
+
+        Object[] toArray() {
+            Object[] copy = new Object[count];
+            int first = Math.min(count, elements.length - head);
+            System.arraycopy(elements, head, copy, 0, first);
+            System.arraycopy(elements, 0, copy, first, count - first);
+            return copy;
+        }
+
+        // copies the elements, oldest first, into an array of the given
+        // length
+        private void resize(int length) {
+            Object[] copy = new Object[length];
+            int first = Math.min(count, elements.length - head);
+            System.arraycopy(elements, head, copy, 0, first);
+            System.arraycopy(elements, 0, copy, first, count - first);
+            elements = copy;
+            head = 0;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package termproject;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Off-heap storage for the nodes of an OffHeapTwoFourTree
+ *
+ * @version 1.0
+ * Description: Holds 2-4 tree nodes as fixed-size records in direct
+ * ByteBuffers, outside the Java heap. A node is named by an int id instead
+ * of a reference, and its record holds the same fields as a LongTFNode:
+ *
+ *      numItems    int
+ *      parent      int                 node id, or NIL
+ *      children    int[MAX_ITEMS+2]    node ids, or NIL
+ *      keys        long[MAX_ITEMS+1]
+ *      values      long[MAX_ITEMS+1]
+ *
+ * so the collector sees a handful of buffer objects however many nodes
+ * there are. Records are handed out from chunks of CHUNK_BYTES, allocated
+ * as the arena grows, so no single buffer has to be larger than 2 GB. Freed
+ * records go on a free list, threaded through their parent field, and are
+ * reused before a new one is carved out. The memory of a chunk is given
+ * back once the arena itself is no longer referenced.
+ *
+ * A subclass may keep the chunks somewhere else, as PagedNodeArena keeps
+ * them in a file, by overriding chunk() and addChunk(); every change to a
+ * record fetches its chunk with write set, so the subclass knows which
+ * chunks are dirty.
+ *
+ * The node methods mirror those of LongTFNode, taking the node id as the
+ * first argument, and check their indexes the same way.
+ */
+
+public class NodeArena {
+
+    public static final int NIL = -1;
+
+    private static final int MAX_ITEMS = 3;
+    private static final int CHUNK_BYTES = 1 << 20;
+
+        // byte offsets of the fields within a record; the longs are kept
+        // 8-byte aligned
+    private static final int NUM_ITEMS = 0;
+    private static final int PARENT = 4;
+    private static final int CHILDREN = 8;
+    private static final int KEYS = (CHILDREN + 4*(MAX_ITEMS+2) + 7) & ~7;
+    private static final int VALUES = KEYS + 8*(MAX_ITEMS+1);
+    public static final int NODE_BYTES = VALUES + 8*(MAX_ITEMS+1);
+
+    private final int chunkShift;
+    private final int chunkMask;
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+    private int numChunks = 0;
+        // ids below this have been handed out at least once
+    private int nextNode = 0;
+    private int freeList = NIL;
+    private int liveNodes = 0;
+
+    public NodeArena() {
+        this (CHUNK_BYTES);
+    }
+
+        // for subclasses that keep chunks of a given size elsewhere
+    protected NodeArena(int chunkBytes) {
+        if (chunkBytes < NODE_BYTES)
+            throw new TFNodeException("Chunk smaller than a node");
+            // a power of two nodes per chunk, so an id splits into chunk and
+            // slot with a shift and a mask
+        int nodesPerChunk = Integer.highestOneBit(chunkBytes / NODE_BYTES);
+        chunkShift = Integer.numberOfTrailingZeros(nodesPerChunk);
+        chunkMask = nodesPerChunk - 1;
+    }
+
+        // returns a fresh empty leaf with no parent
+    public int allocate() {
+        int node;
+        if (freeList != NIL) {
+            node = freeList;
+            freeList = buffer(node).getInt(offset(node) + PARENT);
+        }
+        else {
+            if (nextNode == Integer.MAX_VALUE)
+                throw new TFNodeException("Node arena is full");
+            node = nextNode++;
+            if ((node >>> chunkShift) == numChunks) {
+                addChunk();
+                numChunks++;
+            }
+        }
+        ByteBuffer buf = writable(node);
+        int base = offset(node);
+        buf.putInt(base + NUM_ITEMS, 0);
+        buf.putInt(base + PARENT, NIL);
+        for (int ind=0; ind < MAX_ITEMS+2; ind++) {
+            buf.putInt(base + CHILDREN + 4*ind, NIL);
+        }
+        liveNodes++;
+        return node;
+    }
+
+        // puts a node back for reuse; the caller must have unlinked it
+    public void free(int node) {
+        writable(node).putInt(offset(node) + PARENT, freeList);
+        freeList = node;
+        liveNodes--;
+    }
+
+        // drops every node, and the chunks with them
+    public void clear() {
+        chunks = new ByteBuffer[4];
+        numChunks = 0;
+        nextNode = 0;
+        freeList = NIL;
+        liveNodes = 0;
+    }
+
+    public int getLiveNodes() {
+        return liveNodes;
+    }
+
+        // off-heap bytes held, including free records
+    public long getCapacityBytes() {
+        return (long) numChunks * getChunkBytes();
+    }
+
+    public int getNumItems (int node) {
+        return buffer(node).getInt(offset(node) + NUM_ITEMS);
+    }
+
+    public int getMaxItems() {
+        return MAX_ITEMS;
+    }
+
+    public boolean isLeaf(int node) {
+        return (getChild(node, 0) == NIL);
+    }
+
+    public int getParent(int node) {
+        return buffer(node).getInt(offset(node) + PARENT);
+    }
+    public void setParent (int node, int parent) {
+        writable(node).putInt(offset(node) + PARENT, parent);
+    }
+    public long getKey(int node, int index) {
+        checkItem(node, index);
+        return buffer(node).getLong(offset(node) + KEYS + 8*index);
+    }
+    public long getValue(int node, int index) {
+        checkItem(node, index);
+        return buffer(node).getLong(offset(node) + VALUES + 8*index);
+    }
+        // adds, but does not extend array; so it overwrites anything there
+    public void addItem (int node, int index, long key, long value) {
+        int numItems = getNumItems(node);
+        if ( (index < 0) || (index > numItems) || (index > MAX_ITEMS) )
+            throw new TFNodeException();
+        ByteBuffer buf = writable(node);
+        int base = offset(node);
+        buf.putLong(base + KEYS + 8*index, key);
+        buf.putLong(base + VALUES + 8*index, value);
+        buf.putInt(base + NUM_ITEMS, numItems+1);
+    }
+        // inserts an item and shifts the child pointers the same way
+        // TFNode.insertItem does
+    public void insertItem (int node, int index, long key, long value) {
+        int numItems = getNumItems(node);
+        if ( (index < 0) || (index > numItems) || (index > MAX_ITEMS) )
+            throw new TFNodeException();
+        ByteBuffer buf = writable(node);
+        int base = offset(node);
+        for (int ind=numItems; ind > index; ind--) {
+            buf.putLong(base + KEYS + 8*ind, buf.getLong(base + KEYS + 8*(ind-1)));
+            buf.putLong(base + VALUES + 8*ind, buf.getLong(base + VALUES + 8*(ind-1)));
+        }
+        buf.putLong(base + KEYS + 8*index, key);
+        buf.putLong(base + VALUES + 8*index, value);
+        for (int ind=numItems+1; ind > index; ind--) {
+            buf.putInt(base + CHILDREN + 4*ind, buf.getInt(base + CHILDREN + 4*(ind-1)));
+        }
+        buf.putInt(base + NUM_ITEMS, numItems+1);
+    }
+        // removes item and the child with the same index, and shrinks arrays;
+        // returns the removed value
+    public long removeItem (int node, int index) {
+        checkItem(node, index);
+        int numItems = getNumItems(node);
+        ByteBuffer buf = writable(node);
+        int base = offset(node);
+        long removedValue = buf.getLong(base + VALUES + 8*index);
+        for (int ind=index; ind < numItems-1; ind++) {
+            buf.putLong(base + KEYS + 8*ind, buf.getLong(base + KEYS + 8*(ind+1)));
+            buf.putLong(base + VALUES + 8*ind, buf.getLong(base + VALUES + 8*(ind+1)));
+        }
+        for (int ind=index; ind < numItems; ind++) {
+            buf.putInt(base + CHILDREN + 4*ind, buf.getInt(base + CHILDREN + 4*(ind+1)));
+        }
+        buf.putInt(base + CHILDREN + 4*numItems, NIL);
+        buf.putInt(base + NUM_ITEMS, numItems-1);
+        return removedValue;
+    }
+        // removes the last item, but leaves the child pointers alone
+    public void deleteLastItem (int node) {
+        int numItems = getNumItems(node);
+        if (numItems == 0)
+            throw new TFNodeException();
+        writable(node).putInt(offset(node) + NUM_ITEMS, numItems-1);
+    }
+        // replaces the item at index
+    public void replaceItem (int node, int index, long key, long value) {
+        checkItem(node, index);
+        ByteBuffer buf = writable(node);
+        int base = offset(node);
+        buf.putLong(base + KEYS + 8*index, key);
+        buf.putLong(base + VALUES + 8*index, value);
+    }
+
+    public int getChild (int node, int index) {
+        if ( (index < 0) || (index > (MAX_ITEMS+1)) )
+            throw new TFNodeException();
+        return buffer(node).getInt(offset(node) + CHILDREN + 4*index);
+    }
+    public void setChild (int node, int index, int child) {
+        if ( (index < 0) || (index > (MAX_ITEMS+1)) )
+            throw new TFNodeException();
+        writable(node).putInt(offset(node) + CHILDREN + 4*index, child);
+    }
+
+    private void checkItem(int node, int index) {
+        if ( (index < 0) || (index > (getNumItems(node)-1) ) )
+            throw new TFNodeException();
+    }
+
+    private ByteBuffer buffer(int node) {
+        return chunk(node >>> chunkShift, false);
+    }
+
+    private ByteBuffer writable(int node) {
+        return chunk(node >>> chunkShift, true);
+    }
+
+    private int offset(int node) {
+        return (node & chunkMask) * NODE_BYTES;
+    }
+
+        // returns the buffer holding a chunk; write is set when the caller
+        // is about to change it
+    protected ByteBuffer chunk(int index, boolean write) {
+        return chunks[index];
+    }
+
+        // makes room for chunk numChunks; the caller counts it afterwards
+    protected void addChunk() {
+        if (numChunks == chunks.length) {
+            ByteBuffer[] newChunks = new ByteBuffer[numChunks * 2];
+            System.arraycopy(chunks, 0, newChunks, 0, numChunks);
+            chunks = newChunks;
+        }
+        chunks[numChunks] = ByteBuffer.allocateDirect(getChunkBytes())
+                                      .order(ByteOrder.nativeOrder());
+    }
+
+        // bytes of a chunk that hold records
+    protected int getChunkBytes() {
+        return (chunkMask+1) * NODE_BYTES;
+    }
+
+        // the allocation state, for a subclass that saves the arena and
+        // opens it again
+    protected int getNumChunks() {
+        return numChunks;
+    }
+    protected int getNextNode() {
+        return nextNode;
+    }
+    protected int getFreeList() {
+        return freeList;
+    }
+    protected void restore(int numChunks, int nextNode, int freeList,
+                           int liveNodes) {
+        this.numChunks = numChunks;
+        this.nextNode = nextNode;
+        this.freeList = freeList;
+        this.liveNodes = liveNodes;
+    }
+}
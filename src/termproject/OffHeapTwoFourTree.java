@@ -0,0 +1,512 @@
+package termproject;
+
+/**
+ * This class implements the (2,4)-Tree ADT for long keys and values, with
+ * its nodes stored off the Java heap.
+ *
+ * Title: Term Project 2-4 Trees
+ * @version 1.0
+ * File: OffHeapTwoFourTree.java
+ * Description: The LongTwoFourTree algorithms run over a NodeArena instead
+ * of LongTFNode objects. Nodes are int ids into direct buffers, and keys
+ * and values are stored inline as longs, so however many entries the tree
+ * holds, the collector only ever sees the arena's few chunk buffers, and
+ * the tree can grow past the heap up to the limit on direct memory
+ * (-XX:MaxDirectMemorySize).
+ *
+ * The search, split and fusion steps are those of PrimitiveTwoFourTree,
+ * but written out here over raw node ids, with NIL for a missing node. The
+ * shared version works on node references, and an id would have to be
+ * boxed to pass as one, which puts back on the heap the garbage this class
+ * exists to keep off it. A fix to either copy belongs in the other.
+ *
+ * Values have to be longs for the same reason keys do; a caller with larger
+ * values keeps them in its own storage and puts their offsets here. The long
+ * overloads are the fast path and allocate nothing except the Long that
+ * findElement() and removeElement() return; findValue() avoids even that.
+ * The Dictionary methods accept Long keys and elements and unbox them once
+ * on entry. Duplicate keys are handled the same way as in TwoFourTree.
+ */
+
+public class OffHeapTwoFourTree implements Dictionary {
+
+    // Variable declaration
+    private static final int NIL = NodeArena.NIL;
+    private final NodeArena arena;
+    private int size;
+    private int treeRoot;
+
+    /**
+     * Constructor
+     */
+    public OffHeapTwoFourTree() {
+        this(new NodeArena(), NIL, 0);
+    }
+
+    /**
+     * Constructor for a tree whose nodes are already in an arena
+     * @param arena
+     * @param root node id of the root; NIL for an empty tree
+     * @param size number of items under root
+     */
+    protected OffHeapTwoFourTree(NodeArena arena, int root, int size) {
+        this.arena = arena;
+        treeRoot = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns size of the tree
+     * @return size of the tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true is the tree has no elements in it
+     * @return true is size is zero
+     */
+    public boolean isEmpty() {
+        return (size == 0);
+    }
+
+    /**
+     * Returns the node id of the root
+     * @return root of the tree; NIL if it is empty
+     */
+    protected int root() {
+        return treeRoot;
+    }
+
+    /**
+     * Returns the off-heap memory the tree's nodes take up
+     * @return bytes of direct memory held by the arena
+     */
+    public long offHeapBytes() {
+        return arena.getCapacityBytes();
+    }
+
+    /**
+     * Searches dictionary to determine if key is present
+     * @param key to be searched for; must be a Long
+     * @return value corresponding to key, as a Long; null if not found
+     */
+    public Object findElement(Object key) {
+        return findElement(toLong(key));
+    }
+
+    /**
+     * Searches dictionary to determine if key is present
+     * @param key to be searched for
+     * @return value corresponding to key, as a Long; null if not found
+     */
+    public Object findElement(long key) {
+        // An empty tree has nothing to find
+        if (isEmpty()) {
+            return null;
+        }
+
+        int foundNode = findNode(key);
+        int index = FFGTE(foundNode, key);
+
+        if (!isMatch(foundNode, index, key)) {
+            return null;
+        }
+        return Long.valueOf(arena.getValue(foundNode, index));
+    }
+
+    /**
+     * Searches dictionary to determine if key is present, without boxing
+     * @param key to be searched for
+     * @param notFound returned if the key is not present
+     * @return value corresponding to key; notFound if not found
+     */
+    public long findValue(long key, long notFound) {
+        if (isEmpty()) {
+            return notFound;
+        }
+
+        int foundNode = findNode(key);
+        int index = FFGTE(foundNode, key);
+
+        if (!isMatch(foundNode, index, key)) {
+            return notFound;
+        }
+        return arena.getValue(foundNode, index);
+    }
+
+    /**
+     * Inserts provided element into the Dictionary
+     * @param key of object to be inserted; must be a Long
+     * @param element to be inserted; must be a Long
+     */
+    public void insertElement(Object key, Object element) {
+        insertElement(toLong(key), toLong(element));
+    }
+
+    /**
+     * Inserts provided value into the Dictionary
+     * @param key of value to be inserted
+     * @param value to be inserted
+     */
+    public void insertElement(long key, long value) {
+        // Check for root
+        if (isEmpty()) {
+            int newRoot = arena.allocate();
+            arena.addItem(newRoot, 0, key, value);
+            treeRoot = newRoot;
+        }
+        else {
+            // Find the correct place to put the item
+            int insertNode = findNode(key);
+            int childIndex = FFGTE(insertNode, key);
+
+            // If we have a tie, insert at the inorder successor instead
+            if (isMatch(insertNode, childIndex, key)) {
+                insertNode = findIOS(insertNode, childIndex);
+                childIndex = FFGTE(insertNode, key);
+            }
+
+            // Perform a shifting insert into the leaf
+            arena.insertItem(insertNode, childIndex, key, value);
+
+            // Check for overflow
+            if (arena.getNumItems(insertNode) > arena.getMaxItems()) {
+                overflow(insertNode);
+            }
+        }
+
+        size++;
+    }
+
+    /**
+     * Searches dictionary to determine if key is present, then
+     * removes and returns corresponding object
+     * @param key of data to be removed; must be a Long
+     * @return value corresponding to key, as a Long
+     * @exception ElementNotFoundException if the key is not in dictionary
+     */
+    public Object removeElement(Object key) throws ElementNotFoundException {
+        return removeElement(toLong(key));
+    }
+
+    /**
+     * Searches dictionary to determine if key is present, then
+     * removes and returns corresponding object
+     * @param key of data to be removed
+     * @return value corresponding to key, as a Long
+     * @exception ElementNotFoundException if the key is not in dictionary
+     */
+    public Object removeElement(long key) throws ElementNotFoundException {
+        // If tree is empty throw exception
+        if (isEmpty()) {
+            throw new TwoFourTreeException();
+        }
+
+        // Find node to delete from
+        int deleteNode = findNode(key);
+        int deleteIndex = FFGTE(deleteNode, key);
+
+        // Check for missing element
+        if (!isMatch(deleteNode, deleteIndex, key)) {
+            throw new ElementNotFoundException();
+        }
+
+        long removedValue = arena.getValue(deleteNode, deleteIndex);
+
+        // If leaf, just delete
+        if (arena.isLeaf(deleteNode)) {
+            arena.removeItem(deleteNode, deleteIndex);
+        }
+        // If internal, move inorder successor up to replace the deleted item
+        else {
+            int nodeIOS = findIOS(deleteNode, deleteIndex);
+            arena.replaceItem(deleteNode, deleteIndex, arena.getKey(nodeIOS, 0),
+                              arena.getValue(nodeIOS, 0));
+            arena.removeItem(nodeIOS, 0);
+            deleteNode = nodeIOS;
+        }
+
+        // Check for underflow
+        if (arena.getNumItems(deleteNode) == 0) {
+            underflow(deleteNode);
+        }
+
+        size--;
+        return Long.valueOf(removedValue);
+    }
+
+    /**
+     * Unboxes a Dictionary key or element
+     * @param key
+     * @return long value of key
+     */
+    private long toLong(Object key) {
+        try {
+            return ((Long) key).longValue();
+        }
+        catch (ClassCastException exc) {
+            throw new InvalidIntegerException("Object not a long");
+        }
+    }
+
+    /**
+     * Walks down from the root to the node containing key
+     * @param key to be searched for
+     * @return node containing key; the leaf where the search ended if not found
+     */
+    private int findNode(long key) {
+        int node = treeRoot;
+        while (true) {
+            int index = FFGTE(node, key);
+            if (isMatch(node, index, key) || arena.isLeaf(node)) {
+                return node;
+            }
+            node = arena.getChild(node, index);
+        }
+    }
+
+    /**
+     * Determines if the item at index holds the given key
+     * @param node
+     * @param index as returned by FFGTE
+     * @param key
+     * @return true if the item at index is equal to key
+     */
+    private boolean isMatch(int node, int index, long key) {
+        return (index != arena.getNumItems(node) && arena.getKey(node, index) == key);
+    }
+
+    /**
+     * Finds the first item which is larger or equal to the given key
+     * @param thisNode
+     * @param key
+     * @return index of that item; number of items if there is none
+     */
+    private int FFGTE(int thisNode, long key) {
+        int numItems = arena.getNumItems(thisNode);
+        for (int i = 0; i < numItems; i++) {
+            if (arena.getKey(thisNode, i) >= key) {
+                return i;
+            }
+        }
+        return numItems;
+    }
+
+    /**
+     * Returns the index of the passed child node in the parent's array
+     * @param thisNode
+     * @return index of child
+     */
+    private int WCAI(int thisNode) {
+        int parent = arena.getParent(thisNode);
+        for (int i = 0; i <= arena.getNumItems(parent); i++) {
+            if (arena.getChild(parent, i) == thisNode) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns node in which the inorder successor of an item is located
+     * @param node
+     * @param index of the item in node
+     * @return node of inorder successor
+     */
+    private int findIOS(int node, int index) {
+        if (!arena.isLeaf(node)) {
+            node = arena.getChild(node, index + 1);
+            while (!arena.isLeaf(node)) {
+                node = arena.getChild(node, 0);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Fix tree on overflow
+     * @param oFNode
+     */
+    private void overflow(int oFNode) {
+        // Split the fourth item off into its own node
+        int splitNode = arena.allocate();
+        arena.addItem(splitNode, 0, arena.getKey(oFNode, 3), arena.getValue(oFNode, 3));
+        arena.setChild(splitNode, 0, arena.getChild(oFNode, 3));
+        arena.setChild(splitNode, 1, arena.getChild(oFNode, 4));
+        if (!arena.isLeaf(splitNode)) {
+            arena.setParent(arena.getChild(splitNode, 0), splitNode);
+            arena.setParent(arena.getChild(splitNode, 1), splitNode);
+        }
+
+        // Copy the third item up, to a new root if we're at the root
+        int parentNode;
+        int childIndex;
+        if (oFNode == treeRoot) {
+            parentNode = arena.allocate();
+            childIndex = 0;
+            arena.addItem(parentNode, 0, arena.getKey(oFNode, 2), arena.getValue(oFNode, 2));
+            arena.setChild(parentNode, 0, oFNode);
+            arena.setParent(oFNode, parentNode);
+            treeRoot = parentNode;
+        }
+        else {
+            // Shove the item up to the parent
+            parentNode = arena.getParent(oFNode);
+            childIndex = WCAI(oFNode);
+            arena.insertItem(parentNode, childIndex, arena.getKey(oFNode, 2),
+                             arena.getValue(oFNode, 2));
+        }
+
+        // Hook up the new child
+        arena.setChild(parentNode, childIndex + 1, splitNode);
+        arena.setParent(splitNode, parentNode);
+
+        // Remove the third and fourth items, keeping the third's left child
+        int childC = arena.getChild(oFNode, 2);
+        arena.removeItem(oFNode, 2);
+        arena.removeItem(oFNode, 2);
+        arena.setChild(oFNode, 2, childC);
+
+        if (arena.getNumItems(parentNode) > arena.getMaxItems()) {
+            overflow(parentNode);
+        }
+    }
+
+    /**
+     * Fix tree on underflow
+     * @param uFNode
+     */
+    private void underflow(int uFNode) {
+        // Special case if the root has underflowed; its record goes back to
+        // the arena
+        if (uFNode == treeRoot) {
+            treeRoot = arena.getChild(uFNode, 0);
+            if (treeRoot != NIL) {
+                arena.setParent(treeRoot, NIL);
+            }
+            arena.free(uFNode);
+            return;
+        }
+
+        int parentNode = arena.getParent(uFNode);
+        int childIndex = WCAI(uFNode);
+
+        if (childIndex > 0 &&
+                arena.getNumItems(arena.getChild(parentNode, childIndex - 1)) > 1) {
+            leftTransfer(uFNode, parentNode, childIndex);
+        }
+        else if (childIndex < arena.getNumItems(parentNode) &&
+                arena.getNumItems(arena.getChild(parentNode, childIndex + 1)) > 1) {
+            rightTransfer(uFNode, parentNode, childIndex);
+        }
+        else if (childIndex != 0) {
+            leftFusion(uFNode, parentNode, childIndex);
+        }
+        else {
+            rightFusion(uFNode, parentNode);
+        }
+    }
+
+    /**
+     * Transfers left sibling's item with parent and emptyNode
+     * @param emptyNode
+     * @param parentNode
+     * @param emptyIndex child index of emptyNode
+     */
+    private void leftTransfer(int emptyNode, int parentNode, int emptyIndex) {
+        int siblingNode = arena.getChild(parentNode, emptyIndex - 1);
+        int last = arena.getNumItems(siblingNode) - 1;
+
+        // Copy down the parent item and adopt the sibling's largest child
+        arena.addItem(emptyNode, 0, arena.getKey(parentNode, emptyIndex - 1),
+                      arena.getValue(parentNode, emptyIndex - 1));
+        arena.setChild(emptyNode, 1, arena.getChild(emptyNode, 0));
+        arena.setChild(emptyNode, 0, arena.getChild(siblingNode, last + 1));
+        if (!arena.isLeaf(emptyNode)) {
+            arena.setParent(arena.getChild(emptyNode, 0), emptyNode);
+        }
+        arena.setChild(siblingNode, last + 1, NIL);
+
+        // Move the sibling's largest item up to the parent
+        arena.replaceItem(parentNode, emptyIndex - 1, arena.getKey(siblingNode, last),
+                          arena.getValue(siblingNode, last));
+        arena.deleteLastItem(siblingNode);
+    }
+
+    /**
+     * Transfers right sibling's item with parent and emptyNode
+     * @param emptyNode
+     * @param parentNode
+     * @param emptyIndex child index of emptyNode
+     */
+    private void rightTransfer(int emptyNode, int parentNode, int emptyIndex) {
+        int siblingNode = arena.getChild(parentNode, emptyIndex + 1);
+
+        // Copy down the parent item, then move the sibling's smallest up
+        arena.addItem(emptyNode, 0, arena.getKey(parentNode, emptyIndex),
+                      arena.getValue(parentNode, emptyIndex));
+        arena.replaceItem(parentNode, emptyIndex, arena.getKey(siblingNode, 0),
+                          arena.getValue(siblingNode, 0));
+
+        // Adopt the sibling's smallest child
+        arena.setChild(emptyNode, 1, arena.getChild(siblingNode, 0));
+        if (!arena.isLeaf(emptyNode)) {
+            arena.setParent(arena.getChild(emptyNode, 1), emptyNode);
+        }
+        arena.removeItem(siblingNode, 0);
+    }
+
+    /**
+     * Fuses emptyNode with left sibling
+     * @param emptyNode
+     * @param parentNode
+     * @param emptyIndex child index of emptyNode
+     */
+    private void leftFusion(int emptyNode, int parentNode, int emptyIndex) {
+        int siblingNode = arena.getChild(parentNode, emptyIndex - 1);
+
+        // Copy down the parent item and adopt the empty node's child
+        arena.addItem(siblingNode, 1, arena.getKey(parentNode, emptyIndex - 1),
+                      arena.getValue(parentNode, emptyIndex - 1));
+        arena.setChild(siblingNode, 2, arena.getChild(emptyNode, 0));
+        if (!arena.isLeaf(siblingNode)) {
+            arena.setParent(arena.getChild(siblingNode, 2), siblingNode);
+        }
+
+        // Delete the parent item, then point its slot at the fused node
+        arena.removeItem(parentNode, emptyIndex - 1);
+        arena.setChild(parentNode, emptyIndex - 1, siblingNode);
+        arena.free(emptyNode);
+
+        if (arena.getNumItems(parentNode) == 0) {
+            underflow(parentNode);
+        }
+    }
+
+    /**
+     * Fuses emptyNode with right sibling
+     * @param emptyNode
+     * @param parentNode
+     */
+    private void rightFusion(int emptyNode, int parentNode) {
+        int siblingNode = arena.getChild(parentNode, 1);
+
+        // Copy down the parent item and adopt the empty node's child
+        arena.insertItem(siblingNode, 0, arena.getKey(parentNode, 0),
+                         arena.getValue(parentNode, 0));
+        arena.setChild(siblingNode, 0, arena.getChild(emptyNode, 0));
+        if (!arena.isLeaf(siblingNode)) {
+            arena.setParent(arena.getChild(siblingNode, 0), siblingNode);
+        }
+
+        // Deleting the parent item also drops the empty node's pointer
+        arena.removeItem(parentNode, 0);
+        arena.free(emptyNode);
+
+        if (arena.getNumItems(parentNode) == 0) {
+            underflow(parentNode);
+        }
+    }
+}
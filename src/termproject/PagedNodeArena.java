@@ -0,0 +1,426 @@
+package termproject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * File-backed storage for the nodes of a PagedTwoFourTree
+ *
+ * @version 1.0
+ * Description: A NodeArena whose chunks are fixed-size pages of a file.
+ * Pages are read on first use into a buffer pool that holds at most
+ * cachePages of them and evicts the least recently used, writing it back
+ * first if it was changed. Opening a file reads only the header and the
+ * page table, four bytes for every page of nodes, so the tree pages in as
+ * it is searched.
+ *
+ * The file is updated by shadow paging. A page table maps each chunk to
+ * the file page holding it, and a page that the last flush wrote is never
+ * written over: the first time a chunk is written back after a flush, it
+ * goes to a free page and the table is changed to point there. flush()
+ * writes the dirty pages, then the page table into free pages as well,
+ * then switches to all of it with a single header write. The header is
+ * kept twice, in pages 0 and 1, and each flush writes the copy the last
+ * flush did not, with a sequence number and a checksum; opening a file
+ * takes the newest copy that checks out. A crash at any point therefore
+ * leaves the tree as of the last flush, and whatever was written since is
+ * not referenced by it. The pages the last flush replaced are reused only
+ * once the next one is on disk.
+ *
+ * A page holds 32 records of NodeArena.NODE_BYTES, packed in the order the
+ * nodes were allocated rather than by where they sit in the tree. A search
+ * may read a different page on every level, and changing one node writes
+ * back the other 31 with it. The records stay at order 4, so that the
+ * arena can be searched and rebalanced by PrimitiveTwoFourTree; a node as
+ * large as a page, in the manner of TwoFourTree's configurable order,
+ * would make every page read count, but needs a split and fusion that work
+ * for any order.
+ *
+ * Page I/O that fails during a tree operation is reported as a
+ * TwoFourTreeException, since the Dictionary methods cannot throw
+ * IOException.
+ */
+
+public class PagedNodeArena extends NodeArena {
+
+    public static final int PAGE_BYTES = 4096;
+
+    private static final int MAGIC = 0x32344654;    // "24FT"
+        // fixed, so a file can be moved between machines
+    private static final ByteOrder FILE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final int VERSION = 2;
+        // pages 0 and 1 hold the two copies of the header
+    private static final int HEADER_PAGES = 2;
+        // file page of a chunk that has never been written back
+    private static final int NONE = -1;
+        // chunks listed in a page of the page table, after its link to the
+        // next page
+    private static final int TABLE_ENTRIES = PAGE_BYTES/4 - 1;
+
+        // byte offsets of the header fields; the checksum covers the bytes
+        // before it
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_PAGE_BYTES = 8;
+    private static final int H_NUM_CHUNKS = 12;
+    private static final int H_SEQUENCE = 16;
+    private static final int H_NEXT_NODE = 24;
+    private static final int H_FREE_LIST = 28;
+    private static final int H_LIVE_NODES = 32;
+    private static final int H_ROOT = 36;
+    private static final int H_SIZE = 40;
+    private static final int H_TABLE = 44;
+    private static final int H_CHECKSUM = 48;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int cachePages;
+        // access-ordered, so iteration starts at the least recently used
+    private final LinkedHashMap<Integer, Page> pool;
+        // file page of each chunk, or NONE
+    private int[] pageTable = new int[16];
+        // file pages of the page table the last flush wrote
+    private BitSet tablePages = new BitSet();
+        // file pages in use by neither the flushed tree nor the current one
+    private final BitSet freePages = new BitSet();
+        // file pages written since the last flush, which may be written again
+    private final BitSet freshPages = new BitSet();
+        // file pages of the flushed tree that the current one has moved off;
+        // free once the next flush is on disk
+    private final BitSet releasedPages = new BitSet();
+    private int filePages = HEADER_PAGES;
+    private long sequence = 0;
+    private int savedRoot = NIL;
+    private int savedSize = 0;
+
+    /**
+     * Opens the file, creating an empty arena in it if it is new
+     * @param path
+     * @param cachePages most pages held in memory at once
+     * @exception IOException if the file cannot be read, or is not a tree
+     * file
+     */
+    public PagedNodeArena(File path, int cachePages) throws IOException {
+        super (PAGE_BYTES);
+        if (cachePages < 1)
+            throw new IllegalArgumentException("cachePages < 1");
+        this.cachePages = cachePages;
+        pool = new LinkedHashMap<Integer, Page>(16, 0.75f, true);
+        Arrays.fill(pageTable, NONE);
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+        try {
+            if (channel.size() == 0) {
+                writeHeader(NONE, sequence);
+                channel.force(true);
+            }
+            else {
+                readHeader();
+            }
+        }
+        catch (IOException exc) {
+            file.close();
+            throw exc;
+        }
+    }
+
+        // root and size as of the last flush, for the tree to pick up on open
+    public int getSavedRoot() {
+        return savedRoot;
+    }
+    public int getSavedSize() {
+        return savedSize;
+    }
+
+        // pages the file takes up, header and free pages included
+    public int getFilePages() {
+        return filePages;
+    }
+
+    /**
+     * Writes every changed page, the page table and the header, and forces
+     * them to disk
+     * @param root of the tree
+     * @param size of the tree
+     * @exception IOException
+     */
+    public void flush(int root, int size) throws IOException {
+        for (Iterator<Page> it = pool.values().iterator(); it.hasNext(); ) {
+            Page page = it.next();
+            if (page.dirty) {
+                writePage(page);
+            }
+        }
+        BitSet newTablePages = new BitSet();
+        int table = writeTable(newTablePages);
+            // the pages have to be down before the header that points at them
+        channel.force(false);
+        savedRoot = root;
+        savedSize = size;
+        writeHeader(table, sequence + 1);
+        channel.force(true);
+        sequence++;
+
+            // the pages of the last flush are no longer referenced
+        freePages.or(releasedPages);
+        freePages.or(tablePages);
+        releasedPages.clear();
+        freshPages.clear();
+        tablePages = newTablePages;
+    }
+
+    /**
+     * Closes the file without flushing; anything changed since the last
+     * flush is lost
+     * @exception IOException
+     */
+    public void close() throws IOException {
+        pool.clear();
+        file.close();
+    }
+
+    protected ByteBuffer chunk(int index, boolean write) {
+        Page page = pool.get(Integer.valueOf(index));
+        if (page == null) {
+            page = newPage(index);
+            if (pageTable[index] != NONE) {
+                try {
+                    readFully(page.buffer, position(pageTable[index]));
+                }
+                catch (IOException exc) {
+                    throw new TwoFourTreeException("Cannot read chunk " + index, exc);
+                }
+            }
+        }
+        if (write) {
+            page.dirty = true;
+        }
+        return page.buffer;
+    }
+
+        // a new chunk is a zeroed page that exists only in the pool until it
+        // is first written back
+    protected void addChunk() {
+        int index = getNumChunks();
+        if (index == pageTable.length) {
+            int[] newTable = new int[index * 2];
+            System.arraycopy(pageTable, 0, newTable, 0, index);
+            Arrays.fill(newTable, index, newTable.length, NONE);
+            pageTable = newTable;
+        }
+        newPage(index).dirty = true;
+    }
+
+        // takes a buffer for the page, evicting the least recently used
+        // page if the pool is full, and puts it in the pool
+    private Page newPage(int index) {
+        Page page;
+        if (pool.size() < cachePages) {
+            page = new Page(ByteBuffer.allocateDirect(PAGE_BYTES)
+                                      .order(FILE_ORDER));
+        }
+        else {
+            Iterator<Page> it = pool.values().iterator();
+            page = it.next();
+            it.remove();
+            if (page.dirty) {
+                try {
+                    writePage(page);
+                }
+                catch (IOException exc) {
+                    throw new TwoFourTreeException("Cannot write chunk " + page.index, exc);
+                }
+            }
+            page.buffer.clear();
+            while (page.buffer.hasRemaining()) {
+                page.buffer.put((byte) 0);
+            }
+        }
+        page.index = index;
+        page.dirty = false;
+        pool.put(Integer.valueOf(index), page);
+        return page;
+    }
+
+        // writes a chunk back, moving it to a free page first unless it is
+        // already on one written since the last flush
+    private void writePage(Page page) throws IOException {
+        int filePage = pageTable[page.index];
+        if (filePage == NONE || !freshPages.get(filePage)) {
+            if (filePage != NONE) {
+                releasedPages.set(filePage);
+            }
+            filePage = allocatePage();
+            pageTable[page.index] = filePage;
+        }
+        ByteBuffer buf = page.buffer.duplicate();
+        buf.clear();
+        writeFully(buf, position(filePage));
+        page.dirty = false;
+    }
+
+        // writes the page table to free pages, last page first so that each
+        // can link to the next
+    private int writeTable(BitSet newTablePages) throws IOException {
+        int numChunks = getNumChunks();
+        int next = NONE;
+        ByteBuffer buf = ByteBuffer.allocate(PAGE_BYTES).order(FILE_ORDER);
+        for (int first = (numChunks - 1) / TABLE_ENTRIES * TABLE_ENTRIES;
+                first >= 0; first -= TABLE_ENTRIES) {
+            buf.clear();
+            buf.putInt(next);
+            for (int ind = first; ind < Math.min(first + TABLE_ENTRIES, numChunks); ind++) {
+                buf.putInt(pageTable[ind]);
+            }
+            buf.clear();
+            next = allocatePage();
+            newTablePages.set(next);
+            writeFully(buf, position(next));
+        }
+        return next;
+    }
+
+        // reads the page table written by the flush the header came from,
+        // and frees every other page of the file
+    private void readTable(int table) throws IOException {
+        int numChunks = getNumChunks();
+        pageTable = new int[Math.max(16, numChunks)];
+        Arrays.fill(pageTable, NONE);
+        ByteBuffer buf = ByteBuffer.allocate(PAGE_BYTES).order(FILE_ORDER);
+        BitSet used = new BitSet();
+        for (int first = 0; first < numChunks; first += TABLE_ENTRIES) {
+            if (table < HEADER_PAGES || table >= filePages || used.get(table))
+                throw new IOException("Tree file page table is damaged");
+            used.set(table);
+            tablePages.set(table);
+            readFully(buf, position(table));
+            table = buf.getInt(0);
+            for (int ind = first; ind < Math.min(first + TABLE_ENTRIES, numChunks); ind++) {
+                int filePage = buf.getInt(4 + 4*(ind - first));
+                if (filePage < HEADER_PAGES || filePage >= filePages || used.get(filePage))
+                    throw new IOException("Tree file page table is damaged");
+                used.set(filePage);
+                pageTable[ind] = filePage;
+            }
+        }
+        freePages.set(HEADER_PAGES, filePages);
+        freePages.andNot(used);
+    }
+
+    private int allocatePage() {
+        int filePage = freePages.nextSetBit(0);
+        if (filePage < 0) {
+            filePage = filePages++;
+        }
+        else {
+            freePages.clear(filePage);
+        }
+        freshPages.set(filePage);
+        return filePage;
+    }
+
+    private long position(int filePage) {
+        return (long) filePage * PAGE_BYTES;
+    }
+
+    private void writeFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+        // reads a page; past the end of the file it stays zero
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        ByteBuffer buf = buffer.duplicate();
+        buf.clear();
+        while (buf.hasRemaining()) {
+            int read = channel.read(buf, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+    }
+
+        // writes the header to the copy the last flush did not
+    private void writeHeader(int table, long sequence) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(PAGE_BYTES).order(FILE_ORDER);
+        header.putInt(H_MAGIC, MAGIC);
+        header.putInt(H_VERSION, VERSION);
+        header.putInt(H_PAGE_BYTES, PAGE_BYTES);
+        header.putInt(H_NUM_CHUNKS, getNumChunks());
+        header.putLong(H_SEQUENCE, sequence);
+        header.putInt(H_NEXT_NODE, getNextNode());
+        header.putInt(H_FREE_LIST, getFreeList());
+        header.putInt(H_LIVE_NODES, getLiveNodes());
+        header.putInt(H_ROOT, savedRoot);
+        header.putInt(H_SIZE, savedSize);
+        header.putInt(H_TABLE, table);
+        header.putInt(H_CHECKSUM, checksum(header));
+        writeFully(header, position((int) (sequence % HEADER_PAGES)));
+    }
+
+    private void readHeader() throws IOException {
+        filePages = (int) Math.max(HEADER_PAGES,
+                                   (channel.size() + PAGE_BYTES - 1) / PAGE_BYTES);
+        ByteBuffer header = null;
+        boolean unsupported = false;
+        for (int copy = 0; copy < HEADER_PAGES; copy++) {
+            ByteBuffer buf = ByteBuffer.allocate(PAGE_BYTES).order(FILE_ORDER);
+            readFully(buf, position(copy));
+            if (buf.getInt(H_MAGIC) != MAGIC) {
+                continue;
+            }
+            if (buf.getInt(H_VERSION) != VERSION ||
+                    buf.getInt(H_PAGE_BYTES) != PAGE_BYTES) {
+                unsupported = true;
+                continue;
+            }
+                // a copy torn by a crash fails its checksum
+            if (buf.getInt(H_CHECKSUM) == checksum(buf) &&
+                    (header == null ||
+                     buf.getLong(H_SEQUENCE) > header.getLong(H_SEQUENCE))) {
+                header = buf;
+            }
+        }
+        if (header == null) {
+            if (unsupported)
+                throw new IOException("Unsupported tree file version");
+            throw new IOException("Not a tree file");
+        }
+        restore(header.getInt(H_NUM_CHUNKS), header.getInt(H_NEXT_NODE),
+                header.getInt(H_FREE_LIST), header.getInt(H_LIVE_NODES));
+        sequence = header.getLong(H_SEQUENCE);
+        savedRoot = header.getInt(H_ROOT);
+        savedSize = header.getInt(H_SIZE);
+        readTable(header.getInt(H_TABLE));
+    }
+
+    private static int checksum(ByteBuffer header) {
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, H_CHECKSUM);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * A page held in the pool
+     */
+    private static class Page {
+        final ByteBuffer buffer;
+        int index;
+        boolean dirty;
+
+        Page(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
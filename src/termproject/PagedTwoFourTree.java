@@ -0,0 +1,193 @@
+package termproject;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * This class implements a durable (2,4)-Tree for long keys and values,
+ * kept in a file.
+ *
+ * Title: Term Project 2-4 Trees
+ * @version 1.0
+ * File: PagedTwoFourTree.java
+ * Description: An OffHeapTwoFourTree whose nodes live in the pages of a
+ * file through a PagedNodeArena, with only the recently used pages held in
+ * memory. Opening the file reads its header and nothing else, so startup
+ * does not depend on how many keys it holds; nodes are paged in as lookups
+ * and updates reach them.
+ *
+ * Changes reach the file as pages are evicted, but never over the pages of
+ * the last flush() or close(), so the file always holds the tree as of
+ * then. After a crash it opens as that tree, and the changes made since
+ * are lost.
+ */
+
+public class PagedTwoFourTree extends OffHeapTwoFourTree implements Closeable {
+
+    // Variable declaration
+    private static final int DEFAULT_CACHE_PAGES = 1024;
+    private final PagedNodeArena pagedArena;
+
+    /**
+     * Opens the tree in a file, creating it if the file is new
+     * @param file
+     * @exception IOException if the file cannot be read, or is not a tree
+     * file
+     */
+    public PagedTwoFourTree(File file) throws IOException {
+        this(file, DEFAULT_CACHE_PAGES);
+    }
+
+    /**
+     * Opens the tree in a file, creating it if the file is new
+     * @param file
+     * @param cachePages most pages of PagedNodeArena.PAGE_BYTES held in
+     * memory at once
+     * @exception IOException if the file cannot be read, or is not a tree
+     * file
+     */
+    public PagedTwoFourTree(File file, int cachePages) throws IOException {
+        this(new PagedNodeArena(file, cachePages));
+    }
+
+    private PagedTwoFourTree(PagedNodeArena arena) {
+        super(arena, arena.getSavedRoot(), arena.getSavedSize());
+        pagedArena = arena;
+    }
+
+    /**
+     * Writes all changes to the file and forces them to disk
+     * @exception IOException
+     */
+    public void flush() throws IOException {
+        pagedArena.flush(root(), size());
+    }
+
+    /**
+     * Flushes the tree and closes the file
+     * @exception IOException
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+        }
+        finally {
+            pagedArena.close();
+        }
+    }
+
+    private static void checkContents(PagedTwoFourTree tree, boolean[] kept,
+                                      String what) {
+        int count = 0;
+        for (int i = 0; i < kept.length; i++) {
+            long value = tree.findValue(i, -1);
+            if (value != (kept[i] ? 3L * i : -1)) {
+                throw new TwoFourTreeException("main: " + what + ": wrong value " +
+                                               value + " for " + i);
+            }
+            if (kept[i]) {
+                count++;
+            }
+        }
+        if (tree.size() != count) {
+            throw new TwoFourTreeException("main: " + what + ": size " + tree.size() +
+                                           " instead of " + count);
+        }
+    }
+
+        // the two header copies, as they are in the file
+    private static byte[] readHeaders(File file) throws IOException {
+        byte[] headers = new byte[2 * PagedNodeArena.PAGE_BYTES];
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(headers);
+        }
+        finally {
+            raf.close();
+        }
+        return headers;
+    }
+
+    public static void main(String[] args) throws IOException {
+        File file = File.createTempFile("PagedTwoFourTree", ".db");
+        file.delete();
+        final int TEST_SIZE = 20000;
+        boolean[] kept = new boolean[2 * TEST_SIZE];
+
+        // A small pool, so that pages are written back long before a flush
+        PagedTwoFourTree myTree = new PagedTwoFourTree(file, 4);
+        for (int i = 0; i < TEST_SIZE; i++) {
+            myTree.insertElement(i, 3L * i);
+            kept[i] = true;
+        }
+        myTree.close();
+        myTree = new PagedTwoFourTree(file, 4);
+        checkContents(myTree, kept, "reopen");
+        System.out.println("Correct reopen? true");
+
+        // Crash after evictions: the file still opens as the last flush
+        for (int i = 0; i < TEST_SIZE; i += 2) {
+            myTree.removeElement(i);
+        }
+        for (int i = TEST_SIZE; i < 2 * TEST_SIZE; i++) {
+            myTree.insertElement(i, 3L * i);
+        }
+        myTree.pagedArena.close();
+        myTree = new PagedTwoFourTree(file, 4);
+        checkContents(myTree, kept, "crash after evictions");
+        System.out.println("Correct crash after evictions? true");
+
+        // Crash during a flush: tear the header copy it wrote, and the
+        // file opens as the flush before
+        byte[] headers = readHeaders(file);
+        for (int i = 0; i < TEST_SIZE; i += 2) {
+            myTree.removeElement(i);
+        }
+        myTree.close();
+        byte[] flushed = readHeaders(file);
+        int torn = (Arrays.equals(Arrays.copyOf(headers, PagedNodeArena.PAGE_BYTES),
+                                  Arrays.copyOf(flushed, PagedNodeArena.PAGE_BYTES)) ?
+                    1 : 0);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek((long) torn * PagedNodeArena.PAGE_BYTES + 20);
+        raf.write(new byte[20]);
+        raf.close();
+        myTree = new PagedTwoFourTree(file, 4);
+        checkContents(myTree, kept, "torn header");
+        System.out.println("Correct torn header? true");
+
+        // Flushing the same changes over and over reuses the pages the
+        // flush before gave up, rather than growing the file
+        int filePages = 0;
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < TEST_SIZE; i += 2) {
+                myTree.removeElement(i);
+                kept[i] = false;
+            }
+            myTree.flush();
+            for (int i = 0; i < TEST_SIZE; i += 2) {
+                myTree.insertElement(i, 3L * i);
+                kept[i] = true;
+            }
+            myTree.flush();
+            if (round == 1) {
+                filePages = myTree.pagedArena.getFilePages();
+            }
+        }
+        if (myTree.pagedArena.getFilePages() > filePages) {
+            throw new TwoFourTreeException("main: file grew from " + filePages +
+                    " to " + myTree.pagedArena.getFilePages() + " pages");
+        }
+        myTree.close();
+        myTree = new PagedTwoFourTree(file, 4);
+        checkContents(myTree, kept, "page reuse");
+        myTree.close();
+        System.out.println("Correct page reuse? true");
+
+        file.delete();
+        System.out.println("done");
+    }
+}
@@ -0,0 +1,503 @@
+package termproject;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class implements a persistent (2,4)-Tree using the Dictionary
+ * interface.
+ *
+ * Title: Term Project 2-4 Trees
+ * @version 1.0
+ * File: PersistentTwoFourTree.java
+ * Description: A B-tree whose nodes are never changed once they can be
+ * reached. insertElement() and removeElement() copy the TFNodes on the path
+ * they touch, along with any sibling a transfer or fusion changes, and share
+ * every other node with the previous version; the new root and size are
+ * then published together with a single compare-and-set, so each call costs
+ * O(log n) new nodes. Readers work on whichever version they picked up, take
+ * no locks and are never blocked; writers that lose the race to publish
+ * simply redo their change on the newer version.
+ *
+ * snapshot() is O(1): it hands out a tree on the current version, which
+ * keeps that point-in-time view however this tree changes afterwards, and
+ * may itself be changed without affecting this tree. Nodes are shared, so
+ * their parent pointers are left unset. Duplicate keys are handled the same
+ * way as in TwoFourTree.
+ */
+
+public class PersistentTwoFourTree implements Dictionary {
+
+    /**
+     * One published state of the tree; never changed
+     */
+    private static final class Version {
+        final TFNode root;
+        final int size;
+
+        Version(TFNode root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+    }
+
+    // Variable declaration
+    private static final int DEFAULT_ORDER = 4;
+    private static final Version EMPTY = new Version(null, 0);
+    private final Comparator treeComp;
+    private final AtomicReference<Version> current;
+    // Most and fewest items a non-root node may hold for the tree's order
+    private final int maxItems;
+    private final int minItems;
+
+    /**
+     * Constructor
+     * @param comp
+     */
+    public PersistentTwoFourTree(Comparator comp) {
+        this(comp, DEFAULT_ORDER);
+    }
+
+    /**
+     * Constructor for a B-tree of the given order
+     * @param comp
+     * @param order most children a node may have; at least 3
+     */
+    public PersistentTwoFourTree(Comparator comp, int order) {
+        if (order < 3) {
+            throw new TwoFourTreeException("Order must be at least 3");
+        }
+        treeComp = comp;
+        maxItems = order - 1;
+        minItems = (order + 1) / 2 - 1;
+        current = new AtomicReference<Version>(EMPTY);
+    }
+
+    /**
+     * Constructor for a snapshot, starting from the given version
+     * @param tree
+     * @param version
+     */
+    private PersistentTwoFourTree(PersistentTwoFourTree tree, Version version) {
+        treeComp = tree.treeComp;
+        maxItems = tree.maxItems;
+        minItems = tree.minItems;
+        current = new AtomicReference<Version>(version);
+    }
+
+    /**
+     * Returns a tree holding exactly what this tree holds now; later changes
+     * to either tree do not show in the other
+     * @return snapshot of this tree
+     */
+    public PersistentTwoFourTree snapshot() {
+        return new PersistentTwoFourTree(this, current.get());
+    }
+
+    /**
+     * Returns size of the tree
+     * @return size of the tree
+     */
+    public int size() {
+        return current.get().size;
+    }
+
+    /**
+     * Returns true is the tree has no elements in it
+     * @return true is size is zero
+     */
+    public boolean isEmpty() {
+        return (size() == 0);
+    }
+
+    /**
+     * Searches dictionary to determine if key is present
+     * @param key to be searched for
+     * @return object corresponding to key; null if not found
+     */
+    public Object findElement(Object key) {
+        TFNode node = current.get().root;
+        while (node != null) {
+            int index = findIndex(node, key);
+            if (index >= 0) {
+                return node.getItem(index).element();
+            }
+            node = node.getChild(-index - 1);
+        }
+        return null;
+    }
+
+    /**
+     * Inserts provided element into the Dictionary
+     * @param key of object to be inserted
+     * @param element to be inserted
+     */
+    public void insertElement(Object key, Object element) {
+        Item newItem = new Item(key, element);
+        Path path = new Path();
+        while (true) {
+            Version version = current.get();
+            TFNode newRoot = insertInto(version.root, newItem, path);
+            if (current.compareAndSet(version,
+                                      new Version(newRoot, version.size + 1))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Searches dictionary to determine if key is present, then
+     * removes and returns corresponding object
+     * @param key of data to be removed
+     * @return object corresponding to key
+     * @exception ElementNotFoundException if the key is not in dictionary
+     */
+    public Object removeElement(Object key) throws ElementNotFoundException {
+        Path path = new Path();
+        while (true) {
+            Version version = current.get();
+            // As TwoFourTree does for an empty tree
+            if (version.root == null) {
+                throw new TwoFourTreeException();
+            }
+            Item[] removed = new Item[1];
+            TFNode newRoot = removeFrom(version.root, key, path, removed);
+            if (current.compareAndSet(version,
+                                      new Version(newRoot, version.size - 1))) {
+                return removed[0].element();
+            }
+        }
+    }
+
+    /**
+     * Returns the entries of the tree as it is now, in key order; the
+     * iterator is not affected by later changes
+     * @return iterator over immutable entries
+     */
+    public Iterator<Map.Entry<Object,Object>> entries() {
+        return new EntryIterator(current.get().root);
+    }
+
+    /**
+     * Nodes and child indexes from the root down, reused across retries
+     */
+    private static final class Path {
+        TFNode[] nodes = new TFNode[16];
+        int[] index = new int[16];
+        int depth;
+
+        void push(TFNode node, int childIndex) {
+            if (depth == nodes.length) {
+                TFNode[] newNodes = new TFNode[depth * 2];
+                int[] newIndex = new int[depth * 2];
+                System.arraycopy(nodes, 0, newNodes, 0, depth);
+                System.arraycopy(index, 0, newIndex, 0, depth);
+                nodes = newNodes;
+                index = newIndex;
+            }
+            nodes[depth] = node;
+            index[depth] = childIndex;
+            depth++;
+        }
+    }
+
+    /**
+     * Builds the root of a version with one more item
+     * @param root of the version to change; left as it is
+     * @param newItem
+     * @param path scratch space for the descent
+     * @return new root
+     */
+    private TFNode insertInto(TFNode root, Item newItem, Path path) {
+        if (root == null) {
+            TFNode newRoot = new TFNode(maxItems);
+            newRoot.addItem(0, newItem);
+            return newRoot;
+        }
+
+        // Descend to the leaf; a tie at an inner node goes ahead of its
+        // inorder successor
+        path.depth = 0;
+        TFNode node = root;
+        int position;
+        while (true) {
+            int index = findIndex(node, newItem.key());
+            if (node.isLeaf()) {
+                position = (index >= 0) ? index : -index - 1;
+                break;
+            }
+            int next = (index >= 0) ? index + 1 : -index - 1;
+            path.push(node, next);
+            node = node.getChild(next);
+        }
+
+        // Copy the leaf with the item added, then copy each node above it
+        // to point at the new child, splitting as overflow() does
+        TFNode child = node.copy();
+        child.insertItem(position, newItem);
+        for (int d = path.depth - 1; d >= -1; d--) {
+            TFNode splitNode = null;
+            Item promotedItem = null;
+            if (child.getNumItems() > maxItems) {
+                int middle = child.getNumItems() / 2;
+                promotedItem = child.getItem(middle);
+                splitNode = split(child, middle);
+            }
+
+            if (d < 0) {
+                if (splitNode == null) {
+                    return child;
+                }
+                TFNode newRoot = new TFNode(maxItems);
+                newRoot.addItem(0, promotedItem);
+                newRoot.setChild(0, child);
+                newRoot.setChild(1, splitNode);
+                return newRoot;
+            }
+
+            TFNode parent = path.nodes[d].copy();
+            int childIndex = path.index[d];
+            if (splitNode != null) {
+                parent.insertItem(childIndex, promotedItem);
+                parent.setChild(childIndex + 1, splitNode);
+            }
+            parent.setChild(childIndex, child);
+            path.nodes[d] = null;
+            child = parent;
+        }
+        return child;
+    }
+
+    /**
+     * Builds the root of a version with one item less
+     * @param root of the version to change; left as it is
+     * @param key of the item to remove
+     * @param path scratch space for the descent
+     * @param removed receives the removed item
+     * @return new root
+     * @exception ElementNotFoundException if the key is not in the tree
+     */
+    private TFNode removeFrom(TFNode root, Object key, Path path,
+                             Item[] removed) {
+        // Descend to the key
+        path.depth = 0;
+        TFNode node = root;
+        int index;
+        while (true) {
+            index = findIndex(node, key);
+            if (index >= 0) {
+                break;
+            }
+            if (node.isLeaf()) {
+                throw new ElementNotFoundException();
+            }
+            path.push(node, -index - 1);
+            node = node.getChild(-index - 1);
+        }
+        removed[0] = node.getItem(index);
+
+        // An inner item is replaced by its inorder successor, which is
+        // taken from the leftmost leaf of the subtree to its right
+        int foundDepth = -1;
+        TFNode child;
+        Item successor = null;
+        if (node.isLeaf()) {
+            child = node.copy();
+            child.removeItem(index);
+        }
+        else {
+            foundDepth = path.depth;
+            path.push(node, index + 1);
+            node = node.getChild(index + 1);
+            while (!node.isLeaf()) {
+                path.push(node, 0);
+                node = node.getChild(0);
+            }
+            child = node.copy();
+            successor = child.removeItem(0);
+        }
+
+        // Copy each node above to point at the new child, fixing underflow
+        // as underflow() does
+        for (int d = path.depth - 1; d >= 0; d--) {
+            TFNode parent = path.nodes[d].copy();
+            int childIndex = path.index[d];
+            parent.setChild(childIndex, child);
+            if (d == foundDepth) {
+                parent.replaceItem(childIndex - 1, successor);
+            }
+            if (child.getNumItems() < minItems) {
+                refill(parent, childIndex);
+            }
+            path.nodes[d] = null;
+            child = parent;
+        }
+
+        // A root left without items gives way to its only child
+        if (child.getNumItems() == 0) {
+            return child.isLeaf() ? null : child.getChild(0);
+        }
+        return child;
+    }
+
+    /**
+     * Gives a copied child below the minimum an item from a sibling, or
+     * fuses it with one; siblings are copied before they are changed
+     * @param parent copy, already pointing at the copied child
+     * @param childIndex
+     */
+    private void refill(TFNode parent, int childIndex) {
+        TFNode child = parent.getChild(childIndex);
+
+        // Transfer from the left sibling if it has items to spare
+        if (childIndex > 0 &&
+                parent.getChild(childIndex - 1).getNumItems() > minItems) {
+            TFNode sibling = parent.getChild(childIndex - 1).copy();
+            parent.setChild(childIndex - 1, sibling);
+            int last = sibling.getNumItems() - 1;
+            child.insertItem(0, parent.getItem(childIndex - 1));
+            child.setChild(0, sibling.getChild(last + 1));
+            sibling.setChild(last + 1, null);
+            parent.replaceItem(childIndex - 1, sibling.getItem(last));
+            sibling.deleteItem(last);
+        }
+        // Otherwise from the right sibling
+        else if (childIndex < parent.getNumItems() &&
+                 parent.getChild(childIndex + 1).getNumItems() > minItems) {
+            TFNode sibling = parent.getChild(childIndex + 1).copy();
+            parent.setChild(childIndex + 1, sibling);
+            child.addItem(child.getNumItems(), parent.getItem(childIndex));
+            child.setChild(child.getNumItems(), sibling.getChild(0));
+            parent.replaceItem(childIndex, sibling.getItem(0));
+            sibling.removeItem(0);
+        }
+        // Fuse into the left sibling, which has to be copied
+        else if (childIndex > 0) {
+            TFNode sibling = parent.getChild(childIndex - 1).copy();
+            fuse(sibling, parent.getItem(childIndex - 1), child);
+            parent.removeItem(childIndex - 1);
+            parent.setChild(childIndex - 1, sibling);
+        }
+        // Or take in the right sibling, which is only read
+        else {
+            fuse(child, parent.getItem(childIndex),
+                 parent.getChild(childIndex + 1));
+            parent.removeItem(childIndex);
+            parent.setChild(childIndex, child);
+        }
+    }
+
+    /**
+     * Appends the separating item and then the right node's items and
+     * children to the left node
+     * @param leftNode copy to be changed
+     * @param separator
+     * @param rightNode
+     */
+    private void fuse(TFNode leftNode, Item separator, TFNode rightNode) {
+        leftNode.addItem(leftNode.getNumItems(), separator);
+        leftNode.setChild(leftNode.getNumItems(), rightNode.getChild(0));
+        for (int i = 0; i < rightNode.getNumItems(); i++) {
+            leftNode.addItem(leftNode.getNumItems(), rightNode.getItem(i));
+            leftNode.setChild(leftNode.getNumItems(), rightNode.getChild(i + 1));
+        }
+    }
+
+    /**
+     * Moves the items after middle, and their children, out of a copied
+     * node into a new one; the middle item is dropped from the node
+     * @param node copy to be split
+     * @param middle
+     * @return new right node
+     */
+    private TFNode split(TFNode node, int middle) {
+        int numItems = node.getNumItems();
+        TFNode splitNode = new TFNode(maxItems);
+        splitNode.setChild(0, node.getChild(middle + 1));
+        for (int i = middle + 1; i < numItems; i++) {
+            splitNode.addItem(i - middle - 1, node.getItem(i));
+            splitNode.setChild(i - middle, node.getChild(i + 1));
+        }
+        node.truncate(middle);
+        return splitNode;
+    }
+
+    /**
+     * Finds the first item which is larger or equal to the given key
+     * @param thisNode
+     * @param key
+     * @return index of that item if it is equal to key; otherwise
+     * (-(child index to follow) - 1)
+     */
+    private int findIndex(TFNode thisNode, Object key) {
+        int numItems = thisNode.getNumItems();
+        for (int i = 0; i < numItems; i++) {
+            int cmp = treeComp.compare(thisNode.getKey(i), key);
+            if (cmp >= 0) {
+                return (cmp == 0) ? i : (-i - 1);
+            }
+        }
+        return -numItems - 1;
+    }
+
+    /**
+     * In-order walk over one version, keeping its own path
+     */
+    private static final class EntryIterator
+            implements Iterator<Map.Entry<Object,Object>> {
+        private final Path path = new Path();
+
+        EntryIterator(TFNode root) {
+            if (root != null) {
+                descend(root);
+            }
+        }
+
+        // The path ends at the next item: pushes the leftmost path
+        private void descend(TFNode node) {
+            while (!node.isLeaf()) {
+                path.push(node, 0);
+                node = node.getChild(0);
+            }
+            path.push(node, 0);
+        }
+
+        public boolean hasNext() {
+            return (path.depth > 0);
+        }
+
+        public Map.Entry<Object,Object> next() {
+            if (path.depth == 0) {
+                throw new NoSuchElementException();
+            }
+            int level = path.depth - 1;
+            TFNode node = path.nodes[level];
+            int index = path.index[level];
+            Item item = node.getItem(index);
+
+            // Step to the next item: into the subtree right of this one,
+            // or up past every ancestor whose items are used up
+            if (!node.isLeaf()) {
+                path.index[level] = index + 1;
+                descend(node.getChild(index + 1));
+            }
+            else {
+                path.index[level] = index + 1;
+                while (path.depth > 0
+                       && path.index[path.depth - 1]
+                          == path.nodes[path.depth - 1].getNumItems()) {
+                    path.nodes[--path.depth] = null;
+                }
+            }
+            return new AbstractMap.SimpleImmutableEntry<Object,Object>(
+                    item.key(), item.element());
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
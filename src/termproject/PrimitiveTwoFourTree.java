@@ -0,0 +1,487 @@
+package termproject;
+
+/**
+ * This class implements the (2,4)-Tree algorithms shared by the trees with
+ * primitive keys.
+ *
+ * Title: Term Project 2-4 Trees
+ * @version 1.0
+ * File: PrimitiveTwoFourTree.java
+ * Description: IntTwoFourTree and LongTwoFourTree keep their nodes in
+ * different classes, IntTFNode and LongTFNode, but search, split, transfer
+ * and fuse them in the same way. That is written once here, over nodes of
+ * type N that the subclasses read and change through the node-access
+ * methods below. Keys are compared as longs; an int key widens to the same
+ * long. OffHeapTwoFourTree follows the same steps over NodeArena ids, in a
+ * copy of its own so that it never has to box an id into a node reference.
+ *
+ * The algorithms never look at an element: they move whole items from one
+ * node to another with addItem(), insertItem() and replaceItem(). Only the
+ * subclass knows what an item holds besides its key, so it puts new items
+ * in itself, at the slot leafFor() picks, and reads the element of an item
+ * before removeFound() takes it out. Duplicate keys are handled the same
+ * way as in TwoFourTree.
+ */
+
+abstract class PrimitiveTwoFourTree<N> {
+
+    // Variable declaration
+    private int size;
+    private N treeRoot;
+    // Index in its node of the item search() or match() found, or of the
+    // slot leafFor() picked
+    private int foundIndex;
+
+    /**
+     * Constructor for a tree whose nodes already exist
+     * @param root null for an empty tree
+     * @param size number of items under root
+     */
+    protected PrimitiveTwoFourTree(N root, int size) {
+        treeRoot = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns size of the tree
+     * @return size of the tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true is the tree has no elements in it
+     * @return true is size is zero
+     */
+    public boolean isEmpty() {
+        return (size == 0);
+    }
+
+    /**
+     * Returns the root node
+     * @return root of the tree; null if it is empty
+     */
+    protected N treeRoot() {
+        return treeRoot;
+    }
+
+    // ----- node access, over each subclass's own nodes
+
+    /**
+     * Makes an empty leaf with no parent
+     * @return the new node
+     */
+    protected abstract N newNode();
+
+    protected abstract int getNumItems(N node);
+
+    protected abstract int getMaxItems(N node);
+
+    protected abstract boolean isLeaf(N node);
+
+    protected abstract N getParent(N node);
+
+    protected abstract void setParent(N node, N parent);
+
+    protected abstract N getChild(N node, int index);
+
+    protected abstract void setChild(N node, int index, N child);
+
+    protected abstract long getKey(N node, int index);
+
+    /**
+     * Copies an item of another node into a slot, as the nodes' own
+     * addItem() does; overwrites whatever is there
+     * @param node
+     * @param index
+     * @param from node holding the item
+     * @param fromIndex of the item in from
+     */
+    protected abstract void addItem(N node, int index, N from, int fromIndex);
+
+    /**
+     * Copies an item of another node in at a slot, shifting the items and
+     * children after it, as the nodes' own insertItem() does
+     * @param node
+     * @param index
+     * @param from node holding the item
+     * @param fromIndex of the item in from
+     */
+    protected abstract void insertItem(N node, int index, N from, int fromIndex);
+
+    /**
+     * Replaces the item at a slot with a copy of another node's item
+     * @param node
+     * @param index
+     * @param from node holding the item
+     * @param fromIndex of the item in from
+     */
+    protected abstract void replaceItem(N node, int index, N from, int fromIndex);
+
+    /**
+     * Removes an item and the child with the same index
+     * @param node
+     * @param index
+     */
+    protected abstract void removeItem(N node, int index);
+
+    /**
+     * Removes the last item, leaving the child pointers alone
+     * @param node
+     */
+    protected abstract void deleteLastItem(N node);
+
+    /**
+     * Walks down from the root to the node containing key; a concrete loop
+     * in each subclass, so that a lookup calls its own node class directly
+     * @param key to be searched for
+     * @return node containing key; the leaf where the search ended if not found
+     */
+    protected abstract N findNode(long key);
+
+    /**
+     * Finds the first item which is larger or equal to the given key
+     * @param thisNode
+     * @param key
+     * @return index of that item; number of items if there is none
+     */
+    protected abstract int FFGTE(N thisNode, long key);
+
+    // ----- the algorithms
+
+    /**
+     * Returns the index of the item found by search() or match(), or of the
+     * slot picked by leafFor()
+     * @return index in its node
+     */
+    protected int foundIndex() {
+        return foundIndex;
+    }
+
+    /**
+     * Searches the tree for a key
+     * @param key to be searched for
+     * @return node holding key, with the item's index in foundIndex(); null
+     * if not found
+     */
+    protected N search(long key) {
+        // An empty tree has nothing to find
+        if (isEmpty()) {
+            return null;
+        }
+
+        // Find the node that contains the key, or the leaf where the
+        // search for it ended
+        N foundNode = findNode(key);
+        foundIndex = FFGTE(foundNode, key);
+
+        if (!isMatch(foundNode, foundIndex, key)) {
+            return null;
+        }
+        return foundNode;
+    }
+
+    /**
+     * Finds the item to remove for a key
+     * @param key of data to be removed
+     * @return node holding key, with the item's index in foundIndex()
+     * @exception TwoFourTreeException if the tree is empty
+     * @exception ElementNotFoundException if the key is not in the tree
+     */
+    protected N match(long key) {
+        // If tree is empty throw exception
+        if (isEmpty()) {
+            throw new TwoFourTreeException();
+        }
+
+        // Check for missing element
+        N deleteNode = search(key);
+        if (deleteNode == null) {
+            throw new ElementNotFoundException();
+        }
+        return deleteNode;
+    }
+
+    /**
+     * Finds the leaf a new item goes in, making the root if the tree is
+     * empty; the caller inserts the item at foundIndex() and then calls
+     * itemInserted()
+     * @param key of the new item
+     * @return leaf to insert into
+     */
+    protected N leafFor(long key) {
+        // Check for root
+        if (isEmpty()) {
+            treeRoot = newNode();
+            foundIndex = 0;
+            return treeRoot;
+        }
+
+        // Find the correct place to put the item
+        N insertNode = findNode(key);
+        int childIndex = FFGTE(insertNode, key);
+
+        // If we have a tie, insert at the inorder successor instead
+        if (isMatch(insertNode, childIndex, key)) {
+            insertNode = findIOS(insertNode, childIndex);
+            childIndex = FFGTE(insertNode, key);
+        }
+        foundIndex = childIndex;
+        return insertNode;
+    }
+
+    /**
+     * Fixes the tree after an item went into a leaf from leafFor()
+     * @param insertNode the leaf
+     */
+    protected void itemInserted(N insertNode) {
+        // Check for overflow
+        if (getNumItems(insertNode) > getMaxItems(insertNode)) {
+            overflow(insertNode);
+        }
+        size++;
+    }
+
+    /**
+     * Removes an item found by match(), once the caller has read it
+     * @param deleteNode
+     * @param deleteIndex
+     */
+    protected void removeFound(N deleteNode, int deleteIndex) {
+        // If leaf, just delete
+        if (isLeaf(deleteNode)) {
+            removeItem(deleteNode, deleteIndex);
+        }
+        // If internal, move inorder successor up to replace the deleted item
+        else {
+            N nodeIOS = findIOS(deleteNode, deleteIndex);
+            replaceItem(deleteNode, deleteIndex, nodeIOS, 0);
+            removeItem(nodeIOS, 0);
+            deleteNode = nodeIOS;
+        }
+
+        // Check for underflow
+        if (getNumItems(deleteNode) == 0) {
+            underflow(deleteNode);
+        }
+
+        size--;
+    }
+
+    /**
+     * Determines if the item at index holds the given key
+     * @param node
+     * @param index as returned by FFGTE
+     * @param key
+     * @return true if the item at index is equal to key
+     */
+    private boolean isMatch(N node, int index, long key) {
+        return (index != getNumItems(node) && getKey(node, index) == key);
+    }
+
+    /**
+     * Returns the index of the passed child node in the parent's array
+     * @param thisNode
+     * @return index of child
+     */
+    private int WCAI(N thisNode) {
+        N parent = getParent(thisNode);
+        for (int i = 0; i <= getNumItems(parent); i++) {
+            if (getChild(parent, i) == thisNode) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns node in which the inorder successor of an item is located
+     * @param node
+     * @param index of the item in node
+     * @return node of inorder successor
+     */
+    private N findIOS(N node, int index) {
+        if (!isLeaf(node)) {
+            node = getChild(node, index + 1);
+            while (!isLeaf(node)) {
+                node = getChild(node, 0);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Fix tree on overflow
+     * @param oFNode
+     */
+    private void overflow(N oFNode) {
+        // Split the fourth item off into its own node
+        N splitNode = newNode();
+        addItem(splitNode, 0, oFNode, 3);
+        setChild(splitNode, 0, getChild(oFNode, 3));
+        setChild(splitNode, 1, getChild(oFNode, 4));
+        if (!isLeaf(splitNode)) {
+            setParent(getChild(splitNode, 0), splitNode);
+            setParent(getChild(splitNode, 1), splitNode);
+        }
+
+        // Copy the third item up, to a new root if we're at the root
+        N parentNode;
+        int childIndex;
+        if (oFNode == treeRoot) {
+            parentNode = newNode();
+            childIndex = 0;
+            addItem(parentNode, 0, oFNode, 2);
+            setChild(parentNode, 0, oFNode);
+            setParent(oFNode, parentNode);
+            treeRoot = parentNode;
+        }
+        else {
+            // Shove the item up to the parent
+            parentNode = getParent(oFNode);
+            childIndex = WCAI(oFNode);
+            insertItem(parentNode, childIndex, oFNode, 2);
+        }
+
+        // Hook up the new child
+        setChild(parentNode, childIndex + 1, splitNode);
+        setParent(splitNode, parentNode);
+
+        // Remove the third and fourth items, keeping the third's left child
+        N childC = getChild(oFNode, 2);
+        removeItem(oFNode, 2);
+        removeItem(oFNode, 2);
+        setChild(oFNode, 2, childC);
+
+        if (getNumItems(parentNode) > getMaxItems(parentNode)) {
+            overflow(parentNode);
+        }
+    }
+
+    /**
+     * Fix tree on underflow
+     * @param uFNode
+     */
+    private void underflow(N uFNode) {
+        // Special case if the root has underflowed
+        if (uFNode == treeRoot) {
+            treeRoot = getChild(uFNode, 0);
+            if (treeRoot != null) {
+                setParent(treeRoot, null);
+            }
+            return;
+        }
+
+        N parentNode = getParent(uFNode);
+        int childIndex = WCAI(uFNode);
+
+        if (childIndex > 0 &&
+                getNumItems(getChild(parentNode, childIndex - 1)) > 1) {
+            leftTransfer(uFNode, parentNode, childIndex);
+        }
+        else if (childIndex < getNumItems(parentNode) &&
+                getNumItems(getChild(parentNode, childIndex + 1)) > 1) {
+            rightTransfer(uFNode, parentNode, childIndex);
+        }
+        else if (childIndex != 0) {
+            leftFusion(uFNode, parentNode, childIndex);
+        }
+        else {
+            rightFusion(uFNode, parentNode);
+        }
+    }
+
+    /**
+     * Transfers left sibling's item with parent and emptyNode
+     * @param emptyNode
+     * @param parentNode
+     * @param emptyIndex child index of emptyNode
+     */
+    private void leftTransfer(N emptyNode, N parentNode, int emptyIndex) {
+        N siblingNode = getChild(parentNode, emptyIndex - 1);
+        int last = getNumItems(siblingNode) - 1;
+
+        // Copy down the parent item and adopt the sibling's largest child
+        addItem(emptyNode, 0, parentNode, emptyIndex - 1);
+        setChild(emptyNode, 1, getChild(emptyNode, 0));
+        setChild(emptyNode, 0, getChild(siblingNode, last + 1));
+        if (!isLeaf(emptyNode)) {
+            setParent(getChild(emptyNode, 0), emptyNode);
+        }
+        setChild(siblingNode, last + 1, null);
+
+        // Move the sibling's largest item up to the parent
+        replaceItem(parentNode, emptyIndex - 1, siblingNode, last);
+        deleteLastItem(siblingNode);
+    }
+
+    /**
+     * Transfers right sibling's item with parent and emptyNode
+     * @param emptyNode
+     * @param parentNode
+     * @param emptyIndex child index of emptyNode
+     */
+    private void rightTransfer(N emptyNode, N parentNode, int emptyIndex) {
+        N siblingNode = getChild(parentNode, emptyIndex + 1);
+
+        // Copy down the parent item, then move the sibling's smallest up
+        addItem(emptyNode, 0, parentNode, emptyIndex);
+        replaceItem(parentNode, emptyIndex, siblingNode, 0);
+
+        // Adopt the sibling's smallest child
+        setChild(emptyNode, 1, getChild(siblingNode, 0));
+        if (!isLeaf(emptyNode)) {
+            setParent(getChild(emptyNode, 1), emptyNode);
+        }
+        removeItem(siblingNode, 0);
+    }
+
+    /**
+     * Fuses emptyNode with left sibling
+     * @param emptyNode
+     * @param parentNode
+     * @param emptyIndex child index of emptyNode
+     */
+    private void leftFusion(N emptyNode, N parentNode, int emptyIndex) {
+        N siblingNode = getChild(parentNode, emptyIndex - 1);
+
+        // Copy down the parent item and adopt the empty node's child
+        addItem(siblingNode, 1, parentNode, emptyIndex - 1);
+        setChild(siblingNode, 2, getChild(emptyNode, 0));
+        if (!isLeaf(siblingNode)) {
+            setParent(getChild(siblingNode, 2), siblingNode);
+        }
+
+        // Delete the parent item, then point its slot at the fused node
+        removeItem(parentNode, emptyIndex - 1);
+        setChild(parentNode, emptyIndex - 1, siblingNode);
+
+        if (getNumItems(parentNode) == 0) {
+            underflow(parentNode);
+        }
+    }
+
+    /**
+     * Fuses emptyNode with right sibling
+     * @param emptyNode
+     * @param parentNode
+     */
+    private void rightFusion(N emptyNode, N parentNode) {
+        N siblingNode = getChild(parentNode, 1);
+
+        // Copy down the parent item and adopt the empty node's child
+        insertItem(siblingNode, 0, parentNode, 0);
+        setChild(siblingNode, 0, getChild(emptyNode, 0));
+        if (!isLeaf(siblingNode)) {
+            setParent(getChild(siblingNode, 0), siblingNode);
+        }
+
+        // Deleting the parent item also drops the empty node's pointer
+        removeItem(parentNode, 0);
+
+        if (getNumItems(parentNode) == 0) {
+            underflow(parentNode);
+        }
+    }
+}
@@ -0,0 +1,662 @@
+package termproject;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class implements a thread-safe ordered Dictionary as a row of
+ * TwoFourTrees, each holding one range of the keys.
+ *
+ * Title: Term Project 2-4 Trees
+ * @version 1.0
+ * File: ShardedTwoFourTree.java
+ * Description: A dictionary for many threads that mostly write. The keys
+ * are cut into ranges at a row of boundary keys, and each range lives in
+ * its own TwoFourTree, a shard, behind its own read-write lock. Writers in
+ * different ranges therefore never wait for one another, and the count of
+ * items is kept in a StripedCounter so they do not meet there either.
+ *
+ * The boundaries are not fixed. Every so often a writer checks how the
+ * items are spread; a tree created with only a number of shards starts out
+ * as a single shard and splits the biggest one at its middle key until it
+ * has them all, and from then on items are moved between neighbouring
+ * shards whenever one holds far more than the other. The routing table
+ * (boundaries and shards) is never changed in place: a new one is built
+ * and published while the shards involved are locked, so an operation
+ * that finds the table has changed once it holds its shard's lock simply
+ * routes its key again. All items with equal keys always share a shard.
+ *
+ * scan() visits a range of keys in order across as many shards as it
+ * spans; no items are moved between shards while a scan is running.
+ */
+
+public class ShardedTwoFourTree implements Dictionary {
+
+    // Variable declaration
+    private static final int DEFAULT_SHARDS = 16;
+    // A shard is not split until it holds this many items
+    private static final int MIN_SPLIT_SIZE = 1024;
+    // Neighbours are evened out once one holds this many more items than
+    // twice the other
+    private static final int MIN_MOVE = 256;
+    // Writes a shard takes between looks at the spread; a power of two
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final Comparator treeComp;
+    private final int maxShards;
+    private final StripedCounter size = new StripedCounter();
+    // Held for reading by scans and for writing while items are moved, so
+    // that a scan never sees an item twice or misses one
+    private final ReentrantReadWriteLock rebalanceLock =
+            new ReentrantReadWriteLock();
+    private volatile Routing routing;
+
+    /**
+     * Constructor
+     * @param comp
+     */
+    public ShardedTwoFourTree(Comparator comp) {
+        this(comp, DEFAULT_SHARDS);
+    }
+
+    /**
+     * Constructor for a tree that starts as one shard and splits into up
+     * to maxShards as it grows
+     * @param comp
+     * @param maxShards
+     */
+    public ShardedTwoFourTree(Comparator comp, int maxShards) {
+        if (maxShards < 1) {
+            throw new TwoFourTreeException("Need at least one shard");
+        }
+        treeComp = comp;
+        this.maxShards = maxShards;
+        routing = new Routing(new Object[0],
+                new Shard[] { new Shard(comp) });
+    }
+
+    /**
+     * Constructor for a tree that starts out cut at the given keys; the
+     * cuts still move later if the items turn out to be spread unevenly
+     * @param comp
+     * @param boundaries keys in increasing order; each is the smallest key
+     * of the shard after it
+     * @exception TwoFourTreeException if the keys are not in order
+     */
+    public ShardedTwoFourTree(Comparator comp, Object[] boundaries) {
+        for (int i = 1; i < boundaries.length; i++) {
+            if (comp.compare(boundaries[i-1], boundaries[i]) >= 0) {
+                throw new TwoFourTreeException("Boundaries out of order");
+            }
+        }
+        treeComp = comp;
+        maxShards = boundaries.length + 1;
+        Shard[] shards = new Shard[maxShards];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(comp);
+        }
+        routing = new Routing(boundaries.clone(), shards);
+    }
+
+    /**
+     * Returns size of the tree; exact when no writes are in progress
+     * @return size of the tree
+     */
+    public int size() {
+        return (int) size.sum();
+    }
+
+    public boolean isEmpty() {
+        return (size() == 0);
+    }
+
+    /**
+     * Returns the number of shards the keys are currently cut into
+     * @return number of shards
+     */
+    public int shardCount() {
+        return routing.shards.length;
+    }
+
+    /**
+     * Searches dictionary to determine if key is present
+     * @param key to be searched for
+     * @return object corresponding to key; null if not found
+     */
+    public Object findElement(Object key) {
+        while (true) {
+            Routing current = routing;
+            Shard shard = current.route(key);
+            shard.lock.readLock().lock();
+            try {
+                if (routing != current) {
+                    continue;
+                }
+                return shard.tree.findElement(key);
+            }
+            finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Inserts provided element into the Dictionary
+     * @param key of object to be inserted
+     * @param element to be inserted
+     */
+    public void insertElement(Object key, Object element) {
+        boolean check;
+        while (true) {
+            Routing current = routing;
+            Shard shard = current.route(key);
+            shard.lock.writeLock().lock();
+            try {
+                if (routing != current) {
+                    continue;
+                }
+                shard.tree.insertElement(key, element);
+                check = shard.wrote();
+                break;
+            }
+            finally {
+                shard.lock.writeLock().unlock();
+            }
+        }
+        size.increment();
+        if (check) {
+            rebalance();
+        }
+    }
+
+    /**
+     * Searches dictionary to determine if key is present, then
+     * removes and returns corresponding object
+     * @param key of data to be removed
+     * @return object corresponding to key
+     * @exception TwoFourTreeException if the tree is empty
+     * @exception ElementNotFoundException if the key is not in dictionary
+     */
+    public Object removeElement(Object key) throws ElementNotFoundException {
+        // If tree is empty throw exception, as TwoFourTree does
+        if (isEmpty()) {
+            throw new TwoFourTreeException();
+        }
+
+        Object removed;
+        boolean check;
+        while (true) {
+            Routing current = routing;
+            Shard shard = current.route(key);
+            shard.lock.writeLock().lock();
+            try {
+                if (routing != current) {
+                    continue;
+                }
+                // The shard may be empty while others are not, which is
+                // just a missing key
+                if (shard.tree.isEmpty()) {
+                    throw new ElementNotFoundException("Key not found");
+                }
+                removed = shard.tree.removeElement(key);
+                check = shard.wrote();
+                break;
+            }
+            finally {
+                shard.lock.writeLock().unlock();
+            }
+        }
+        size.decrement();
+        if (check) {
+            rebalance();
+        }
+        return removed;
+    }
+
+    /**
+     * Visits the items with keys from fromKey up to but not including
+     * toKey, in key order, until the visitor asks to stop. Each shard is
+     * read under its lock, so the scan sees each shard as it was at some
+     * moment, though not all shards at the same one. The visitor must not
+     * change the tree.
+     * @param fromKey lowest key to visit; null for no lower bound
+     * @param toKey key to stop before; null for no upper bound
+     * @param visitor
+     */
+    public void scan(Object fromKey, Object toKey, EntryVisitor visitor) {
+        rebalanceLock.readLock().lock();
+        try {
+            Routing current = routing;
+            int first = (fromKey == null) ? 0 : current.shardIndex(fromKey);
+            int last = (toKey == null) ? current.shards.length - 1
+                                       : current.shardIndex(toKey);
+            for (int i = first; i <= last; i++) {
+                if (!scanShard(current.shards[i], fromKey, toKey, visitor)) {
+                    return;
+                }
+            }
+        }
+        finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    // returns false once the visitor has asked to stop
+    private boolean scanShard(Shard shard, Object fromKey, Object toKey,
+                              EntryVisitor visitor) {
+        shard.lock.readLock().lock();
+        try {
+            TwoFourTreeCursor cursor = new TwoFourTreeCursor(shard.tree);
+            boolean valid = (fromKey == null) ? cursor.first()
+                                              : cursor.seek(fromKey);
+            for (; valid; valid = cursor.next()) {
+                if (toKey != null && treeComp.compare(cursor.key(), toKey) >= 0) {
+                    return false;
+                }
+                if (!visitor.visit(cursor.key(), cursor.element())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Looks at how the items are spread over the shards and, if they are
+     * spread badly, splits a shard or moves items between two neighbours.
+     * Writers call this every so often on their own; it returns at once
+     * if a scan or another rebalance is running.
+     */
+    public void rebalance() {
+        if (!rebalanceLock.writeLock().tryLock()) {
+            return;
+        }
+        try {
+            Routing current = routing;
+            Shard[] shards = current.shards;
+
+            // The sizes are read without the locks, which is good enough
+            // to choose what to do; the moves themselves are made locked
+            int[] sizes = new int[shards.length];
+            for (int i = 0; i < shards.length; i++) {
+                sizes[i] = shards[i].size;
+            }
+
+            if (shards.length < maxShards) {
+                int biggest = 0;
+                for (int i = 1; i < sizes.length; i++) {
+                    if (sizes[i] > sizes[biggest]) {
+                        biggest = i;
+                    }
+                }
+                if (sizes[biggest] >= MIN_SPLIT_SIZE) {
+                    split(current, biggest);
+                }
+                return;
+            }
+
+            // Even out the neighbours that differ the most
+            int pair = -1;
+            int worst = 0;
+            for (int i = 0; i + 1 < sizes.length; i++) {
+                int big = Math.max(sizes[i], sizes[i+1]);
+                int small = Math.min(sizes[i], sizes[i+1]);
+                if (big > 2 * small + MIN_MOVE && big - small > worst) {
+                    pair = i;
+                    worst = big - small;
+                }
+            }
+            if (pair >= 0) {
+                even(current, pair);
+            }
+        }
+        finally {
+            rebalanceLock.writeLock().unlock();
+        }
+    }
+
+    // moves the upper half of a shard into a new shard after it
+    private void split(Routing current, int index) {
+        Shard shard = current.shards[index];
+        Shard newShard = new Shard(treeComp);
+        shard.lock.writeLock().lock();
+        try {
+            Object boundary = moveUpper(shard, newShard, shard.tree.size() / 2);
+            if (boundary == null) {
+                return;
+            }
+            Shard[] shards = new Shard[current.shards.length + 1];
+            Object[] boundaries = new Object[current.boundaries.length + 1];
+            System.arraycopy(current.shards, 0, shards, 0, index + 1);
+            shards[index + 1] = newShard;
+            System.arraycopy(current.shards, index + 1, shards, index + 2,
+                             current.shards.length - index - 1);
+            System.arraycopy(current.boundaries, 0, boundaries, 0, index);
+            boundaries[index] = boundary;
+            System.arraycopy(current.boundaries, index, boundaries, index + 1,
+                             current.boundaries.length - index);
+            routing = new Routing(boundaries, shards);
+        }
+        finally {
+            shard.lock.writeLock().unlock();
+        }
+    }
+
+    // moves items across the boundary between shards index and index + 1
+    // until the two are about the same size
+    private void even(Routing current, int index) {
+        Shard left = current.shards[index];
+        Shard right = current.shards[index + 1];
+        // Always locked left to right; single-key operations hold only
+        // one lock, so this cannot deadlock
+        left.lock.writeLock().lock();
+        right.lock.writeLock().lock();
+        try {
+            int leftSize = left.tree.size();
+            int rightSize = right.tree.size();
+            Object boundary;
+            if (leftSize > rightSize) {
+                boundary = moveUpper(left, right, (leftSize - rightSize) / 2);
+            }
+            else {
+                boundary = moveLower(left, right, (rightSize - leftSize) / 2);
+            }
+            if (boundary == null) {
+                return;
+            }
+            Object[] boundaries = current.boundaries.clone();
+            boundaries[index] = boundary;
+            routing = new Routing(boundaries, current.shards);
+        }
+        finally {
+            right.lock.writeLock().unlock();
+            left.lock.writeLock().unlock();
+        }
+    }
+
+    // moves about count items from the top of from into to, which holds
+    // only greater keys; returns the smallest key moved, or null if
+    // nothing could be moved without splitting a run of equal keys
+    private Object moveUpper(Shard from, Shard to, int count) {
+        if (count < 1) {
+            return null;
+        }
+        TwoFourTreeCursor cursor = new TwoFourTreeCursor(from.tree);
+        cursor.last();
+        for (int i = 1; i < count; i++) {
+            cursor.prev();
+        }
+        Object boundary = cursor.key();
+        cursor.seek(boundary);
+        if (!cursor.prev()) {
+            return null;
+        }
+        cursor.next();
+
+        ArrayList<Object> keys = new ArrayList<Object>();
+        ArrayList<Object> elements = new ArrayList<Object>();
+        do {
+            keys.add(cursor.key());
+            elements.add(cursor.element());
+        } while (cursor.next());
+        transfer(from, to, keys, elements);
+        return boundary;
+    }
+
+    // moves about count items from the bottom of from into to, which holds
+    // only smaller keys; returns the new smallest key of from, or null if
+    // nothing could be moved without splitting a run of equal keys
+    private Object moveLower(Shard to, Shard from, int count) {
+        if (count < 1) {
+            return null;
+        }
+        TwoFourTreeCursor cursor = new TwoFourTreeCursor(from.tree);
+        cursor.first();
+        for (int i = 0; i < count; i++) {
+            if (!cursor.next()) {
+                return null;
+            }
+        }
+        Object boundary = cursor.key();
+
+        ArrayList<Object> keys = new ArrayList<Object>();
+        ArrayList<Object> elements = new ArrayList<Object>();
+        for (boolean valid = cursor.first();
+             valid && treeComp.compare(cursor.key(), boundary) < 0;
+             valid = cursor.next()) {
+            keys.add(cursor.key());
+            elements.add(cursor.element());
+        }
+        if (keys.isEmpty()) {
+            return null;
+        }
+        transfer(from, to, keys, elements);
+        return boundary;
+    }
+
+    // every key of a run of equal keys is moved, so it does not matter
+    // which of the equal items removeAll picks
+    private void transfer(Shard from, Shard to, ArrayList<Object> keys,
+                          ArrayList<Object> elements) {
+        Object[] keyArray = keys.toArray();
+        from.tree.removeAll(keyArray);
+        to.tree.insertAll(keyArray, elements.toArray());
+        from.size = from.tree.size();
+        to.size = to.tree.size();
+    }
+
+    // throws unless a scan from fromKey to toKey visits exactly the kept
+    // keys in that range, in increasing order
+    private static void checkScan(ShardedTwoFourTree tree, int fromKey, int toKey,
+                                  final boolean[] kept, String what) {
+        final int[] last = { fromKey - 1 };
+        final int[] count = { 0 };
+        tree.scan(Integer.valueOf(fromKey), Integer.valueOf(toKey), new EntryVisitor() {
+            public boolean visit(Object key, Object element) {
+                int num = ((Integer) key).intValue();
+                if (num <= last[0] || !kept[num] || !key.equals(element)) {
+                    throw new TwoFourTreeException("main: scan out of order at " + num);
+                }
+                last[0] = num;
+                count[0]++;
+                return true;
+            }
+        });
+        int expected = 0;
+        for (int i = fromKey; i < toKey; i++) {
+            if (kept[i]) {
+                expected++;
+            }
+        }
+        if (count[0] != expected) {
+            throw new TwoFourTreeException("main: " + what + " scanned " + count[0] +
+                                           " keys instead of " + expected);
+        }
+    }
+
+    // throws unless the tree holds exactly the kept keys
+    private static void checkContents(ShardedTwoFourTree tree, boolean[] kept,
+                                      String what) {
+        int count = 0;
+        for (int i = 0; i < kept.length; i++) {
+            Object found = tree.findElement(Integer.valueOf(i));
+            if (kept[i] ? !Integer.valueOf(i).equals(found) : found != null) {
+                throw new TwoFourTreeException("main: " + what + " wrong at key " + i);
+            }
+            if (kept[i]) {
+                count++;
+            }
+        }
+        if (tree.size() != count) {
+            throw new TwoFourTreeException("main: " + what + " wrong size");
+        }
+        checkScan(tree, 0, kept.length, kept, what);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Comparator myComp = new IntegerComparator();
+        final int THREADS = 4;
+        final int TEST_SIZE = 20000;
+        final boolean[] kept = new boolean[2 * TEST_SIZE];
+
+        // Removing from an empty tree fails as TwoFourTree's does; from an
+        // empty shard of a tree with items, the key is just missing
+        ShardedTwoFourTree myTree = new ShardedTwoFourTree(myComp,
+                new Object[] { Integer.valueOf(100) });
+        try {
+            myTree.removeElement(Integer.valueOf(5));
+            throw new TwoFourTreeException("main: removed from empty tree");
+        }
+        catch (TwoFourTreeException exc) {
+            if (exc.getMessage() != null && exc.getMessage().startsWith("main:")) {
+                throw exc;
+            }
+        }
+        myTree.insertElement(Integer.valueOf(5), Integer.valueOf(5));
+        try {
+            myTree.removeElement(Integer.valueOf(200));
+            throw new TwoFourTreeException("main: removed from empty shard");
+        }
+        catch (ElementNotFoundException exc) {
+        }
+        System.out.println("Correct empty removes? true");
+
+        // Ascending keys all land in the last shard, so the tree splits
+        // until it has all its shards
+        myTree = new ShardedTwoFourTree(myComp, THREADS);
+        for (int i = 0; i < TEST_SIZE; i++) {
+            myTree.insertElement(Integer.valueOf(i), Integer.valueOf(i));
+            kept[i] = true;
+        }
+        if (myTree.shardCount() != THREADS) {
+            throw new TwoFourTreeException("main: " + myTree.shardCount() +
+                                           " shards after splitting");
+        }
+        checkContents(myTree, kept, "split");
+        checkScan(myTree, TEST_SIZE / 8, TEST_SIZE - TEST_SIZE / 8, kept, "split range");
+        System.out.println("Correct splits? true");
+
+        // Emptying the low shards makes their neighbours move items down
+        for (int i = 0; i < 3 * TEST_SIZE / 4; i++) {
+            if (i % 8 != 0) {
+                myTree.removeElement(Integer.valueOf(i));
+                kept[i] = false;
+            }
+        }
+        for (int i = 0; i < 8; i++) {
+            myTree.rebalance();
+        }
+        checkContents(myTree, kept, "even");
+        checkScan(myTree, TEST_SIZE / 3, TEST_SIZE, kept, "even range");
+        System.out.println("Correct rebalance? true");
+
+        // Writers add keys above the ones already there, moving the
+        // boundaries as they go, while a scanner keeps checking that every
+        // key already there is seen once and in order
+        final ShardedTwoFourTree sharedTree = myTree;
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger writersLeft = new AtomicInteger(THREADS);
+        Thread[] threads = new Thread[THREADS + 1];
+        for (int t = 0; t < THREADS; t++) {
+            final int first = TEST_SIZE + t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    for (int i = first; i < 2 * TEST_SIZE; i += THREADS) {
+                        sharedTree.insertElement(Integer.valueOf(i), Integer.valueOf(i));
+                    }
+                    writersLeft.decrementAndGet();
+                }
+            });
+        }
+        threads[THREADS] = new Thread(new Runnable() {
+            public void run() {
+                while (writersLeft.get() > 0) {
+                    try {
+                        checkScan(sharedTree, 0, TEST_SIZE, kept, "concurrent scan");
+                    }
+                    catch (TwoFourTreeException exc) {
+                        failures.incrementAndGet();
+                    }
+                }
+            }
+        });
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failures.get() != 0) {
+            throw new TwoFourTreeException("main: scan missed or repeated keys");
+        }
+        for (int i = TEST_SIZE; i < 2 * TEST_SIZE; i++) {
+            kept[i] = true;
+        }
+        checkContents(myTree, kept, "concurrent");
+        System.out.println("Correct concurrent scans? true");
+
+        System.out.println("done");
+    }
+
+    /**
+     * One range of the keys, with the tree that holds it
+     */
+    private static class Shard {
+        final TwoFourTree tree;
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // copy of tree.size() that rebalance() may read without the lock
+        volatile int size;
+        // writes since the shard was made; only changed under the lock
+        int writes;
+
+        Shard(Comparator comp) {
+            tree = new TwoFourTree(comp);
+        }
+
+        // called under the write lock after each write; returns true when
+        // it is time to look at the spread again
+        boolean wrote() {
+            size = tree.size();
+            return ((++writes & (CHECK_INTERVAL - 1)) == 0);
+        }
+    }
+
+    /**
+     * The boundaries and shards as one value, replaced whole whenever
+     * either changes
+     */
+    private class Routing {
+        // boundaries[i] is the smallest key shards[i+1] may hold
+        final Object[] boundaries;
+        final Shard[] shards;
+
+        Routing(Object[] boundaries, Shard[] shards) {
+            this.boundaries = boundaries;
+            this.shards = shards;
+        }
+
+        // the number of boundaries not greater than key
+        int shardIndex(Object key) {
+            int low = 0;
+            int high = boundaries.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (treeComp.compare(boundaries[mid], key) <= 0) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        Shard route(Object key) {
+            return shards[shardIndex(key)];
+        }
+    }
+}
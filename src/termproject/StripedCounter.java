@@ -0,0 +1,64 @@
+package termproject;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Title:        Term Project 2-4 Trees
+ * Description:  A counter that many threads can add to without all of them
+ *               fighting over one memory word.  Each thread adds to one of
+ *               several cells, picked by its thread id and spaced a cache
+ *               line apart; sum() adds the cells up.  The sum is exact once
+ *               the adding has stopped, and otherwise some value the count
+ *               passed through recently.
+ * @version 1.0
+ */
+
+public class StripedCounter {
+
+        // longs per cache line, so neighbouring cells never share one
+    private static final int SPACING = 8;
+
+    private final int stripes;
+    private final AtomicLongArray cells;
+
+    /**
+     * Creates a counter with a stripe per available processor
+     */
+    public StripedCounter() {
+        this (Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a counter with the given number of stripes
+     * @param stripes
+     */
+    public StripedCounter(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes < 1");
+        }
+        this.stripes = stripes;
+        cells = new AtomicLongArray(stripes * SPACING);
+    }
+
+    public void add(long delta) {
+        long id = Thread.currentThread().getId();
+        int stripe = (int) ((id ^ (id >>> 16)) % stripes);
+        cells.addAndGet(stripe * SPACING, delta);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void decrement() {
+        add(-1);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < stripes; i++) {
+            sum += cells.get(i * SPACING);
+        }
+        return sum;
+    }
+}
@@ -11,24 +11,44 @@ package termproject;
  *          and changed necessary methods to deal with Item instead of Object
  * Description: The basic node for a 2-4 tree.  Contains an array of Items,
  * an array of references to children TFNodes, a pointer to a parent TFNode,
- * and a count of how many Items are stored in the node.
+ * and a count of how many Items are stored in the node.  The number of
+ * Items a node holds can be raised above 3 to use the node in a B-tree of
+ * higher order.  The keys of the Items are mirrored in their own array, so
+ * a search within the node walks one contiguous array of references instead
+ * of dereferencing an Item per probe; for that reason the key of an Item
+ * must not be changed while the Item is stored in a node.  Each node also
+ * carries the number of Items in the subtree under it, for the rank and
+ * select queries of TwoFourTree, and may carry an Aggregator's summary of
+ * them.
  */
 
 public class TFNode {
 
     private static final int MAX_ITEMS = 3;
 
+    private int maxItems;
     private int numItems = 0;
+    private int subtreeItems = 0;
+    private Object subtreeAggregate;
     private TFNode nodeParent;
     private TFNode[] nodeChildren;
     // DMG 3 Dec 09 - changed type to Item
     private Item[] nodeItems;
+    private Object[] nodeKeys;
 
     public TFNode() {
+        this (MAX_ITEMS);
+    }
+
+    public TFNode(int maxItems) {
+        if (maxItems < 2)
+            throw new TFNodeException();
+        this.maxItems = maxItems;
             // make them one bigger than needed, so can handle oversize nodes
             // during inserts
-        nodeChildren = new TFNode[MAX_ITEMS+2];
-        nodeItems = new Item[MAX_ITEMS+1];
+        nodeChildren = new TFNode[maxItems+2];
+        nodeItems = new Item[maxItems+1];
+        nodeKeys = new Object[maxItems+1];
     }
 
     public int getNumItems () {
@@ -36,9 +56,46 @@ public class TFNode {
     }
 
     public int getMaxItems() {
-        return MAX_ITEMS;
+        return maxItems;
+    }
+
+        // items in this node and all of its descendants; the node does not
+        // keep it up to date by itself, TwoFourTree does as it changes the
+        // tree, and PersistentTwoFourTree does not keep it at all
+    public int getSubtreeItems() {
+        return subtreeItems;
+    }
+    public void setSubtreeItems(int count) {
+        subtreeItems = count;
+    }
+        // an Aggregator's value for the items of the subtree, kept by
+        // TwoFourTree in the same way as the count
+    public Object getSubtreeAggregate() {
+        return subtreeAggregate;
+    }
+    public void setSubtreeAggregate(Object aggregate) {
+        subtreeAggregate = aggregate;
+    }
+        // sets the count from the node's items and its children's counts
+    public void recountSubtreeItems() {
+        int count = numItems;
+        if (nodeChildren[0] != null) {
+            for (int ind=0; ind <= numItems; ind++) {
+                count += nodeChildren[ind].subtreeItems;
+            }
+        }
+        subtreeItems = count;
+    }
+
+        // leaves have no children at all; there are no sentinel nodes, so
+        // the first child pointer being null is enough to tell
+    public boolean isLeaf() {
+        return (nodeChildren[0] == null);
     }
 
+        // parent pointers are optional: a PersistentTwoFourTree shares
+        // nodes between versions, so a node there has no single parent and
+        // the pointer stays null
     public TFNode getParent() {
         return nodeParent;
     }
@@ -49,26 +106,35 @@ public class TFNode {
         if ( (index < 0) || (index > (numItems-1) ) )
             throw new TFNodeException();
         return nodeItems[index];
+    }
+        // same as getItem(index).key(), without touching the Item
+    public Object getKey(int index) {
+        if ( (index < 0) || (index > (numItems-1) ) )
+            throw new TFNodeException();
+        return nodeKeys[index];
     }
         // adds, but does not extend array; so it overwrites anything there
     public void addItem (int index, Item data) {
             // always add at end+1; check that you are within array
-        if ( (index < 0) || (index > numItems) || (index > MAX_ITEMS) )
+        if ( (index < 0) || (index > numItems) || (index > maxItems) )
             throw new TFNodeException();
         nodeItems[index] = data;
+        nodeKeys[index] = data.key();
         numItems++;
     }
         // this function inserts an item into the node, and adjusts into child
         // pointers to add the proper corresponding pointer
     public void insertItem (int index, Item data) {
-        if ( (index < 0) || (index > numItems) || (index > MAX_ITEMS) )
+        if ( (index < 0) || (index > numItems) || (index > maxItems) )
             throw new TFNodeException();
             // adjust Items
         for (int ind=numItems; ind > index; ind--) {
             nodeItems[ind] = nodeItems[ind-1];
+            nodeKeys[ind] = nodeKeys[ind-1];
         }
             // insert new data into hole made
         nodeItems[index] = data;
+        nodeKeys[index] = data.key();
             // adjust children pointers; if inserting into index=1, we make
             // pointers 1 and 2 to point to 1; this is because whoever called
             // this function will fix one of them later; index 0 doesn't change;
@@ -88,8 +154,10 @@ public class TFNode {
 
         for (int ind=index; ind < numItems-1; ind++) {
             nodeItems[ind] = nodeItems[ind+1];
+            nodeKeys[ind] = nodeKeys[ind+1];
         }
         nodeItems[numItems-1] = null;
+        nodeKeys[numItems-1] = null;
             // fix children pointers also
             // typically, you wouldn't expect to do a removeItem unless
             // children are null, because removal of an item will mess up the
@@ -109,6 +177,7 @@ public class TFNode {
             throw new TFNodeException();
         Item removedItem = nodeItems[index];
         nodeItems[index] = null;
+        nodeKeys[index] = null;
 
         numItems--;
         return removedItem;
@@ -120,16 +189,43 @@ public class TFNode {
         Item returnItem = nodeItems[index];
 
         nodeItems[index] = newItem;
+        nodeKeys[index] = newItem.key();
         return returnItem;
     }
 
+        // drops the items from index on, along with the children to their
+        // right; used when the upper part of a node has been split off
+    public void truncate (int index) {
+        if ( (index < 0) || (index > numItems) )
+            throw new TFNodeException();
+        for (int ind=index; ind < numItems; ind++) {
+            nodeItems[ind] = null;
+            nodeKeys[ind] = null;
+            nodeChildren[ind+1] = null;
+        }
+        numItems = index;
+    }
+
+        // copies the items and child pointers into a new node, leaving the
+        // parent pointer unset; used to change a node that is shared
+    public TFNode copy () {
+        TFNode newNode = new TFNode(maxItems);
+        System.arraycopy(nodeItems, 0, newNode.nodeItems, 0, numItems);
+        System.arraycopy(nodeKeys, 0, newNode.nodeKeys, 0, numItems);
+        System.arraycopy(nodeChildren, 0, newNode.nodeChildren, 0, numItems+1);
+        newNode.numItems = numItems;
+        newNode.subtreeItems = subtreeItems;
+        newNode.subtreeAggregate = subtreeAggregate;
+        return newNode;
+    }
+
     public TFNode getChild (int index) {
-        if ( (index < 0) || (index > (MAX_ITEMS+1)) )
+        if ( (index < 0) || (index > (maxItems+1)) )
             throw new TFNodeException();
         return nodeChildren[index];
     }
     public void setChild (int index, TFNode child) {
-        if ( (index < 0) || (index > (MAX_ITEMS+1)) )
+        if ( (index < 0) || (index > (maxItems+1)) )
             throw new TFNodeException();
         nodeChildren[index] = child;
     }
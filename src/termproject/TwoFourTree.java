@@ -1,6 +1,12 @@
 package termproject;
 
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
 * This class implements the (2,4)-Tree ADT using the Dictionary interface.
@@ -23,26 +29,233 @@ import java.util.Random;
 public class TwoFourTree implements Dictionary {
 
     // Variable declaration
+    private static final int DEFAULT_ORDER = 4;
+    // Nodes with more items than this are searched by bisection
+    private static final int LINEAR_SEARCH_ITEMS = 8;
+    // Set operations for combine()
+    private static final int UNION = 0;
+    private static final int INTERSECTION = 1;
+    private static final int DIFFERENCE = 2;
     private Comparator treeComp;
     private int size;
     private TFNode treeRoot;
-    private static final Object NO_SUCH_KEY = "NO_SUCH_KEY";
+    // Most and fewest items a non-root node may hold for the tree's order
+    private int maxItems;
+    private int minItems;
+    // Path recorded by the last findNode descent, reused by every insert
+    // and remove: pathNodes[d] is the node at depth d and pathIndex[d] the
+    // child index taken from it, or the findIndex result at the last level.
+    // Splits and fusions read parents and child indexes from here rather
+    // than from getParent() and a scan of the parent's children. In finger
+    // search mode the path is kept between calls as the finger
+    private TFNode[] pathNodes = new TFNode[16];
+    private int[] pathIndex = new int[16];
+    private int pathDepth;
+    // Counts inserts and removes, so cursors can tell their path is stale
+    private int modCount;
+    // Summarizes every subtree for aggregate(); null if the tree has none
+    private Aggregator aggregator;
+    // Items found recently by findElement(); null when turned off
+    private LookupCache lookupCache;
+    // Set when searches start from the finger instead of the root
+    private boolean fingerSearch;
+    // Where operations and structural changes are reported; null when off
+    private TwoFourTreeMetrics metrics;
 
     /**
 	* Constructor
 	* @param comp 
 	*/
     public TwoFourTree(Comparator comp) {
+        this(comp, DEFAULT_ORDER);
+    }
+
+    /**
+	* Constructor for a B-tree of the given order; an order of 4 gives the
+	* 2-4 tree, larger orders give wider, shallower nodes
+	* @param comp 
+	* @param order most children a node may have; at least 3
+	*/
+    public TwoFourTree(Comparator comp, int order) {
+        if(order < 3) {
+            throw new TwoFourTreeException("Order must be at least 3");
+        }
         treeComp = comp;
 	   treeRoot = null;
 	   size = 0;
+	   maxItems = order - 1;
+	   minItems = (order + 1) / 2 - 1;
+    }
+
+    /**
+	* Constructor for a tree which keeps an aggregate of every subtree,
+	* so that aggregate() can summarize a key range in O(log n)
+	* @param comp
+	* @param order most children a node may have; at least 3
+	* @param aggregator
+	*/
+    public TwoFourTree(Comparator comp, int order, Aggregator aggregator) {
+	    this(comp, order);
+	    this.aggregator = aggregator;
+    }
+
+    /**
+	* Constructor which bulk loads keys given in sorted order, packing every
+	* node full
+	* @param comp 
+	* @param keys in non-decreasing order
+	* @param elements element for each key
+	*/
+    public TwoFourTree(Comparator comp, Object[] keys, Object[] elements) {
+	    this(comp, DEFAULT_ORDER);
+	    bulkLoad(keys, elements, 1.0);
+    }
+
+    /**
+	* Builds the tree bottom-up from keys given in sorted order, in O(n)
+	* and with no comparisons beyond checking that order
+	* @param keys in non-decreasing order
+	* @param elements element for each key
+	* @param fillFactor share of each node's room to fill, in (0, 1]; nodes
+	* never get fewer items than the tree's order requires
+	* @exception TwoFourTreeException if the tree is not empty, the arrays
+	* differ in length or the keys are out of order
+	*/
+    public void bulkLoad(Object[] keys, Object[] elements, double fillFactor) {
+	    checkBulkLoad(fillFactor);
+	    if(keys.length != elements.length) {
+		    throw new TwoFourTreeException("Keys and elements differ in length");
+	    }
+	    Item[] items = new Item[keys.length];
+	    for(int i = 0; i < keys.length; i++) {
+		    items[i] = new Item(keys[i], elements[i]);
+	    }
+	    buildFromItems(items, items.length, fillFactor);
+    }
+
+    /**
+	* Builds the tree bottom-up from items delivered in sorted key order,
+	* in O(n) and with no comparisons beyond checking that order
+	* @param items in non-decreasing key order; the Items themselves are
+	* stored in the tree
+	* @param fillFactor share of each node's room to fill, in (0, 1]
+	* @exception TwoFourTreeException if the tree is not empty or the keys
+	* are out of order
+	*/
+    public void bulkLoad(Iterator<Item> items, double fillFactor) {
+	    checkBulkLoad(fillFactor);
+	    Item[] buffer = new Item[16];
+	    int count = 0;
+	    while(items.hasNext()) {
+		    if(count == buffer.length) {
+			    buffer = Arrays.copyOf(buffer, count * 2);
+		    }
+		    buffer[count++] = items.next();
+	    }
+	    buildFromItems(buffer, count, fillFactor);
+    }
+
+    /**
+	* Checks that a bulk load may start
+	* @param fillFactor 
+	*/
+    private void checkBulkLoad(double fillFactor) {
+	    if(!isEmpty()) {
+		    throw new TwoFourTreeException("Tree must be empty to bulk load");
+	    }
+	    if(!(fillFactor > 0 && fillFactor <= 1)) {
+		    throw new TwoFourTreeException("Fill factor must be in (0, 1]");
+	    }
+    }
+
+    /**
+	* Builds the tree one level at a time from the bottom: each level is
+	* cut into nodes of about the same size, and the item between two
+	* neighbouring nodes moves up as a separator for the level above
+	* @param items sorted items; overwritten with the separators
+	* @param count number of items in use
+	* @param fillFactor 
+	*/
+    private void buildFromItems(Item[] items, int count, double fillFactor) {
+	    // Check the order with one comparison per neighbouring pair
+	    for(int i = 1; i < count; i++) {
+		    if(treeComp.compare(items[i - 1].key(), items[i].key()) > 0) {
+			    throw new TwoFourTreeException("Keys are not in sorted order");
+		    }
+	    }
+	    if(count == 0) {
+		    return;
+	    }
+	    int fill = Math.max(minItems, (int) Math.round(fillFactor * maxItems));
+	    int total = count;
+	    
+	    TFNode[] children = null;
+	    while(true) {
+		    int numNodes = levelWidth(count, fill);
+		    TFNode[] nodes = new TFNode[numNodes];
+		    
+		    // Spread the items not used as separators evenly
+		    int perNode = (count - numNodes + 1) / numNodes;
+		    int extra = (count - numNodes + 1) % numNodes;
+		    int nextItem = 0;
+		    int nextChild = 0;
+		    for(int j = 0; j < numNodes; j++) {
+			    TFNode node = newNode();
+			    int numItems = perNode + ((j < extra) ? 1 : 0);
+			    for(int i = 0; i < numItems; i++) {
+				    node.addItem(i, items[nextItem++]);
+			    }
+			    
+			    // Hang the nodes of the level below under this one
+			    if(children != null) {
+				    for(int i = 0; i <= numItems; i++) {
+					    TFNode child = children[nextChild++];
+					    node.setChild(i, child);
+					    child.setParent(node);
+				    }
+			    }
+			    recount(node);
+			    nodes[j] = node;
+			    
+			    // Reuse the front of the array for the separators, which
+			    // never overtakes the items still to be read
+			    if(j < numNodes - 1) {
+				    items[j] = items[nextItem++];
+			    }
+		    }
+		    
+		    // Stop once a level fits in a single node, the root
+		    if(numNodes == 1) {
+			    setRoot(nodes[0]);
+			    break;
+		    }
+		    children = nodes;
+		    count = numNodes - 1;
+	    }
+	    size = total;
+	    modCount++;
+    }
+
+    /**
+	* Returns how many nodes a level of count items is cut into: as few as
+	* the fill allows, but not so many that a node drops below minItems
+	* @param count items on the level, separators included
+	* @param fill items wanted per node
+	* @return number of nodes
+	*/
+    private int levelWidth(int count, int fill) {
+	    // k nodes hold k * items + (k - 1) separators
+	    int slots = count + 1;
+	    int width = (slots + fill) / (fill + 1);
+	    width = Math.min(width, slots / (minItems + 1));
+	    return Math.max(width, 1);
     }
 
     /**
 	* Get method for root
 	* @return root of the tree
 	*/
-    private TFNode root() {
+    TFNode root() {
         return treeRoot;
     }
 
@@ -54,6 +267,30 @@ public class TwoFourTree implements Dictionary {
         treeRoot = root;
     }
 
+    /**
+	* Get method for the comparator
+	* @return comparator ordering the keys
+	*/
+    Comparator comparator() {
+        return treeComp;
+    }
+
+    /**
+	* Get method for the modification count
+	* @return number of inserts and removes so far
+	*/
+    int modCount() {
+        return modCount;
+    }
+
+    /**
+	* Get method for the order
+	* @return most children a node may have
+	*/
+    int order() {
+        return maxItems + 1;
+    }
+
     /**
 	* Returns size of the tree
 	* @return size of the tree
@@ -71,469 +308,2184 @@ public class TwoFourTree implements Dictionary {
     }
 
     /**
-     * Searches dictionary to determine if key is present
-     * @param key to be searched for
-     * @return object corresponding to key; null if not found
-     */
-    public Object findElement(Object key) {
-	    // Find the TFNode that contains the correct object by calling
-	    // findElementHere using the root
-	    TFNode foundNode = findNode(key, root());
+     * Searches dictionary to determine if key is present
+     * @param key to be searched for
+     * @return object corresponding to key; null if not found
+     */
+    public Object findElement(Object key) {
+	    if(metrics == null) {
+		    return find(key);
+	    }
+	    long start = System.nanoTime();
+	    try {
+		    return find(key);
+	    }
+	    finally {
+		    metrics.recordFind(System.nanoTime() - start);
+	    }
+    }
+
+    /**
+	* Body of findElement(), which times it when metrics are on
+	* @param key to be searched for
+	* @return object corresponding to key; null if not found
+	*/
+    private Object find(Object key) {
+	    // A cached key skips the descent; one comparison makes sure the
+	    // entry found by equals() is one the comparator would find too
+	    if(lookupCache != null) {
+		    Item cachedItem = lookupCache.get(key);
+		    if(cachedItem != null && treeComp.compare(cachedItem.key(), key) == 0) {
+			    return cachedItem.element();
+		    }
+	    }
+	    Item foundItem;
+	    if(fingerSearch && !isEmpty()) {
+		    TFNode node = fingerNode(key);
+		    int index = pathIndex[pathDepth - 1];
+		    foundItem = (index >= 0) ? node.getItem(index) : null;
+	    }
+	    else {
+		    foundItem = findItem(key);
+	    }
+	    if(foundItem == null) {
+		    return null;
+	    }
+	    if(lookupCache != null) {
+		    lookupCache.put(foundItem.key(), foundItem);
+	    }
+	    return foundItem.element();
+    }
+
+    /**
+	* Puts a cache of the most recently found items in front of
+	* findElement(), or takes it away. The cache holds Items, not nodes:
+	* an Item keeps its key while it is in the tree, even when
+	* removeElement() moves it up from a leaf to take the place of the
+	* item removed, so an entry only goes stale when its Item is removed.
+	* Entries are filed under the key stored in their Item, not the key
+	* looked up, so removes drop the removed Item's entry even when the
+	* Comparator and equals() disagree about keys; inserts, which only add
+	* Items, leave the cache alone
+	* @param capacity most keys cached; 0 for no cache
+	*/
+    public void setLookupCache(int capacity) {
+	    lookupCache = (capacity == 0) ? null : new LookupCache(capacity);
+    }
+
+    /**
+	* Get method for the lookup cache, to read its hit and miss counts
+	* @return the cache; null if there is none
+	*/
+    public LookupCache getLookupCache() {
+	    return lookupCache;
+    }
+
+    /**
+	* Turns finger search on or off. With it on, the path to the item last
+	* found, inserted or removed is kept as a finger, and findElement(),
+	* insertElement() and removeElement() climb from its end only until
+	* they reach a subtree whose bounds hold the key, then descend from
+	* there. A key d items away from the last one costs O(log d) instead
+	* of O(log n), so keys that arrive nearly sorted, or that cluster, are
+	* found in close to constant time; keys all over the tree pay for the
+	* climb on top of the descent. The finger is a path from the root
+	* rather than the nodes' parent pointers, which splits and fusions
+	* keep up to date as they go. Among equal keys the finger may find a
+	* different item than a search from the root would
+	* @param on
+	*/
+    public void setFingerSearch(boolean on) {
+	    fingerSearch = on;
+	    clearPath();
+    }
+
+    /**
+	* Turns metrics on or off. While they are on, the tree times its
+	* finds, inserts and removes, counts its splits, transfers, fusions,
+	* nodes and comparator calls, and reports them all to a
+	* TwoFourTreeMetrics; while they are off, each of those places costs
+	* one test of a null field, and the comparator is called directly.
+	* Turning them on again starts from zero
+	* @param on
+	*/
+    public void setMetricsEnabled(boolean on) {
+	    treeComp = TwoFourTreeMetrics.uncounted(treeComp);
+	    if(!on) {
+		    metrics = null;
+		    return;
+	    }
+	    metrics = new TwoFourTreeMetrics(this, countNodes(root()));
+	    treeComp = metrics.countingComparator(treeComp);
+    }
+
+    /**
+	* Get method for the metrics
+	* @return the metrics; null if they are off
+	*/
+    public TwoFourTreeMetrics getMetrics() {
+	    return metrics;
+    }
+
+    /**
+	* Counts the nodes of a subtree
+	* @param node
+	* @return number of nodes; 0 for null
+	*/
+    private int countNodes(TFNode node) {
+	    if(node == null) {
+		    return 0;
+	    }
+	    int count = 1;
+	    if(!node.isLeaf()) {
+		    for(int i = 0; i <= node.getNumItems(); i++) {
+			    count += countNodes(node.getChild(i));
+		    }
+	    }
+	    return count;
+    }
+
+    /**
+	* Finds the item stored under key without recording a path
+	* @param key to be searched for
+	* @return item holding key; null if not found
+	*/
+    Item findItem(Object key) {
+	    // An empty tree has nothing to find
+	    if(isEmpty()) {
+		    return null;
+	    }
+	    
+	    // Walk down from the root, comparing each key slot once
+	    TFNode node = root();
+	    while(true) {
+		    int index = findIndex(node, key);
+		    
+		    // Return the item as soon as the key turns up
+		    if(index >= 0) {
+			    return node.getItem(index);
+		    }
+		    
+		    // Check if the search ended at a leaf without a match
+		    if(node.isLeaf()) {
+			    return null;
+		    }
+		    node = node.getChild(-index - 1);
+	    }
+    }
+
+    /**
+	* Finds the item with the smallest key
+	* @return first item; null if the tree is empty
+	*/
+    Item firstItem() {
+	    if(isEmpty()) {
+		    return null;
+	    }
+	    TFNode node = root();
+	    while(!node.isLeaf()) {
+		    node = node.getChild(0);
+	    }
+	    return node.getItem(0);
+    }
+
+    /**
+	* Finds the item with the largest key
+	* @return last item; null if the tree is empty
+	*/
+    Item lastItem() {
+	    if(isEmpty()) {
+		    return null;
+	    }
+	    TFNode node = root();
+	    while(!node.isLeaf()) {
+		    node = node.getChild(node.getNumItems());
+	    }
+	    return node.getItem(node.getNumItems() - 1);
+    }
+
+    /**
+	* Finds the item with the smallest key at or above (or strictly above)
+	* the given key
+	* @param key
+	* @param inclusive true to accept an item equal to key
+	* @return that item; null if there is none
+	*/
+    Item ceilingItem(Object key, boolean inclusive) {
+	    Item candidate = null;
+	    TFNode node = root();
+	    while(node != null) {
+		    // The first item past key bounds everything further down
+		    int numItems = node.getNumItems();
+		    int index = 0;
+		    while(index < numItems) {
+			    int cmp = treeComp.compare(node.getKey(index), key);
+			    if(cmp > 0 || (cmp == 0 && inclusive)) {
+				    break;
+			    }
+			    index++;
+		    }
+		    if(index < numItems) {
+			    candidate = node.getItem(index);
+		    }
+		    node = node.getChild(index);
+	    }
+	    return candidate;
+    }
+
+    /**
+	* Finds the item with the largest key at or below (or strictly below)
+	* the given key
+	* @param key
+	* @param inclusive true to accept an item equal to key
+	* @return that item; null if there is none
+	*/
+    Item floorItem(Object key, boolean inclusive) {
+	    Item candidate = null;
+	    TFNode node = root();
+	    while(node != null) {
+		    // The last item before key bounds everything further down
+		    int numItems = node.getNumItems();
+		    int index = 0;
+		    while(index < numItems) {
+			    int cmp = treeComp.compare(node.getKey(index), key);
+			    if(cmp > 0 || (cmp == 0 && !inclusive)) {
+				    break;
+			    }
+			    index++;
+		    }
+		    if(index > 0) {
+			    candidate = node.getItem(index - 1);
+		    }
+		    node = node.getChild(index);
+	    }
+	    return candidate;
+    }
+
+    /**
+	* Counts the items with keys less than the given key, which is the
+	* position key would take in the sorted order
+	* @param key
+	* @return number of smaller keys
+	*/
+    public int rank(Object key) {
+	    return countBelow(key, false);
+    }
+
+    /**
+	* Finds the key at a position in the sorted order
+	* @param index from 0 for the smallest key to size() - 1
+	* @return key at that position
+	* @exception TwoFourTreeException if index is out of range
+	*/
+    public Object select(int index) {
+	    return selectItem(index).key();
+    }
+
+    /**
+	* Counts the items with keys from lowKey up to but not including
+	* highKey
+	* @param lowKey
+	* @param highKey
+	* @return number of items in the range; 0 if highKey is not above lowKey
+	*/
+    public int countRange(Object lowKey, Object highKey) {
+	    return Math.max(0, countBelow(highKey, false) - countBelow(lowKey, false));
+    }
+
+    /**
+	* Combines the aggregator's values for the items with keys from lowKey
+	* up to but not including highKey, in key order. Subtrees that lie
+	* wholly inside the range give their cached aggregates, so only the
+	* nodes along the paths to the two ends are looked at item by item
+	* @param lowKey
+	* @param highKey
+	* @return aggregate of the range; the identity if the range is empty
+	* @exception TwoFourTreeException if the tree has no aggregator
+	*/
+    public Object aggregate(Object lowKey, Object highKey) {
+	    if(aggregator == null) {
+		    throw new TwoFourTreeException("Tree has no aggregator");
+	    }
+	    if(isEmpty()) {
+		    return aggregator.identity();
+	    }
+	    return aggregateRange(root(), lowKey, highKey, true, true);
+    }
+
+    /**
+	* Aggregates the part of a subtree within a range
+	* @param node root of the subtree
+	* @param lowKey
+	* @param highKey
+	* @param checkLow false if every key in the subtree is known to be at
+	* least lowKey
+	* @param checkHigh false if every key in the subtree is known to be
+	* below highKey
+	* @return aggregate of the items in range
+	*/
+    private Object aggregateRange(TFNode node, Object lowKey, Object highKey,
+							      boolean checkLow, boolean checkHigh) {
+	    if(!checkLow && !checkHigh) {
+		    return node.getSubtreeAggregate();
+	    }
+	    
+	    // The items from start up to end are in range, and so are the
+	    // children between them; the children at start and at end may be
+	    // cut by a bound
+	    int numItems = node.getNumItems();
+	    int start = 0;
+	    if(checkLow) {
+		    while(start < numItems &&
+			      treeComp.compare(node.getKey(start), lowKey) < 0) {
+			    start++;
+		    }
+	    }
+	    int end = numItems;
+	    if(checkHigh) {
+		    end = start;
+		    while(end < numItems &&
+			      treeComp.compare(node.getKey(end), highKey) < 0) {
+			    end++;
+		    }
+	    }
+	    
+	    Object value = aggregator.identity();
+	    for(int i = start; i <= end; i++) {
+		    if(!node.isLeaf()) {
+			    value = aggregator.combine(value, aggregateRange(node.getChild(i),
+					    lowKey, highKey, checkLow && i == start, checkHigh && i == end));
+		    }
+		    if(i < end) {
+			    Item item = node.getItem(i);
+			    value = aggregator.combine(value,
+					    aggregator.valueOf(item.key(), item.element()));
+		    }
+	    }
+	    return value;
+    }
+
+    /**
+	* Counts the items with keys below (or at) the given key, adding up
+	* the subtree counts of the children passed over on one descent
+	* @param key
+	* @param inclusive true to count items equal to key as well
+	* @return number of such items
+	*/
+    int countBelow(Object key, boolean inclusive) {
+	    int count = 0;
+	    TFNode node = root();
+	    while(node != null) {
+		    // Everything left of the first item past key is counted
+		    int numItems = node.getNumItems();
+		    int index = 0;
+		    while(index < numItems) {
+			    int cmp = treeComp.compare(node.getKey(index), key);
+			    if(cmp > 0 || (cmp == 0 && !inclusive)) {
+				    break;
+			    }
+			    index++;
+		    }
+		    count += index;
+		    if(node.isLeaf()) {
+			    break;
+		    }
+		    for(int i = 0; i < index; i++) {
+			    count += node.getChild(i).getSubtreeItems();
+		    }
+		    node = node.getChild(index);
+	    }
+	    return count;
+    }
+
+    /**
+	* Finds the item at a position in the sorted order, steering by the
+	* subtree counts
+	* @param index from 0 to size() - 1
+	* @return item at that position
+	* @exception TwoFourTreeException if index is out of range
+	*/
+    Item selectItem(int index) {
+	    if(index < 0 || index >= size()) {
+		    throw new TwoFourTreeException("Index out of range: " + index);
+	    }
+	    TFNode node = root();
+	    while(!node.isLeaf()) {
+		    // Skip whole children, and the items between them, until the
+		    // index falls inside one child or on one item
+		    int child = 0;
+		    while(true) {
+			    int childItems = node.getChild(child).getSubtreeItems();
+			    if(index < childItems) {
+				    break;
+			    }
+			    index -= childItems;
+			    if(index == 0) {
+				    return node.getItem(child);
+			    }
+			    index--;
+			    child++;
+		    }
+		    node = node.getChild(child);
+	    }
+	    return node.getItem(index);
+    }
+
+    /**
+	* Removes every item
+	*/
+    void clear() {
+	    if(lookupCache != null) {
+		    lookupCache.clear();
+	    }
+	    if(metrics != null) {
+		    metrics.treeCleared();
+	    }
+	    clearPath();
+	    setRoot(null);
+	    size = 0;
+	    modCount++;
+    }
+
+    /**
+	* Opens a cursor for walking the tree in key order
+	* @return cursor, not yet positioned on an item
+	*/
+    public TwoFourTreeCursor cursor() {
+        return new TwoFourTreeCursor(this);
+    }
+
+    /**
+	* Creates a spliterator over the items in key order, which splits at the
+	* child boundaries of the nodes
+	* @return spliterator, sized exactly from the subtree item counts
+	*/
+    public Spliterator<Item> spliterator() {
+        return new TwoFourTreeSpliterator(this);
+    }
+
+    /**
+	* Returns a sequential stream of the items in key order
+	* @return stream of the tree's items
+	*/
+    public Stream<Item> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+	* Returns a parallel stream of the items, divided between threads by
+	* subtree
+	* @return parallel stream of the tree's items
+	*/
+    public Stream<Item> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+	* Visits every item in the common fork-join pool, subtrees in parallel;
+	* the tree must not be changed until this returns
+	* @param action called with each key and element, from any thread
+	*/
+    public void forEachParallel(final BiConsumer<Object, Object> action) {
+        parallelStream().forEach(item -> action.accept(item.key(), item.element()));
+    }
+
+    /**
+	* Iteratively searches dictionary to determine if key is present,
+	* recording the path taken in pathNodes/pathIndex
+	* @param key to be searched for
+	* @return node containing key; the leaf where the search ended if not found
+	*/
+    private TFNode findNode(Object key) {
+	    pathDepth = 0;
+	    TFNode node = root();
+	    while(true) {
+		    // Check if the TFNode contains the object we want
+		    int index = findIndex(node, key);
+		    
+		    // Stop if the key was found in this node, or at a leaf; the last
+		    // level keeps the findIndex result as is
+		    if(index >= 0 || node.isLeaf()) {
+			    pushPath(node, index);
+			    return node;
+		    }
+		    
+		    // Otherwise record the child we take and move down to it
+		    pushPath(node, -index - 1);
+		    node = node.getChild(-index - 1);
+	    }
+    }
+
+    /**
+     * Inserts provided element into the Dictionary
+     * @param key of object to be inserted
+     * @param element to be inserted
+     */
+    public void insertElement(Object key, Object element) {
+	    if(metrics == null) {
+		    insert(key, element);
+		    return;
+	    }
+	    long start = System.nanoTime();
+	    try {
+		    insert(key, element);
+	    }
+	    finally {
+		    metrics.recordInsert(System.nanoTime() - start);
+	    }
+    }
+
+    /**
+	* Body of insertElement(), which times it when metrics are on
+	* @param key of object to be inserted
+	* @param element to be inserted
+	*/
+    private void insert(Object key, Object element) {
+	    // Check for root
+	    if(isEmpty()) {
+		    //  Create a new TFNode
+		    TFNode newRoot = newNode();
+		    
+		    // Put the first Item at its 0 index; its children stay null
+		    newRoot.addItem(0, new Item(key, element));
+		    recount(newRoot);
+		    
+		    // Set as new root
+		    setRoot(newRoot);
+	    }
+	    else {
+		    // Find the correct place to put the node
+		    TFNode insertNode = fingerSearch ? fingerNode(key) : findNode(key);
+		    
+		    // Make a childIndex to fill with the position of the new element
+		    int childIndex = pathIndex[pathDepth - 1];
+		    
+		    // If we have a tie, insert in front of the equal item; at an
+		    // internal node that means ahead of its inorder successor
+		    if(childIndex >= 0) {
+			    if(!insertNode.isLeaf()) {
+				    insertNode = findIOS(childIndex);
+				    childIndex = 0;
+			    }
+		    }
+		    else {
+			    childIndex = -childIndex - 1;
+		    }
+		    
+		    // Perform a shifting insert of the new Item into the leaf
+		    insertNode.insertItem(childIndex, new Item(key, element));
+		    
+		    // Every node on the path now has one more item under it
+		    countPath(1);
+		    
+		    // Check for overflow
+		    int keepLevel = pathDepth - 1;
+		    if(insertNode.getNumItems() > maxItems) {
+			    keepLevel = overflow(pathDepth - 1);
+		    }
+		    releasePath(keepLevel);
+	    }
+	    
+	    // Increment size
+	    size++;
+	    modCount++;
+    }
+
+    /**
+     * Searches dictionary to determine if key is present, then
+     * removes and returns corresponding object
+     * @param key of data to be removed
+     * @return object corresponding to key
+     * @exception ElementNotFoundException if the key is not in dictionary
+     */
+    public Object removeElement(Object key) throws ElementNotFoundException {
+	    if(metrics == null) {
+		    return remove(key);
+	    }
+	    long start = System.nanoTime();
+	    try {
+		    return remove(key);
+	    }
+	    finally {
+		    metrics.recordRemove(System.nanoTime() - start);
+	    }
+    }
+
+    /**
+	* Body of removeElement(), which times it when metrics are on
+	* @param key of data to be removed
+	* @return object corresponding to key
+	* @exception ElementNotFoundException if the key is not in dictionary
+	*/
+    private Object remove(Object key) throws ElementNotFoundException {
+	    // If tree is empty throw exception
+	    if(isEmpty()) {
+		    throw new TwoFourTreeException();
+	    }
+	    
+	    // Find node to delete from
+	    TFNode deleteNode = fingerSearch ? fingerNode(key) : findNode(key);
+	    int deleteIndex = pathIndex[pathDepth - 1];
+	    
+	    // Check for missing element
+	    if(deleteIndex < 0) {
+		    releasePath(pathDepth - 1);
+		    throw new ElementNotFoundException();
+	    }
+	    int keepLevel = pathDepth - 1;
+	    
+	    // Extract the data to return
+	    Item removedItem = deleteNode.getItem(deleteIndex);
+	    Object removedObject = removedItem.element();
+	    if(lookupCache != null) {
+		    lookupCache.invalidate(removedItem.key());
+	    }
+	    
+	    // If leaf, just delete
+	    if(deleteNode.isLeaf()) {
+		    deleteNode.removeItem(deleteIndex);
+	    }
+	    
+	    // If internal, move inorder successor to parent
+	    else {
+		    TFNode nodeIOS = findIOS(deleteIndex);
+		    
+		    // Move the in-order successor up to replace the deleted item
+		    deleteNode.replaceItem(deleteIndex, nodeIOS.getItem(0));
+		    
+		    // Delete the inorder successor
+		    nodeIOS.removeItem(0);
+		    
+		    // Set deleteNode equal to nodeIOS to check for underflow
+		    deleteNode = nodeIOS;
+	    }
+	    
+	    // Every node on the path, down to the leaf the item left, now has
+	    // one item fewer under it
+	    countPath(-1);
+	    
+	    // Check for underflow; the finger is kept no lower than the node
+	    // the item was removed from
+	    if(deleteNode.getNumItems() < minItems) {
+		    keepLevel = Math.min(keepLevel, underflow(pathDepth - 1));
+	    }
+	    releasePath(keepLevel);
+	    
+	    // Decrement size
+	    size--;
+	    modCount++;
+	    
+	    // Return the deleted object
+	    return removedObject;
+    }
+
+    /**
+	* Inserts a batch of elements, sorted first so that neighbouring keys
+	* share the descent through the tree
+	* @param keys of the objects to be inserted
+	* @param elements to be inserted, one for each key
+	* @exception TwoFourTreeException if the arrays differ in length
+	*/
+    public void insertAll(Object[] keys, Object[] elements) {
+	    if(keys.length != elements.length) {
+		    throw new TwoFourTreeException("Keys and elements differ in length");
+	    }
+	    Item[] items = new Item[keys.length];
+	    for(int i = 0; i < keys.length; i++) {
+		    items[i] = new Item(keys[i], elements[i]);
+	    }
+	    Arrays.sort(items, new java.util.Comparator<Item>() {
+		    public int compare(Item item1, Item item2) {
+			    return treeComp.compare(item1.key(), item2.key());
+		    }
+	    });
+	    
+	    // The batch keeps a path of its own, which the finger would confuse
+	    clearPath();
+	    for(int i = 0; i < items.length; i++) {
+		    // An empty tree gets a new root, as in insertElement
+		    if(isEmpty()) {
+			    TFNode newRoot = newNode();
+			    newRoot.addItem(0, items[i]);
+			    recount(newRoot);
+			    setRoot(newRoot);
+			    size++;
+			    modCount++;
+			    continue;
+		    }
+		    
+		    // Pick up the descent where it can be shared with the last key
+		    TFNode insertNode = resumeNode(items[i].key());
+		    int childIndex = pathIndex[pathDepth - 1];
+		    if(childIndex >= 0) {
+			    if(!insertNode.isLeaf()) {
+				    insertNode = findIOS(childIndex);
+				    childIndex = 0;
+			    }
+		    }
+		    else {
+			    childIndex = -childIndex - 1;
+		    }
+		    insertNode.insertItem(childIndex, items[i]);
+		    countPath(1);
+		    
+		    // Splits are made at once, since a node only has room for one
+		    // extra item; the descent then restarts at the highest node
+		    // they changed
+		    if(insertNode.getNumItems() > maxItems) {
+			    cutPath(overflow(pathDepth - 1));
+		    }
+		    size++;
+		    modCount++;
+	    }
+	    clearPath();
+    }
+
+    /**
+	* Removes every item whose key is in a batch, sorted first so that
+	* neighbouring keys share the descent through the tree; keys that are
+	* not found are skipped
+	* @param keys of the data to be removed; a key given twice removes two
+	* items
+	* @return number of items removed
+	*/
+    public int removeAll(Object[] keys) {
+	    Object[] sortedKeys = keys.clone();
+	    Arrays.sort(sortedKeys, new java.util.Comparator<Object>() {
+		    public int compare(Object key1, Object key2) {
+			    return treeComp.compare(key1, key2);
+		    }
+	    });
+	    
+	    int removed = 0;
+	    clearPath();
+	    for(int i = 0; i < sortedKeys.length && !isEmpty(); i++) {
+		    // Pick up the descent where it can be shared with the last key;
+		    // an equal key may sit to the left of where that leads, so
+		    // search again from the root before giving up on it
+		    TFNode deleteNode = resumeNode(sortedKeys[i]);
+		    if(pathIndex[pathDepth - 1] < 0) {
+			    deleteNode = findNode(sortedKeys[i]);
+		    }
+		    int deleteIndex = pathIndex[pathDepth - 1];
+		    if(deleteIndex < 0) {
+			    continue;
+		    }
+		    int restartLevel = pathDepth - 1;
+		    if(lookupCache != null) {
+			    lookupCache.invalidate(deleteNode.getItem(deleteIndex).key());
+		    }
+		    
+		    // Delete as in removeElement
+		    if(deleteNode.isLeaf()) {
+			    deleteNode.removeItem(deleteIndex);
+		    }
+		    else {
+			    TFNode nodeIOS = findIOS(deleteIndex);
+			    deleteNode.replaceItem(deleteIndex, nodeIOS.getItem(0));
+			    nodeIOS.removeItem(0);
+			    deleteNode = nodeIOS;
+		    }
+		    countPath(-1);
+		    
+		    // Fusions are made at once too; the descent restarts at the
+		    // highest node changed, or where an inner item was replaced
+		    if(deleteNode.getNumItems() < minItems) {
+			    restartLevel = Math.min(restartLevel, underflow(pathDepth - 1));
+		    }
+		    cutPath(restartLevel);
+		    size--;
+		    modCount++;
+		    removed++;
+	    }
+	    clearPath();
+	    return removed;
+    }
+
+    /**
+	* Moves every item of another tree onto the end of this one; the keys
+	* of other must all be at least the largest key here. The shorter
+	* tree is hung from the edge of the taller one, so this takes
+	* O(log n) however many items other holds
+	* @param other tree of the same comparator, order and aggregator; left
+	* empty
+	* @exception TwoFourTreeException if the trees cannot be combined or
+	* their keys overlap
+	*/
+    public void join(TwoFourTree other) {
+	    checkCombinable(other);
+	    if(!isEmpty() && !other.isEmpty() &&
+			    treeComp.compare(lastItem().key(), other.firstItem().key()) > 0) {
+		    throw new TwoFourTreeException("Keys of the trees overlap");
+	    }
+	    Subtree joined = concatenate(subtree(), other.subtree());
+	    other.clear();
+	    
+	    // Items are only added, so the cache stays good
+	    setSubtree(joined, false);
+    }
+
+    /**
+	* Moves every item whose key is not less than key into a new tree, in
+	* O(log n)
+	* @param key where to split
+	* @return tree of the items from key on, with this tree's comparator,
+	* order and aggregator
+	*/
+    public TwoFourTree split(Object key) {
+	    Subtree[] parts = splitAtKey(subtree(), key, false);
+	    TwoFourTree upper = new TwoFourTree(TwoFourTreeMetrics.uncounted(treeComp),
+										    order(), aggregator);
+	    upper.setSubtree(parts[1], false);
+	    setSubtree(parts[0], true);
+	    return upper;
+    }
+
+    /**
+	* Adds every item of another tree to this one. Where both trees hold a
+	* key, the items of other take the place of this tree's, so a tree of
+	* changes can be applied in one call. The trees are split and joined
+	* rather than searched item by item, which takes O(m log(n/m + 1)) for
+	* trees of m and n items, m the smaller
+	* @param other tree of the same comparator, order and aggregator; left
+	* empty
+	* @exception TwoFourTreeException if the trees cannot be combined
+	*/
+    public void union(TwoFourTree other) {
+	    checkCombinable(other);
+	    Subtree result = combine(UNION, subtree(), other.subtree());
+	    other.clear();
+	    setSubtree(result, true);
+    }
+
+    /**
+	* Keeps only the items whose keys another tree also holds, in
+	* O(m log(n/m + 1)) as for union()
+	* @param other tree of the same comparator, order and aggregator; left
+	* empty
+	* @exception TwoFourTreeException if the trees cannot be combined
+	*/
+    public void intersection(TwoFourTree other) {
+	    checkCombinable(other);
+	    Subtree result = combine(INTERSECTION, subtree(), other.subtree());
+	    other.clear();
+	    setSubtree(result, true);
+    }
+
+    /**
+	* Removes the items whose keys another tree holds, in
+	* O(m log(n/m + 1)) as for union()
+	* @param other tree of the same comparator, order and aggregator; left
+	* empty
+	* @exception TwoFourTreeException if the trees cannot be combined
+	*/
+    public void difference(TwoFourTree other) {
+	    checkCombinable(other);
+	    Subtree result = combine(DIFFERENCE, subtree(), other.subtree());
+	    other.clear();
+	    setSubtree(result, true);
+    }
+
+    /**
+	* Checks that the nodes of another tree can be joined to this one's.
+	* Comparators and aggregators are taken to agree if they are equal, or
+	* of the same class; a ComparatorAdapter only if it is equal, since its
+	* class says nothing of the ordering it wraps
+	* @param other
+	* @exception TwoFourTreeException if other is this tree, or differs
+	* in comparator, order or aggregator
+	*/
+    private void checkCombinable(TwoFourTree other) {
+	    if(other == this) {
+		    throw new TwoFourTreeException("Cannot combine a tree with itself");
+	    }
+	    Comparator comp = TwoFourTreeMetrics.uncounted(treeComp);
+	    Comparator otherComp = TwoFourTreeMetrics.uncounted(other.treeComp);
+	    if(!comp.equals(otherComp) && (comp.getClass() != otherComp.getClass() ||
+			    comp instanceof ComparatorAdapter)) {
+		    throw new TwoFourTreeException("Trees differ in comparator");
+	    }
+	    if(other.order() != order()) {
+		    throw new TwoFourTreeException("Trees differ in order");
+	    }
+	    if(aggregator == null || other.aggregator == null ?
+			    aggregator != other.aggregator :
+			    !aggregator.equals(other.aggregator) &&
+			    aggregator.getClass() != other.aggregator.getClass()) {
+		    throw new TwoFourTreeException("Trees differ in aggregator");
+	    }
+    }
+
+    /**
+	* Descends to the node for a key no less than the key of the last
+	* descent, starting from the deepest recorded node known to cover it.
+	* Keys only grow, so a subtree still covers the key as long as the key
+	* is below the item to the right of the child taken
+	* @param key to be searched for
+	* @return node containing key; the leaf where the search ended if not found
+	*/
+    private TFNode resumeNode(Object key) {
+	    if(pathDepth == 0) {
+		    return findNode(key);
+	    }
+	    
+	    // Climb while the key has reached the upper bound of the child
+	    // taken; the last level is always searched again
+	    int level = pathDepth - 1;
+	    for(int d = pathDepth - 2; d >= 0; d--) {
+		    int index = pathIndex[d];
+		    if(index < pathNodes[d].getNumItems()) {
+			    if(treeComp.compare(key, pathNodes[d].getKey(index)) < 0) {
+				    break;
+			    }
+			    level = d;
+		    }
+	    }
+	    return descendFrom(level, key);
+    }
+
+    /**
+	* Descends to the node for any key, starting from the deepest node on
+	* the finger whose subtree covers it. The subtree under the child taken
+	* at a level lies strictly between the items on either side of it, and
+	* the nearest such item above a node on each side is the tightest bound
+	* there is; a key equal to a bound may have equal items on both sides,
+	* so it counts as outside
+	* @param key to be searched for
+	* @return node containing key; the leaf where the search ended if not found
+	*/
+    private TFNode fingerNode(Object key) {
+	    if(pathDepth == 0) {
+		    return findNode(key);
+	    }
+	    
+	    // Climb until the key is found inside both bounds of the node at
+	    // level; a bound the key falls outside of makes its own node the
+	    // next one to try
+	    int level = pathDepth - 1;
+	    boolean lowChecked = false;
+	    boolean highChecked = false;
+	    for(int d = pathDepth - 2; d >= 0 && !(lowChecked && highChecked); d--) {
+		    TFNode node = pathNodes[d];
+		    int index = pathIndex[d];
+		    boolean outside = false;
+		    if(!lowChecked && index > 0) {
+			    lowChecked = true;
+			    outside = treeComp.compare(key, node.getKey(index - 1)) <= 0;
+		    }
+		    if(!outside && !highChecked && index < node.getNumItems()) {
+			    highChecked = true;
+			    outside = treeComp.compare(key, node.getKey(index)) >= 0;
+		    }
+		    if(outside) {
+			    level = d;
+			    lowChecked = false;
+			    highChecked = false;
+		    }
+	    }
+	    return descendFrom(level, key);
+    }
+
+    /**
+	* Cuts the path back to a level and descends from its node as findNode
+	* does, recording the rest of the path
+	* @param level
+	* @param key to be searched for
+	* @return node containing key; the leaf where the search ended if not found
+	*/
+    private TFNode descendFrom(int level, Object key) {
+	    cutPath(level);
+	    TFNode node = pathNodes[level];
+	    pathDepth = level;
+	    while(true) {
+		    int index = findIndex(node, key);
+		    if(index >= 0 || node.isLeaf()) {
+			    pushPath(node, index);
+			    return node;
+		    }
+		    pushPath(node, -index - 1);
+		    node = node.getChild(-index - 1);
+	    }
+    }
+
+    /**
+	* Cuts the recorded path back so that level is its last node; the
+	* levels above keep their child indexes
+	* @param level 
+	*/
+    private void cutPath(int level) {
+	    for(int i = level + 1; i < pathDepth; i++) {
+		    pathNodes[i] = null;
+	    }
+	    pathDepth = level + 1;
+	    
+	    // A new or emptied root replaces the old one at the top
+	    if(level == 0) {
+		    pathNodes[0] = root();
+		    if(root() == null) {
+			    pathDepth = 0;
+		    }
+	    }
+    }
+
+    /**
+	* Finds the first item which is larger or equal to the given key, using
+	* a single three-way comparison per item
+	* @param thisNode
+	* @param key
+	* @return index of that item if it is equal to key; otherwise
+	* (-(child index to follow) - 1)
+	*/
+    int findIndex(TFNode thisNode, Object key) {
+	    int numItems = thisNode.getNumItems();
+	    
+	    // Bisect wide nodes, remembering the comparison that last moved
+	    // the upper bound so equality needs no extra call
+	    if(numItems > LINEAR_SEARCH_ITEMS) {
+		    int low = 0;
+		    int high = numItems;
+		    int highCmp = 1;
+		    while(low < high) {
+			    int mid = (low + high) >>> 1;
+			    int cmp = treeComp.compare(thisNode.getKey(mid), key);
+			    if(cmp < 0) {
+				    low = mid + 1;
+			    }
+			    else {
+				    high = mid;
+				    highCmp = cmp;
+			    }
+		    }
+		    return (low < numItems && highCmp == 0) ? low : (-low - 1);
+	    }
+	    
+	    // Cycle through items to find first greater than or equal to
+	    for(int i = 0; i < numItems; i++) {
+		    int cmp = treeComp.compare(thisNode.getKey(i), key);
+		    if(cmp >= 0) {
+			    return (cmp == 0) ? i : (-i - 1);
+		    }
+	    }
+	    
+	    // Follow the last child if key is larger than all items
+	    return -numItems - 1;
+    }
+
+    /**
+	* Creates an empty node sized for the tree's order
+	* @return new node
+	*/
+    private TFNode newNode() {
+	    if(metrics != null) {
+		    metrics.nodeCreated();
+	    }
+	    return new TFNode(maxItems);
+    }
+
+    /**
+	* Records a node and the index taken from it as the next path level
+	* @param node
+	* @param index
+	*/
+    private void pushPath(TFNode node, int index) {
+	    // Grow the stack if the tree got taller than it has room for
+	    if(pathDepth == pathNodes.length) {
+		    TFNode[] newNodes = new TFNode[pathDepth * 2];
+		    int[] newIndex = new int[pathDepth * 2];
+		    System.arraycopy(pathNodes, 0, newNodes, 0, pathDepth);
+		    System.arraycopy(pathIndex, 0, newIndex, 0, pathDepth);
+		    pathNodes = newNodes;
+		    pathIndex = newIndex;
+	    }
+	    pathNodes[pathDepth] = node;
+	    pathIndex[pathDepth] = index;
+	    pathDepth++;
+    }
+
+    /**
+	* Ends an insert or remove: in finger search mode the path is kept as
+	* the finger, cut back to the highest node the change reached, and
+	* otherwise it is dropped
+	* @param level
+	*/
+    private void releasePath(int level) {
+	    if(fingerSearch) {
+		    cutPath(level);
+	    }
+	    else {
+		    clearPath();
+	    }
+    }
+
+    /**
+	* Drops the recorded path so it does not keep detached nodes alive
+	*/
+    private void clearPath() {
+	    for(int i = 0; i < pathDepth; i++) {
+		    pathNodes[i] = null;
+	    }
+	    pathDepth = 0;
+    }
+
+    /**
+	* Adds to the subtree item count of every node on the recorded path,
+	* and brings their aggregates up to date
+	* @param change
+	*/
+    private void countPath(int change) {
+	    for(int i = 0; i < pathDepth; i++) {
+		    pathNodes[i].setSubtreeItems(pathNodes[i].getSubtreeItems() + change);
+	    }
+	    
+	    // An aggregate cannot be adjusted by a difference, so each one on
+	    // the path is built again, from the bottom up
+	    if(aggregator != null) {
+		    for(int i = pathDepth - 1; i >= 0; i--) {
+			    aggregateNode(pathNodes[i]);
+		    }
+	    }
+    }
+
+    /**
+	* Sets a node's subtree count, and its aggregate if the tree keeps
+	* them, from its items and its children's values
+	* @param node
+	*/
+    private void recount(TFNode node) {
+	    node.recountSubtreeItems();
+	    if(aggregator != null) {
+		    aggregateNode(node);
+	    }
+    }
+
+    /**
+	* Sets a node's aggregate by combining its children's aggregates with
+	* its items' values, in key order
+	* @param node
+	*/
+    private void aggregateNode(TFNode node) {
+	    Object value = aggregator.identity();
+	    int numItems = node.getNumItems();
+	    for(int i = 0; i <= numItems; i++) {
+		    if(!node.isLeaf()) {
+			    value = aggregator.combine(value, node.getChild(i).getSubtreeAggregate());
+		    }
+		    if(i < numItems) {
+			    Item item = node.getItem(i);
+			    value = aggregator.combine(value,
+					    aggregator.valueOf(item.key(), item.element()));
+		    }
+	    }
+	    node.setSubtreeAggregate(value);
+    }
+
+    /**
+	* Returns node in which the inorder successor is located, extending the
+	* path down to it
+	* @param index of the item in the node at the end of the path
+	* @return node of inorder successor
+	*/
+    private TFNode findIOS(int index) {
+	    TFNode node = pathNodes[pathDepth - 1];
+	    
+	    // Check if the equal item is at a leaf or internal node
+	    if(!node.isLeaf()) {
+		    // Move down to inorder successor, the leftmost item of the
+		    // subtree to the right of the item
+		    pathIndex[pathDepth - 1] = index + 1;
+		    node = node.getChild(index + 1);
+		    while(!node.isLeaf()) {
+			    pushPath(node, 0);
+			    node = node.getChild(0);
+		    }
+		    pushPath(node, 0);
+	    }
+	    
+	    return node;
+    }
+
+    /**
+	* Fix tree on overflow, splitting nodes up the recorded path
+	* @param level of the overflowed node in the path
+	* @return level of the highest node changed; 0 if the root split
+	*/
+    private int overflow(int level) {
+	    int splits = 0;
+	    while(true) {
+		    splits++;
+		    TFNode oFNode = pathNodes[level];
+		    
+		    // The node holds one item too many; the middle one moves up and
+		    // everything to its right goes into a new node
+		    TFNode splitNode = newNode();
+		    Item promotedItem = splitUpper(oFNode, splitNode);
+		    
+		    // Check if we're at the root and need to create a new root
+		    if(level == 0) {
+			    TFNode newRoot = newNode();
+			    newRoot.addItem(0, promotedItem);
+			    
+			    // Set as new root
+			    setRoot(newRoot);
+			    
+			    // Set the children
+			    newRoot.setChild(0, oFNode);
+			    newRoot.setChild(1, splitNode);
+			    
+			    // Set the children to point to the parents
+			    (newRoot.getChild(0)).setParent(newRoot);
+			    (newRoot.getChild(1)).setParent(newRoot);
+			    recount(newRoot);
+			    if(metrics != null) {
+				    metrics.recordSplits(splits, true);
+			    }
+			    return 0;
+		    }
+		    
+		    // We're not at the root, so shove the item up to the parent; the
+		    // path already says which child we came from
+		    TFNode parentNode = pathNodes[level - 1];
+		    int childIndex = pathIndex[level - 1];
+		    parentNode.insertItem(childIndex, promotedItem);
+		    
+		    // Hook up the new child
+		    parentNode.setChild(childIndex + 1, splitNode);
+		    
+		    // Hook the new child to point back to the parent
+		    splitNode.setParent(parentNode);
+		    
+		    // Check if the new parent node is overflowed
+		    if(parentNode.getNumItems() <= maxItems) {
+			    if(metrics != null) {
+				    metrics.recordSplits(splits, false);
+			    }
+			    return level - 1;
+		    }
+		    level--;
+	    }
+    }
+
+    /**
+	* Fix tree on underflow, fusing nodes up the recorded path
+	* @param level of the underflowed node in the path
+	* @return level of the highest node changed; 0 if the root changed
+	*/
+    private int underflow(int level) {
+	    while(true) {
+		    TFNode uFNode = pathNodes[level];
+		    
+		    // Special case if the root has underflowed
+		    if(level == 0) {
+			    // The root may hold fewer items than other nodes; it only
+			    // has to go once it is empty
+			    if(uFNode.getNumItems() > 0) {
+				    return 0;
+			    }
+			    
+			    // The root's only child becomes the new root; when the last
+			    // item has been removed from a leaf root this empties the tree
+			    setRoot(uFNode.getChild(0));
+			    if(root() != null) {
+				    root().setParent(null);
+			    }
+			    if(metrics != null) {
+				    metrics.nodeDropped();
+			    }
+			    return 0;
+		    }
+		    
+		    TFNode parentNode = pathNodes[level - 1];
+		    int childIndex = pathIndex[level - 1];
+		    
+		    // Check that uFNode isn't the first child, then check if the left
+		    // sibling of uFNode has items to spare (permitting a transfer)
+		    if(childIndex > 0 &&
+				    (parentNode.getChild(childIndex - 1)).getNumItems() > minItems) {
+			    leftTransfer(uFNode, parentNode, childIndex);
+			    return level - 1;
+		    }
+		    // Check that uFNode isn't the last child, then check if the right
+		    // sibling of uFNode has items to spare (permitting a transfer)
+		    else if(childIndex < parentNode.getNumItems() &&
+				    (parentNode.getChild(childIndex + 1)).getNumItems() > minItems) {
+			    rightTransfer(uFNode, parentNode, childIndex);
+			    return level - 1;
+		    }
+		    // Check that uFNode isn't the first child, permitting a left fusion
+		    else if(childIndex != 0) {
+			    leftFusion(parentNode, childIndex);
+		    }
+		    // If uFNode is the first child, perform a right fusion instead
+		    else  {
+			    rightFusion(parentNode);
+		    }
+		    
+		    // Check if we've made the parent underflow and go up if so
+		    if(parentNode.getNumItems() >= minItems) {
+			    return level - 1;
+		    }
+		    level--;
+	    }
+    }
+
+    /**
+	* Transfers left sibling's item with parent and emptyNode
+	* @param emptyNode
+	* @param parentNode
+	* @param emptyIndex child index of emptyNode in parentNode
+	*/
+    private void leftTransfer(TFNode emptyNode, TFNode parentNode,
+						      int emptyIndex) {
+	    TFNode siblingNode = parentNode.getChild(emptyIndex - 1);
+	    if(metrics != null) {
+		    metrics.recordTransfer();
+	    }
+	    
+	    // Copy down the correct parent item to the front of the node; this
+	    // also moves its children one index to the right
+	    emptyNode.insertItem(0, parentNode.getItem(emptyIndex - 1));
+	    
+	    // Set the 0 child of emptyNode to its sibling's largest child
+	    emptyNode.setChild(0, siblingNode.getChild(siblingNode.getNumItems()));
+	    
+	    // Set the displaced child to look at its new parent
+	    if(!emptyNode.isLeaf()) {
+		    (emptyNode.getChild(0)).setParent(emptyNode);
+	    }
+	    
+	    // Null the sibling's largest child
+	    siblingNode.setChild(siblingNode.getNumItems(), null);
+	    
+	    // Copy the item from the sibling child up to replace the parent
+	    parentNode.replaceItem(emptyIndex - 1,
+				    siblingNode.getItem(siblingNode.getNumItems() - 1));
+	    
+	    // Delete the sibling's largest item
+	    siblingNode.deleteItem(siblingNode.getNumItems() - 1);
+	    
+	    // The parent keeps its count; the two children trade an item and a
+	    // subtree
+	    recount(emptyNode);
+	    recount(siblingNode);
+    }
+
+    /**
+	* Transfers right sibling's item with parent and emptyNode
+	* @param emptyNode
+	* @param parentNode
+	* @param emptyIndex child index of emptyNode in parentNode
+	*/
+    private void rightTransfer(TFNode emptyNode, TFNode parentNode,
+						       int emptyIndex) {
+	    TFNode siblingNode = parentNode.getChild(emptyIndex + 1);
+	    if(metrics != null) {
+		    metrics.recordTransfer();
+	    }
+	    
+	    // Copy down the correct parent item to the end of the node
+	    emptyNode.addItem(emptyNode.getNumItems(),
+					      parentNode.getItem(emptyIndex));
+	    
+	    // Copy the item from the sibling child up to replace the parent
+	    parentNode.replaceItem(emptyIndex, siblingNode.getItem(0));
+	    
+	    // Set the last child of emptyNode to its sibling's smallest child
+	    emptyNode.setChild(emptyNode.getNumItems(), siblingNode.getChild(0));
+	    
+	    // Set the displaced child to look at its new parent
+	    if(!emptyNode.isLeaf()) {
+		    (emptyNode.getChild(emptyNode.getNumItems())).setParent(emptyNode);
+	    }
+	    
+	    // Shifting delete the sibling's smallest item
+	    siblingNode.removeItem(0);
+	    recount(emptyNode);
+	    recount(siblingNode);
+    }
+
+
+    /**
+	* Fuses the child at emptyIndex with its left sibling
+	* @param parentNode
+	* @param emptyIndex child index of the underflowed node in parentNode
+	*/
+    private void leftFusion(TFNode parentNode, int emptyIndex) {
+	    fuse(parentNode, emptyIndex - 1);
+    }
+
+    /**
+	* Fuses the first child with its right sibling
+	* @param parentNode
+	*/
+    private void rightFusion(TFNode parentNode) {
+	    fuse(parentNode, 0);
+    }
+
+    /**
+	* Fuses the children at leftIndex and leftIndex + 1 around the parent
+	* item between them, keeping the left node
+	* @param parentNode
+	* @param leftIndex
+	*/
+    private void fuse(TFNode parentNode, int leftIndex) {
+	    TFNode leftNode = parentNode.getChild(leftIndex);
+	    TFNode rightNode = parentNode.getChild(leftIndex + 1);
+	    if(metrics != null) {
+		    metrics.recordFusion();
+		    metrics.nodeDropped();
+	    }
+	    
+	    // Copy down the parent item, then append the right node's items;
+	    // the left node then holds everything the parent lost
+	    mergeNodes(leftNode, parentNode.getItem(leftIndex), rightNode);
+	    
+	    // Delete the parent item that's now in the left node; this also
+	    // deletes the pointer to the left node, so point its slot back at it
+	    parentNode.removeItem(leftIndex);
+	    parentNode.setChild(leftIndex, leftNode);
+    }
+
+    /**
+	* Moves the items above the middle of an overflowed node, with their
+	* children, into an empty node, and cuts the middle item out
+	* @param node holding one item more than it may
+	* @param upperNode empty node to take the upper half
+	* @return the middle item, to go up to the parent
+	*/
+    private Item splitUpper(TFNode node, TFNode upperNode) {
+	    int numItems = node.getNumItems();
+	    int middle = numItems / 2;
+	    
+	    // Move the upper items and their children into the new node
+	    upperNode.setChild(0, node.getChild(middle + 1));
+	    for(int i = middle + 1; i < numItems; i++) {
+		    upperNode.addItem(i - middle - 1, node.getItem(i));
+		    upperNode.setChild(i - middle, node.getChild(i + 1));
+	    }
+	    
+	    // Set the children to point to the parents, unless we're at a leaf
+	    if(!upperNode.isLeaf()) {
+		    for(int i = 0; i <= upperNode.getNumItems(); i++) {
+			    (upperNode.getChild(i)).setParent(upperNode);
+		    }
+	    }
+	    
+	    // Record the middle item and cut the node down to the lower half
+	    Item middleItem = node.getItem(middle);
+	    node.truncate(middle);
+	    recount(node);
+	    recount(upperNode);
+	    return middleItem;
+    }
+
+    /**
+	* Appends an item and then all of another node's items and children
+	* to a node; the other node is left to be dropped
+	* @param leftNode
+	* @param middle item between the two nodes
+	* @param rightNode
+	*/
+    private void mergeNodes(TFNode leftNode, Item middle, TFNode rightNode) {
+	    // Each item brings the child to its right along
+	    leftNode.addItem(leftNode.getNumItems(), middle);
+	    leftNode.setChild(leftNode.getNumItems(), rightNode.getChild(0));
+	    for(int i = 0; i < rightNode.getNumItems(); i++) {
+		    leftNode.addItem(leftNode.getNumItems(), rightNode.getItem(i));
+		    leftNode.setChild(leftNode.getNumItems(), rightNode.getChild(i + 1));
+	    }
+	    
+	    // Set the parent of the adopted children to the left node
+	    if(!leftNode.isLeaf()) {
+		    int firstAdopted = leftNode.getNumItems() - rightNode.getNumItems();
+		    for(int i = firstAdopted; i <= leftNode.getNumItems(); i++) {
+			    (leftNode.getChild(i)).setParent(leftNode);
+		    }
+	    }
+	    recount(leftNode);
+    }
+
+    /**
+	* Spreads the items of two neighbouring nodes and the item between
+	* them evenly over the two, so both have at least minItems; there must
+	* be more than fit in one node
+	* @param leftNode
+	* @param middle item between the two nodes
+	* @param rightNode
+	* @return the item now between the two nodes
+	*/
+    private Item shareItems(TFNode leftNode, Item middle, TFNode rightNode) {
+	    // Line up all the items, and the children around them
+	    int leftItems = leftNode.getNumItems();
+	    int rightItems = rightNode.getNumItems();
+	    int total = leftItems + 1 + rightItems;
+	    Item[] items = new Item[total];
+	    TFNode[] children = new TFNode[total + 1];
+	    for(int i = 0; i <= leftItems; i++) {
+		    children[i] = leftNode.getChild(i);
+		    if(i < leftItems) {
+			    items[i] = leftNode.getItem(i);
+		    }
+	    }
+	    items[leftItems] = middle;
+	    for(int i = 0; i <= rightItems; i++) {
+		    children[leftItems + 1 + i] = rightNode.getChild(i);
+		    if(i < rightItems) {
+			    items[leftItems + 1 + i] = rightNode.getItem(i);
+		    }
+	    }
+	    
+	    // Refill the nodes from either side of the middle one
+	    int half = (total - 1) / 2;
+	    fillNode(leftNode, items, children, 0, half);
+	    fillNode(rightNode, items, children, half + 1, total);
+	    return items[half];
+    }
+
+    /**
+	* Replaces a node's contents with a run of items and the children
+	* around them
+	* @param node
+	* @param items
+	* @param children children[i] goes to the left of items[i]
+	* @param from first item
+	* @param to item after the last
+	*/
+    private void fillNode(TFNode node, Item[] items, TFNode[] children,
+					      int from, int to) {
+	    node.truncate(0);
+	    node.setChild(0, children[from]);
+	    for(int i = from; i < to; i++) {
+		    node.addItem(i - from, items[i]);
+		    node.setChild(i - from + 1, children[i + 1]);
+	    }
+	    if(!node.isLeaf()) {
+		    for(int i = 0; i <= node.getNumItems(); i++) {
+			    (node.getChild(i)).setParent(node);
+		    }
+	    }
+	    recount(node);
+    }
+
+    /**
+	* Returns the whole tree as a subtree for the joins and splits
+	* @return root and height of the tree
+	*/
+    private Subtree subtree() {
+	    int height = 0;
+	    for(TFNode node = root(); node != null; node = node.getChild(0)) {
+		    height++;
+	    }
+	    return new Subtree(root(), height);
+    }
+
+    /**
+	* Makes a subtree built by a join, split or set operation the whole
+	* tree
+	* @param result
+	* @param itemsRemoved true if items may have left the tree, whose
+	* cache entries would then be stale
+	*/
+    private void setSubtree(Subtree result, boolean itemsRemoved) {
+	    clearPath();
+	    setRoot(result.root);
+	    if(root() != null) {
+		    root().setParent(null);
+	    }
+	    size = (root() == null) ? 0 : root().getSubtreeItems();
+	    modCount++;
+	    if(itemsRemoved && lookupCache != null) {
+		    lookupCache.clear();
+	    }
+	    
+	    // Nodes are made, dropped and taken over from other trees here
+	    // without being reported one at a time, so count them again
+	    if(metrics != null) {
+		    metrics.nodesCounted(countNodes(root()));
+	    }
+    }
+
+    /**
+	* Joins two subtrees around an item, whose key is no less than any in
+	* left and no more than any in right. The shorter subtree is hung from
+	* the edge of the taller one at its own height, so this takes time in
+	* the difference of their heights, not their sizes
+	* @param left
+	* @param middle
+	* @param right
+	* @return the joined subtree
+	*/
+    private Subtree concatenate(Subtree left, Item middle, Subtree right) {
+	    if(left.height > right.height) {
+		    return concatenateRight(left, middle, right);
+	    }
+	    if(left.height < right.height) {
+		    return concatenateLeft(left, middle, right);
+	    }
 	    
-	    // Check if a sentinel node was returned by findElementHere, 
-	    // indicating that no match was found
-	    if(isSentinel(foundNode)) {
-		    return null;
+	    // Two empty subtrees make a leaf holding just the item
+	    if(left.height == 0) {
+		    TFNode leaf = newNode();
+		    leaf.addItem(0, middle);
+		    recount(leaf);
+		    return new Subtree(leaf, 1);
 	    }
 	    
-	    // If a valid TFNode is returned by findElementHere, we know that
-	    // node must contain a correct result (since otherwise a sentinel would
-	    // be returned), so FFGTE will always find an equal value
-	    int theKey = FFGTE(foundNode, key);
+	    // Roots of the same height become one node if they fit in one
+	    TFNode leftNode = left.root;
+	    TFNode rightNode = right.root;
+	    if(leftNode.getNumItems() + 1 + rightNode.getNumItems() <= maxItems) {
+		    mergeNodes(leftNode, middle, rightNode);
+		    return new Subtree(leftNode, left.height);
+	    }
 	    
-	    // Return the item
-	    return foundNode.getItem(theKey);
+	    // Otherwise they go under a new root; a root may hold fewer items
+	    // than a child must, so it first takes some from the other one
+	    if(leftNode.getNumItems() < minItems || rightNode.getNumItems() < minItems) {
+		    middle = shareItems(leftNode, middle, rightNode);
+	    }
+	    TFNode newRoot = newNode();
+	    newRoot.addItem(0, middle);
+	    newRoot.setChild(0, leftNode);
+	    newRoot.setChild(1, rightNode);
+	    leftNode.setParent(newRoot);
+	    rightNode.setParent(newRoot);
+	    recount(newRoot);
+	    return new Subtree(newRoot, left.height + 1);
     }
-    
+
     /**
-     * Recursively searches dictionary to determine if key is present
-     * @param key to be searched for
-	* @param topNode 
-     * @return object corresponding to key; null if not found
-     */
-    private TFNode findNode(Object key, TFNode topNode) {
-	    // Check if the TFNode contains the object we want
-	    int index = FFGTE(topNode, key);
-	    
-	    // Check if the FFGTE result is equal to the desired key
-	    if(index != topNode.getNumItems() && 
-			  treeComp.isEqual(topNode.getItem(index).key(), key)) {
-		    return topNode;
+	* Joins a shorter subtree onto the right edge of a taller one
+	* @param left
+	* @param middle
+	* @param right
+	* @return the joined subtree
+	*/
+    private Subtree concatenateRight(Subtree left, Item middle, Subtree right) {
+	    // Walk down the right edge to the node whose children are as tall
+	    // as right
+	    TFNode[] edge = new TFNode[left.height - right.height];
+	    edge[0] = left.root;
+	    for(int i = 1; i < edge.length; i++) {
+		    edge[i] = edge[i - 1].getChild(edge[i - 1].getNumItems());
 	    }
-	    else {
-		    // Check if the node has any children
-		    if(isSentinel(topNode.getChild(index))) {
-			    // If not, return the sentinel node
-			    return topNode.getChild(index);
-		    }
-		    else {
-			    // If so, recursively call the function at the correct child
-			    return findNode(key, topNode.getChild(index));
+	    TFNode parentNode = edge[edge.length - 1];
+	    TFNode rightNode = right.root;
+	    
+	    // A root short of items for a child is evened out with the child
+	    // it will sit next to, or fused into it
+	    if(rightNode != null && rightNode.getNumItems() < minItems) {
+		    TFNode edgeNode = parentNode.getChild(parentNode.getNumItems());
+		    if(edgeNode.getNumItems() + 1 + rightNode.getNumItems() <= maxItems) {
+			    mergeNodes(edgeNode, middle, rightNode);
+			    return fixEdge(edge, left.height, true);
 		    }
+		    middle = shareItems(edgeNode, middle, rightNode);
 	    }
+	    parentNode.insertItem(parentNode.getNumItems(), middle);
+	    parentNode.setChild(parentNode.getNumItems(), rightNode);
+	    if(rightNode != null) {
+		    rightNode.setParent(parentNode);
+	    }
+	    return fixEdge(edge, left.height, true);
     }
 
     /**
-     * Inserts provided element into the Dictionary
-     * @param key of object to be inserted
-     * @param element to be inserted
-     */
-    public void insertElement(Object key, Object element) {
-	    // Check for root
-	    if(isEmpty()) {
-		    //  Create a new TFNode
-		    TFNode newRoot = new TFNode();
-		    
-		    // Put the first Item at its 0 index
-		    newRoot.addItem(0, new Item(key, element));
-		    
-		    // Create two sentinels and add them to the root
-		    TFNode sen1 = new TFNode();
-		    TFNode sen2 = new TFNode();
-		    sen1.addItem(0, new Item(NO_SUCH_KEY, null));
-		    sen2.addItem(0, new Item(NO_SUCH_KEY, null));
-		    newRoot.setChild(0, sen1);
-		    newRoot.setChild(1, sen2);
-		    sen1.setParent(newRoot);
-		    sen2.setParent(newRoot);
-		    
-		    // Set as new root
-		    setRoot(newRoot);
+	* Joins a shorter subtree onto the left edge of a taller one
+	* @param left
+	* @param middle
+	* @param right
+	* @return the joined subtree
+	*/
+    private Subtree concatenateLeft(Subtree left, Item middle, Subtree right) {
+	    TFNode[] edge = new TFNode[right.height - left.height];
+	    edge[0] = right.root;
+	    for(int i = 1; i < edge.length; i++) {
+		    edge[i] = edge[i - 1].getChild(0);
 	    }
-	    else {
-		    // Find the correct place to put the node
-		    TFNode insertNode = findNode(key, root());
-
-		    // Make a childIndex to fill with the position of the new element
-		    int childIndex = 0;
-
-		    // Check if we got a sentinel back or if we have a tie
-		    if(isSentinel(insertNode)) {
-			    // Determine what child the sentinel is
-			    childIndex = WCAI(insertNode);
-			    insertNode = insertNode.getParent();
+	    TFNode parentNode = edge[edge.length - 1];
+	    TFNode leftNode = left.root;
+	    if(leftNode != null && leftNode.getNumItems() < minItems) {
+		    TFNode edgeNode = parentNode.getChild(0);
+		    if(leftNode.getNumItems() + 1 + edgeNode.getNumItems() <= maxItems) {
+			    mergeNodes(leftNode, middle, edgeNode);
+			    parentNode.setChild(0, leftNode);
+			    leftNode.setParent(parentNode);
+			    return fixEdge(edge, right.height, false);
+		    }
+		    middle = shareItems(leftNode, middle, edgeNode);
+	    }
+	    
+	    // Inserting at the front shifts the old first child to index 1
+	    parentNode.insertItem(0, middle);
+	    parentNode.setChild(0, leftNode);
+	    if(leftNode != null) {
+		    leftNode.setParent(parentNode);
+	    }
+	    return fixEdge(edge, right.height, false);
+    }
 
-			    // Perform a shifting insert of the new Item
-			    insertNode.insertItem(childIndex, new Item(key, element));
+    /**
+	* Splits the overflowed nodes along an edge after a join, from the
+	* bottom up, and brings the counts along it up to date
+	* @param edge nodes from the root down to the one joined at
+	* @param height of the subtree before the join
+	* @param rightEdge true for the right edge, false for the left
+	* @return the joined subtree, one level taller if its root split
+	*/
+    private Subtree fixEdge(TFNode[] edge, int height, boolean rightEdge) {
+	    TFNode top = edge[0];
+	    for(int level = edge.length - 1; level >= 0; level--) {
+		    TFNode node = edge[level];
+		    if(node.getNumItems() <= maxItems) {
+			    recount(node);
+			    continue;
 		    }
-		    
-		    // If not a sentinel insert at the inorder successor
-		    else {			    
-			    // Find inorder successor
-			    insertNode = findIOS(insertNode, key);
-			    
-			    // Insert the item
-			    childIndex = FFGTE(insertNode, key);
-			    insertNode.insertItem(childIndex, new Item(key, element));
+		    TFNode splitNode = newNode();
+		    Item promotedItem = splitUpper(node, splitNode);
+		    if(level == 0) {
+			    top = newNode();
+			    top.addItem(0, promotedItem);
+			    top.setChild(0, node);
+			    top.setChild(1, splitNode);
+			    node.setParent(top);
+			    splitNode.setParent(top);
+			    recount(top);
+			    height++;
 		    }
-
-		    // Insert a new sentinel child
-		    TFNode newSent = new TFNode();
-		    newSent.addItem(0, new Item(NO_SUCH_KEY, null));
-		    insertNode.setChild(childIndex, newSent);
-		    newSent.setParent(insertNode);
-
-		    // Check for overflow
-		    if(insertNode.getNumItems() == 4) {
-			    overflow(insertNode);
+		    else {
+			    // The node is the parent's first or last child
+			    TFNode parentNode = edge[level - 1];
+			    int childIndex = rightEdge ? parentNode.getNumItems() : 0;
+			    parentNode.insertItem(childIndex, promotedItem);
+			    parentNode.setChild(childIndex + 1, splitNode);
+			    splitNode.setParent(parentNode);
 		    }
 	    }
-	    
-	    // Increment size
-	    size++;
+	    return new Subtree(top, height);
     }
 
     /**
-     * Searches dictionary to determine if key is present, then
-     * removes and returns corresponding object
-     * @param key of data to be removed
-     * @return object corresponding to key
-     * @exception ElementNotFoundException if the key is not in dictionary
-     */
-    public Object removeElement(Object key) throws ElementNotFoundException {
-	    // If tree is empty throw exception
-	    if(isEmpty()) {
-		    throw new TwoFourTreeException();
+	* Joins two subtrees, every key in left being no more than any in
+	* right, by taking out the first item of right to join around
+	* @param left
+	* @param right
+	* @return the joined subtree
+	*/
+    private Subtree concatenate(Subtree left, Subtree right) {
+	    if(left.height == 0) {
+		    return right;
 	    }
-	    
-	    // Find node to delete from
-	    TFNode deleteNode = findNode(key, root());
-	    
-	    // Check for missing element
-	    if(isSentinel(deleteNode)) {
-		    throw new ElementNotFoundException();
+	    if(right.height == 0) {
+		    return left;
 	    }
 	    
-	    // Extract the data to return
-	    Object removedObject = (deleteNode.getItem(FFGTE(deleteNode, key))).element();
-	    
-	    // If leaf, delete and fix sentinels
-	    if(isSentinel(deleteNode.getChild(0))) {
-		    deleteNode.removeItem(FFGTE(deleteNode, key));
+	    // A subtree of one item is a single leaf
+	    Subtree[] parts = splitAtRank(right, 1);
+	    return concatenate(left, parts[0].root.getItem(0), parts[1]);
+    }
+
+    /**
+	* Splits a subtree by key. The path to the key is cut, and the pieces
+	* to either side of it are joined back together on the way up; each
+	* join costs the difference in height of the pieces, which adds up to
+	* O(log n) for the whole split
+	* @param tree
+	* @param key
+	* @param inclusive true to put the items equal to key on the left,
+	* false to put them on the right
+	* @return the items before key, and the rest
+	*/
+    private Subtree[] splitAtKey(Subtree tree, Object key, boolean inclusive) {
+	    if(tree.height == 0) {
+		    return new Subtree[] { tree, tree };
 	    }
 	    
-	    // If internal, move inorder successor to parent
-	    else {
-		    TFNode nodeIOS = findIOS(deleteNode, key);
-		    
-		    // Move the in-order successor up to replace the deleted item
-		    deleteNode.replaceItem(FFGTE(deleteNode, key), nodeIOS.getItem(0));
-		    
-		    // Delete the inorder successor
-		    nodeIOS.removeItem(0);
-		    
-		    // Set deleteNode equal to nodeIOS to check for underflow
-		    deleteNode = nodeIOS;
+	    // Find the first item that goes to the right
+	    TFNode node = tree.root;
+	    int index = 0;
+	    while(index < node.getNumItems()) {
+		    int cmp = treeComp.compare(node.getKey(index), key);
+		    if(cmp > 0 || (cmp == 0 && !inclusive)) {
+			    break;
+		    }
+		    index++;
+	    }
+	    Subtree[] childParts = splitAtKey(childSubtree(tree, index), key, inclusive);
+	    return splitNode(tree, index, childParts);
+    }
+
+    /**
+	* Splits a subtree by position, in the same way as splitAtKey()
+	* @param tree
+	* @param rank number of items to put on the left
+	* @return the first rank items, and the rest
+	*/
+    private Subtree[] splitAtRank(Subtree tree, int rank) {
+	    if(tree.height == 0) {
+		    return new Subtree[] { tree, tree };
 	    }
 	    
-	    // Check for underflow
-	    if(deleteNode.getNumItems() == 0) {
-			underflow(deleteNode);
+	    // Skip whole children and the items after them while they fit
+	    TFNode node = tree.root;
+	    int index = 0;
+	    while(index < node.getNumItems()) {
+		    int childItems = node.isLeaf() ? 0 : node.getChild(index).getSubtreeItems();
+		    if(rank <= childItems) {
+			    break;
+		    }
+		    rank -= childItems + 1;
+		    index++;
 	    }
+	    Subtree[] childParts = splitAtRank(childSubtree(tree, index), rank);
+	    return splitNode(tree, index, childParts);
+    }
+
+    /**
+	* Splits the root of a subtree before its item at index, once the
+	* child there has been split, joining the pieces to either side
+	* @param tree
+	* @param index of the first item going to the right
+	* @param childParts the child at index, split
+	* @return the left and the right part
+	*/
+    private Subtree[] splitNode(Subtree tree, int index, Subtree[] childParts) {
+	    TFNode node = tree.root;
 	    
-	    // Decrement size
-	    size--;
+	    // A subtree that falls wholly to one side is passed on as it is,
+	    // which the child's split has done for the child
+	    int numItems = node.getNumItems();
+	    if(index == 0 && childParts[0].height == 0 &&
+			    childParts[1].root == node.getChild(0)) {
+		    return new Subtree[] { Subtree.EMPTY, tree };
+	    }
+	    if(index == numItems && childParts[1].height == 0 &&
+			    childParts[0].root == node.getChild(numItems)) {
+		    return new Subtree[] { tree, Subtree.EMPTY };
+	    }
+	    Subtree left = childParts[0];
+	    Subtree right = childParts[1];
+	    if(index < numItems) {
+		    Item item = node.getItem(index);
+		    right = concatenate(right, item, itemsAfter(tree, index));
+	    }
 	    
-	    // Return the deleted object
-	    return removedObject;
+	    // This reuses the node, so it comes last
+	    if(index > 0) {
+		    Item item = node.getItem(index - 1);
+		    left = concatenate(itemsBefore(tree, index - 1), item, left);
+	    }
+	    return new Subtree[] { left, right };
     }
-    
+
     /**
-	* Determines if the node is a sentinel
-	* @param node to be checked
-	* @return true if the node is a sentinel
+	* Returns the subtree under one child of a subtree's root
+	* @param tree
+	* @param index of the child
+	* @return the child's subtree; empty below a leaf
 	*/
-    private boolean isSentinel(TFNode node) {
-	    return ((node.getItem(0)).key() == "NO_SUCH_KEY");
+    private Subtree childSubtree(Subtree tree, int index) {
+	    return new Subtree(tree.root.getChild(index), tree.height - 1);
     }
-    
+
     /**
-	* Finds the first item which is larger or equal to the given key
-	* @param thisNode
-	* @param key
-	* @return 
+	* Returns the part of a subtree before an item of its root, cutting
+	* the root down to it
+	* @param tree
+	* @param index of the item
+	* @return the subtree of the items and children to the left
 	*/
-    private int FFGTE(TFNode thisNode, Object key) {
-	    // Cycle through items to find first greater than or equal to
-	    for(int i = 0; i < thisNode.getNumItems(); i++) {
-		    if(treeComp.isGreaterThanOrEqualTo((thisNode.getItem(i)).key(), 
-														key)) {
-			    return i;
-		    }
+    private Subtree itemsBefore(Subtree tree, int index) {
+	    if(index == 0) {
+		    return childSubtree(tree, 0);
 	    }
-	    
-	    // Return last child index if key is larger than all items
-	    return thisNode.getNumItems();
+	    tree.root.truncate(index);
+	    recount(tree.root);
+	    return tree;
     }
 
     /**
-	* Returns the index of the passed child node in the parent's array
-	* @param thisNode
-	* @return index of child
+	* Returns the part of a subtree after an item of its root, in a new
+	* node; the root itself is left as it is
+	* @param tree
+	* @param index of the item
+	* @return the subtree of the items and children to the right
 	*/
-    private int WCAI(TFNode thisNode) {
-	    TFNode parent = thisNode.getParent();
-	    
-	    // Cycle through children of the parent and return index of thisNode
-	    for(int i = 0; i <= parent.getNumItems(); i++) {
-		   if(parent.getChild(i) == thisNode) {
-			   return i;
-		   } 
+    private Subtree itemsAfter(Subtree tree, int index) {
+	    TFNode node = tree.root;
+	    int numItems = node.getNumItems();
+	    if(index == numItems - 1) {
+		    return childSubtree(tree, numItems);
 	    }
-	    
-	    // Return -1 on error
-	    return -1;
+	    TFNode afterNode = newNode();
+	    afterNode.setChild(0, node.getChild(index + 1));
+	    for(int i = index + 1; i < numItems; i++) {
+		    afterNode.addItem(i - index - 1, node.getItem(i));
+		    afterNode.setChild(i - index, node.getChild(i + 1));
+	    }
+	    if(!afterNode.isLeaf()) {
+		    for(int i = 0; i <= afterNode.getNumItems(); i++) {
+			    (afterNode.getChild(i)).setParent(afterNode);
+		    }
+	    }
+	    recount(afterNode);
+	    return new Subtree(afterNode, tree.height);
     }
-    
+
     /**
-	* Returns node in which the inorder successor is located
-	* @param node
+	* Splits a subtree into the items before key, those equal to it and
+	* those after it
+	* @param tree
 	* @param key
-	* @return node of inorder successor
+	* @return the three parts, in key order
 	*/
-    private TFNode findIOS(TFNode node, Object key) {
-	    int childIndex = 0;
-	    
-	    // Check if the equal item is at a leaf or internal node
-	    if(!isSentinel(node.getChild(0))) {
-		    // At an internal node find the inorder successor
-		    int pathToIOS = FFGTE(node, key);
-		    if(pathToIOS == node.getNumItems()) {
-			    childIndex = pathToIOS;
-		    }
-		    else {
-			    childIndex = pathToIOS + 1;
-		    }
-
-		    // Move down to inorder successor
-		    node = node.getChild(childIndex);
-		    while(!isSentinel(node.getChild(0))) {
-			    node = node.getChild(0);
-		    }
-	    }
-	    
-	    return node;
+    private Subtree[] splitAround(Subtree tree, Object key) {
+	    Subtree[] below = splitAtKey(tree, key, false);
+	    Subtree[] rest = splitAtKey(below[1], key, true);
+	    return new Subtree[] { below[0], rest[0], rest[1] };
     }
-    
+
     /**
-	* Fix tree on overflow
-	* @param oFNode 
+	* Combines two subtrees by one of the set operations. Theirs is split
+	* at every key of the root of mine, each piece is combined with the
+	* child of mine between the same keys, and the results are put back
+	* under the root, or joined around its items where they no longer fit
+	* there. Only the paths the splits cut through are touched, which costs
+	* O(m log(n/m + 1)) for subtrees of m and n items, m the smaller
+	* @param operation UNION, INTERSECTION or DIFFERENCE
+	* @param mine
+	* @param theirs
+	* @return the combined subtree
 	*/
-    private void overflow(TFNode oFNode) {
-	    // Split the node
-	    TFNode splitNode = new TFNode();
-	    splitNode.addItem(0, oFNode.getItem(3));
-	    
-	    // Add the children
-	    splitNode.setChild(0, oFNode.getChild(3));
-	    splitNode.setChild(1, oFNode.getChild(4));
-	    
-	    // Set the children to point to the parents
-	    (splitNode.getChild(0)).setParent(splitNode);
-	    (splitNode.getChild(1)).setParent(splitNode);
-	    
-	    // Remove and record the third item and its child
-	    TFNode childC = oFNode.getChild(2);
-	    Item promotedItem = oFNode.removeItem(2);
-	    
-	    // Remove the fourth item which has been split off
-	    oFNode.removeItem(2);
-	    
-	    // Reattach the lost child
-	    oFNode.setChild(2, childC);
-	    (oFNode.getChild(2)).setParent(oFNode);
+    private Subtree combine(int operation, Subtree mine, Subtree theirs) {
+	    if(mine.height == 0) {
+		    return (operation == UNION) ? theirs : mine;
+	    }
+	    if(theirs.height == 0) {
+		    return (operation == INTERSECTION) ? theirs : mine;
+	    }
 	    
-	    // Check if we're at the root and need to create a new root
-	    if(oFNode == root()) {
-		    TFNode newRoot = new TFNode();
-		    newRoot.addItem(0, promotedItem);
-		    
-		    // Set as new root
-		    setRoot(newRoot);
-		    
-		    // Set the children
-		    newRoot.setChild(0, oFNode);
-		    newRoot.setChild(1, splitNode);
-		    
-		    // Set the children to point to the parents
-		    (newRoot.getChild(0)).setParent(newRoot);
-		    (newRoot.getChild(1)).setParent(newRoot);
+	    // Two leaves are merged item by item, with no splits
+	    if(mine.height == 1 && theirs.height == 1) {
+		    return combineLeaves(operation, mine.root, theirs.root);
 	    }
-	    else {
-		    // We're not at the root, so shove the item up to the parent
-		    TFNode parentNode = oFNode.getParent();
-		    parentNode.insertItem(WCAI(oFNode), promotedItem);
-		    
-		    // Hook up the new child
-		    parentNode.setChild((WCAI(oFNode) + 1), splitNode);
-		    
-		    // Hook the new child to point back to the parent
-		    splitNode.setParent(parentNode);
-		    
-		    // Check if the new parent node is overflowed
-		    if(parentNode.getNumItems() == 4) {
-			    overflow(parentNode);
+	    TFNode node = mine.root;
+	    int numItems = node.getNumItems();
+	    Subtree[] results = new Subtree[numItems + 1];
+	    Subtree rest = theirs;
+	    int change = 0;
+	    
+	    // A key below the smallest of theirs or above the largest cuts
+	    // nothing off, so only the keys between them need a split
+	    Object lowest = edgeKey(theirs, false);
+	    Object highest = edgeKey(theirs, true);
+	    for(int i = 0; i < numItems; i++) {
+		    Object key = node.getKey(i);
+		    Subtree before;
+		    if(rest.height == 0 || treeComp.compare(key, lowest) < 0) {
+			    before = Subtree.EMPTY;
 		    }
+		    else if(treeComp.compare(key, highest) > 0) {
+			    before = rest;
+			    rest = Subtree.EMPTY;
+		    }
+		    else {
+			    Subtree[] parts = splitAround(rest, key);
+			    before = parts[0];
+			    rest = parts[2];
+			    if(parts[1].height > 0) {
+				    return combineAt(operation, mine, i, results, before, parts[1], rest);
+			    }
+		    }
+		    change += combineChild(operation, mine, i, before, results);
 	    }
+	    change += combineChild(operation, mine, numItems, rest, results);
+	    return reassemble(operation, mine, numItems, results, change);
     }
-    
+
     /**
-	* Fix tree on underflow
-	* @param uFNode 
+	* Combines two leaves by merging their items in key order
+	* @param operation
+	* @param myLeaf
+	* @param theirLeaf
+	* @return the combined subtree; a leaf, or two under a new root if the
+	* items do not fit in one
 	*/
-    private void underflow(TFNode uFNode) {
-	    // Special case if the root has underflowed
-	    if(uFNode == root()) {
-		    setRoot(uFNode.getChild(0));
-		    root().setParent(null);
-	    }
-	    // Check that uFNode isn't the first child, then check if the left
-	    // sibling of uFNode has two or more items (permitting a transfer)
-	    else if(WCAI(uFNode) > 0 && 
-			((uFNode.getParent()).getChild(WCAI(uFNode) - 1)).getNumItems() > 1) {
-		    
-		    leftTransfer(uFNode);
+    private Subtree combineLeaves(int operation, TFNode myLeaf, TFNode theirLeaf) {
+	    int myItems = myLeaf.getNumItems();
+	    int theirItems = theirLeaf.getNumItems();
+	    Item[] items = new Item[myItems + theirItems];
+	    int count = 0;
+	    int j = 0;
+	    for(int i = 0; i < myItems; i++) {
+		    // Theirs below my key only go into a union
+		    Object key = myLeaf.getKey(i);
+		    while(j < theirItems && treeComp.compare(theirLeaf.getKey(j), key) < 0) {
+			    if(operation == UNION) {
+				    items[count++] = theirLeaf.getItem(j);
+			    }
+			    j++;
+		    }
+		    boolean matched = (j < theirItems) &&
+				    treeComp.compare(theirLeaf.getKey(j), key) == 0;
+		    if(matched == (operation == INTERSECTION)) {
+			    items[count++] = myLeaf.getItem(i);
+		    }
 	    }
-	    // Check that uFNode isn't the last child, then check if the right
-	    // sibling of uFNode has two or more items (permitting a transfer)
-	    else if(WCAI(uFNode) < (uFNode.getParent()).getNumItems() && 
-			((uFNode.getParent()).getChild(WCAI(uFNode) + 1)).getNumItems() > 1) {
-		    
-		    rightTransfer(uFNode);
+	    while(operation == UNION && j < theirItems) {
+		    items[count++] = theirLeaf.getItem(j++);
 	    }
-	    // Check that uFNode isn't the first child, permitting a left fusion
-	    else if(WCAI(uFNode) != 0) {
-		    leftFusion(uFNode);
+	    
+	    // Refill my leaf, and a second one if they do not all fit
+	    if(count == 0) {
+		    return Subtree.EMPTY;
 	    }
-	    // If uFNode is the first child, perform a right fusion instead
-	    else  {
-		    rightFusion(uFNode);
+	    TFNode[] children = new TFNode[count + 1];
+	    if(count <= maxItems) {
+		    fillNode(myLeaf, items, children, 0, count);
+		    return new Subtree(myLeaf, 1);
 	    }
+	    int half = (count - 1) / 2;
+	    TFNode rightLeaf = newNode();
+	    fillNode(myLeaf, items, children, 0, half);
+	    fillNode(rightLeaf, items, children, half + 1, count);
+	    return concatenate(new Subtree(myLeaf, 1), items[half], new Subtree(rightLeaf, 1));
     }
-    
+
     /**
-	* Transfers left sibling's item with parent and emptyNode
-	* @param emptyNode 
+	* Combines one child of a subtree's root with a piece of theirs. A
+	* child a union or difference would leave as it is is not visited, and
+	* its result is left null
+	* @param operation
+	* @param mine
+	* @param index of the child
+	* @param piece the part of theirs between the child's bounds
+	* @param results where the result goes
+	* @return change in the number of items under the child
 	*/
-    private void leftTransfer(TFNode emptyNode) {
-	    TFNode parentNode = emptyNode.getParent();
-	    TFNode siblingNode = parentNode.getChild(WCAI(emptyNode) - 1);
-	    
-	    // Copy down the correct parent item into the newly empty node
-	    emptyNode.addItem(0, parentNode.getItem(WCAI(emptyNode) - 1));
-	    
-	    // Move the child at the 0 index into the 1 index
-	    emptyNode.setChild(1, emptyNode.getChild(0));
-	    
-	    // Set the 0 child of emptyNode to its sibling's largest child
-	    emptyNode.setChild(0, siblingNode.getChild(siblingNode.getNumItems()));
-	    
-	    // Set the displaced child to look at its new parent
-	    (emptyNode.getChild(0)).setParent(emptyNode);
-	    
-	    // Null the sibling's largest child
-	    siblingNode.setChild(siblingNode.getNumItems(), null);
-	    
-	    // Copy the item from the sibling child up to replace the parent
-	    parentNode.replaceItem(WCAI(emptyNode) - 1, 
-					siblingNode.getItem(siblingNode.getNumItems() - 1));
-	    
-	    // Delete the sibling's largest item
-	    siblingNode.deleteItem(siblingNode.getNumItems() - 1);
+    private int combineChild(int operation, Subtree mine, int index,
+						     Subtree piece, Subtree[] results) {
+	    if(piece.height == 0 && operation != INTERSECTION) {
+		    return 0;
+	    }
+	    Subtree child = childSubtree(mine, index);
+	    int oldItems = (child.height == 0) ? 0 : child.root.getSubtreeItems();
+	    Subtree result = combine(operation, child, piece);
+	    results[index] = result;
+	    return ((result.height == 0) ? 0 : result.root.getSubtreeItems()) - oldItems;
     }
-    
+
     /**
-	* Transfers right sibling's item with parent and emptyNode
-	* @param emptyNode 
+	* Finishes combine() once theirs turns out to hold the key of an item
+	* of mine. Mine may hold that key more than once, at the end of the
+	* child before the item and in the items and children after it, so
+	* all of them are split out and kept or dropped together
+	* @param operation
+	* @param mine
+	* @param index of the item whose key theirs holds
+	* @param results the children before index, already combined
+	* @param before the part of theirs between the item and the one before
+	* @param equal the items of theirs with the key
+	* @param after the part of theirs above the key
+	* @return the combined subtree
 	*/
-    private void rightTransfer(TFNode emptyNode) {
-	    TFNode parentNode = emptyNode.getParent();
-	    TFNode siblingNode = parentNode.getChild(WCAI(emptyNode) + 1);
-	    
-	    // Copy down the correct parent item into the newly empty node
-	    emptyNode.addItem(0, parentNode.getItem(WCAI(emptyNode)));
+    private Subtree combineAt(int operation, Subtree mine, int index,
+						      Subtree[] results, Subtree before,
+						      Subtree equal, Subtree after) {
+	    Item item = mine.root.getItem(index);
+	    Subtree[] lower = splitAtKey(childSubtree(mine, index), item.key(), false);
+	    Subtree[] upper = splitAtKey(itemsAfter(mine, index), item.key(), true);
+	    results[index] = combine(operation, lower[0], before);
+	    Subtree left = reassemble(operation, mine, index, results, 0);
+	    Subtree right = combine(operation, upper[1], after);
 	    
-	    // Copy the item from the sibling child up to replace the parent
-	    parentNode.replaceItem(WCAI(emptyNode), siblingNode.getItem(0));
-	    
-	    // Set the 1 child of emptyNode to its sibling's smallst child
-	    emptyNode.setChild(1, siblingNode.getChild(0));
-	    
-	    // Set the displaced child to look at its new parent
-	    (emptyNode.getChild(1)).setParent(emptyNode);
-	    
-	    // Shifting delete the sibling's smallest item
-	    siblingNode.removeItem(0); 
+	    // Their items replace mine in a union, and mine stay in an
+	    // intersection
+	    Subtree middle = Subtree.EMPTY;
+	    if(operation == UNION) {
+		    middle = equal;
+	    }
+	    else if(operation == INTERSECTION) {
+		    middle = concatenate(lower[1], item, upper[0]);
+	    }
+	    return concatenate(concatenate(left, middle), right);
     }
-    
-    
+
     /**
-	* Fuses emptyNode with left sibling
-	* @param emptyNode 
+	* Finds the smallest or largest key in a subtree
+	* @param tree not empty
+	* @param last true for the largest key
+	* @return the key at that end
 	*/
-    private void leftFusion(TFNode emptyNode) {
-            int emptyIndex = WCAI(emptyNode);
-	    TFNode parentNode = emptyNode.getParent();
-	    TFNode siblingNode = parentNode.getChild(emptyIndex - 1);
-	    
-	    // Copy down the parent at WCAI - 1 into the left sibling
-	    siblingNode.addItem(1, parentNode.getItem(emptyIndex - 1));
-	    
-	    // Set the empty node child to belong to the left sibling
-	    siblingNode.setChild(2, emptyNode.getChild(0));
-	    
-	    // Set the parent of the child to the left sibling
-	    (siblingNode.getChild(2)).setParent(siblingNode);
-	    
-	    // Delete the parent item that's now in the left sibling
-	    parentNode.removeItem(emptyIndex - 1);
-	    
-	    // Set the "empty" node to the newly fused sibling node
-	    parentNode.setChild(emptyIndex - 1, siblingNode);
-	    
-	    // Check if we've made the parent underflow and recursively call if so
-	    if(parentNode.getNumItems() == 0) {
-		    underflow(parentNode);
+    private Object edgeKey(Subtree tree, boolean last) {
+	    TFNode node = tree.root;
+	    while(!node.isLeaf()) {
+		    node = node.getChild(last ? node.getNumItems() : 0);
 	    }
+	    return node.getKey(last ? node.getNumItems() - 1 : 0);
     }
-    
+
     /**
-	* Fuses thisNode with right sibling
-	* @param emptyNode 
+	* Puts the combined children of a subtree's root back together with
+	* its first count items, which a union or difference keeps and an
+	* intersection drops. Results as tall as the children were, with
+	* roots full enough for a child, go straight back into the root;
+	* otherwise the results are joined around the items
+	* @param operation
+	* @param mine
+	* @param count number of items of the root to use
+	* @param results count + 1 combined children; null for a child kept
+	* as it is
+	* @param change in the number of items under the children, if count
+	* is all of the root's items
+	* @return the combined subtree
 	*/
-    private void rightFusion(TFNode emptyNode) {
-	    TFNode parentNode = emptyNode.getParent();
-	    TFNode siblingNode = parentNode.getChild(WCAI(emptyNode) + 1);
-	    
-	    // Copy down the parent at 0 into the right sibling
-	    siblingNode.insertItem(0, parentNode.getItem(0));
-	    
-	    // Set the empty node child to belong to the left sibling
-	    siblingNode.setChild(0, emptyNode.getChild(0));
-	    
-	    // Set the parent of the child to the left sibling
-	    (siblingNode.getChild(0)).setParent(siblingNode);
-	    
-	    // Delete the parent item that's now in the left sibling
-	    // This also deletes the newly empty node's pointer
-	    parentNode.removeItem(0);
-	    
-	    // Check if we've made the parent underflow and recursively call if so
-	    if(parentNode.getNumItems() == 0) {
-		    underflow(parentNode);
+    private Subtree reassemble(int operation, Subtree mine, int count,
+						       Subtree[] results, int change) {
+	    // With no items left the root goes, as it would in a join
+	    TFNode node = mine.root;
+	    boolean keepItems = (operation != INTERSECTION);
+	    boolean fits = keepItems && count > 0;
+	    for(int i = 0; i <= count && fits; i++) {
+		    Subtree result = results[i];
+		    fits = (result == null) || ((result.height == mine.height - 1) &&
+				    (result.height == 0 || result.root.getNumItems() >= minItems));
+	    }
+	    if(fits) {
+		    // Children kept as they are are not touched, so only a root
+		    // cut short needs its count taken again
+		    for(int i = 0; i <= count; i++) {
+			    if(results[i] != null) {
+				    node.setChild(i, results[i].root);
+				    if(results[i].root != null) {
+					    results[i].root.setParent(node);
+				    }
+			    }
+		    }
+		    if(count < node.getNumItems()) {
+			    node.truncate(count);
+			    recount(node);
+		    }
+		    else {
+			    node.setSubtreeItems(node.getSubtreeItems() + change);
+			    if(aggregator != null) {
+				    aggregateNode(node);
+			    }
+		    }
+		    return mine;
+	    }
+	    Subtree combined = (results[0] == null) ? childSubtree(mine, 0) : results[0];
+	    for(int i = 0; i < count; i++) {
+		    Subtree next = (results[i + 1] == null) ? childSubtree(mine, i + 1) : results[i + 1];
+		    if(keepItems) {
+			    combined = concatenate(combined, node.getItem(i), next);
+		    }
+		    else {
+			    combined = concatenate(combined, next);
+		    }
 	    }
+	    return combined;
     }
-    
+
     /**
 	* Prints the current state of the tree
 	*/
@@ -563,8 +2515,8 @@ public class TwoFourTree implements Dictionary {
         indent += 4;
         int numChildren = start.getNumItems() + 1;
         for (int i = 0; i < numChildren; i++) {
-		   // Do not print sentinels
-		   if(start.getChild(i)!=null && !isSentinel(start.getChild(i))) {
+		   // Leaves have no children to print
+		   if(start.getChild(i) != null) {
 			   printTree(start.getChild(i), indent);
 		   }
         }
@@ -633,6 +2585,18 @@ public class TwoFourTree implements Dictionary {
             checkTreeFromNode(start.getChild(childIndex));
         }
 
+        // the children are checked first, so their counts can be trusted
+        int count = start.getNumItems();
+        if (start.getChild(0) != null) {
+            for (int childIndex = 0; childIndex < numChildren; childIndex++) {
+                count += start.getChild(childIndex).getSubtreeItems();
+            }
+        }
+        if (count != start.getSubtreeItems()) {
+            System.out.println("Wrong subtree item count");
+            printTFNode(start);
+        }
+
     }
     /**
 	* Main testing
@@ -694,6 +2658,108 @@ public class TwoFourTree implements Dictionary {
 	   myTree.printAllElements();
 	   System.out.println("Correct size? " + myTree.isEmpty());
 	   
+        // Set operations: each result is checked for hookup and contents
+        final int SET_SIZE = 3000;
+        TwoFourTree lower = treeOfKeys(0, 1000, 1);
+        TwoFourTree upper = treeOfKeys(1000, 2000, 1);
+        lower.join(upper);
+        lower.checkTree();
+        checkKeys(lower, SET_SIZE, 0, 2000, 1, "join");
+        checkKeys(upper, SET_SIZE, 0, 0, 1, "joined tree");
+
+        upper = lower.split(new Integer(1500));
+        lower.checkTree();
+        upper.checkTree();
+        checkKeys(lower, SET_SIZE, 0, 1500, 1, "split lower");
+        checkKeys(upper, SET_SIZE, 1500, 2000, 1, "split upper");
+
+        lower.union(upper);
+        lower.checkTree();
+        checkKeys(lower, SET_SIZE, 0, 2000, 1, "union");
+
+        lower.intersection(treeOfKeys(0, SET_SIZE, 3));
+        lower.checkTree();
+        checkKeys(lower, SET_SIZE, 0, 2000, 3, "intersection");
+
+        lower.difference(treeOfKeys(0, SET_SIZE, 6));
+        lower.checkTree();
+        for (int i = 0; i < SET_SIZE; i++) {
+            boolean kept = (i < 2000 && i % 3 == 0 && i % 6 != 0);
+            if ((lower.findElement(new Integer(i)) != null) != kept) {
+                throw new TwoFourTreeException("main: difference wrong at " + i);
+            }
+        }
+        System.out.println("Correct set operations? true");
+
+        // Trees that order their keys differently cannot be combined, but
+        // aggregators of the same class can
+        TwoFourTree reversed = new TwoFourTree(
+                new ComparatorAdapter(java.util.Collections.reverseOrder()));
+        try {
+            lower.union(reversed);
+            throw new TwoFourTreeException("main: union across comparators");
+        }
+        catch (TwoFourTreeException exc) {
+            if (exc.getMessage().startsWith("main:")) {
+                throw exc;
+            }
+        }
+        TwoFourTree summed = new TwoFourTree(myComp, 4, new IntegerSumAggregator());
+        summed.insertElement(new Integer(1), new Integer(1));
+        TwoFourTree alsoSummed = new TwoFourTree(myComp, 4, new IntegerSumAggregator());
+        alsoSummed.insertElement(new Integer(2), new Integer(2));
+        summed.union(alsoSummed);
+        summed.checkTree();
+        if (summed.size() != 2) {
+            throw new TwoFourTreeException("main: union of equal aggregators");
+        }
+        System.out.println("Correct combinable checks? true");
+
         System.out.println("done");
     }
+
+    // tree of the keys from low up to high, step apart
+    private static TwoFourTree treeOfKeys(int low, int high, int step) {
+        TwoFourTree tree = new TwoFourTree(new IntegerComparator());
+        for (int i = low; i < high; i += step) {
+            tree.insertElement(new Integer(i), new Integer(i));
+        }
+        return tree;
+    }
+
+    // throws unless the tree holds exactly the keys treeOfKeys would put
+    // in it, looking at every key below limit
+    private static void checkKeys(TwoFourTree tree, int limit, int low, int high,
+                                  int step, String what) {
+        int count = 0;
+        for (int i = 0; i < limit; i++) {
+            boolean kept = (i >= low && i < high && (i - low) % step == 0);
+            if ((tree.findElement(new Integer(i)) != null) != kept) {
+                throw new TwoFourTreeException("main: " + what + " wrong at " + i);
+            }
+            if (kept) {
+                count++;
+            }
+        }
+        if (tree.size() != count) {
+            throw new TwoFourTreeException("main: " + what + " wrong size");
+        }
+    }
+
+    /**
+	* A subtree cut loose from the tree, with its height in levels of
+	* nodes; the joins and splits pass these around. Its root may hold
+	* fewer items than other nodes must, as the root of a tree may, and
+	* an empty subtree has no root and height 0
+	*/
+    private static class Subtree {
+	    static final Subtree EMPTY = new Subtree(null, 0);
+	    final TFNode root;
+	    final int height;
+
+	    Subtree(TFNode root, int height) {
+		    this.root = root;
+		    this.height = height;
+	    }
+    }
 }
@@ -0,0 +1,346 @@
+package termproject;
+
+/**
+ * This class walks a TwoFourTree in key order.
+ *
+ * Title: Term Project 2-4 Trees
+ * @version 1.0
+ * File: TwoFourTreeCursor.java
+ * Description: A cursor sits on one item of a TwoFourTree and keeps the path
+ * from the root down to it, so next() and prev() move to the neighbouring
+ * item without searching from the root again: a full scan costs amortized
+ * O(1) per item. Moving the cursor allocates nothing once its path stack is
+ * as deep as the tree. seek() positions it on the first item whose key is
+ * not less than the given key; first() and last() on the ends of the tree.
+ *
+ * The tree may be changed while a cursor is open. On its next use the cursor
+ * notices the change and searches for its item again; if that item has been
+ * removed it moves to the first item with a key not less than the removed
+ * one, which the next call to next() returns rather than skips; prev() then
+ * goes to the item before it, as it would have from the removed item. Among
+ * equal keys that may revisit items, but never skips one. A cursor which has
+ * run off either end stays invalid until it is positioned again.
+ */
+
+public class TwoFourTreeCursor {
+
+    // Variable declaration
+    private final TwoFourTree tree;
+    // Path from the root to the current item: pathNodes[d] is the node at
+    // depth d and pathIndex[d] the child index taken from it, except at the
+    // last level, where it is the index of the current item
+    private TFNode[] pathNodes = new TFNode[16];
+    private int[] pathIndex = new int[16];
+    // Zero when the cursor is not on an item
+    private int pathDepth;
+    // Item at the end of the path, kept to find it again after a change
+    private Item current;
+    // Tree modification count the path was taken at
+    private int expectedModCount;
+    // Set when the current item stands in for one removed from the tree:
+    // 1 if next() should stay on it, -1 if prev() should
+    private int pending;
+
+    /**
+     * Creates an unpositioned cursor over the tree
+     * @param tree
+     */
+    public TwoFourTreeCursor(TwoFourTree tree) {
+        this.tree = tree;
+        pathDepth = 0;
+    }
+
+    /**
+     * Returns true if the cursor is on an item
+     * @return true if key() and element() may be called
+     */
+    public boolean isValid() {
+        revalidate();
+        return (pathDepth > 0);
+    }
+
+    /**
+     * Returns the key of the current item
+     * @return key
+     * @exception TwoFourTreeException if the cursor is not on an item
+     */
+    public Object key() {
+        return item().key();
+    }
+
+    /**
+     * Returns the element of the current item
+     * @return element
+     * @exception TwoFourTreeException if the cursor is not on an item
+     */
+    public Object element() {
+        return item().element();
+    }
+
+    /**
+     * Moves to the item with the smallest key
+     * @return true if the tree is not empty
+     */
+    public boolean first() {
+        reset();
+        TFNode node = tree.root();
+        if (node == null) {
+            return false;
+        }
+        descendLeftmost(node);
+        return settle();
+    }
+
+    /**
+     * Moves to the item with the largest key
+     * @return true if the tree is not empty
+     */
+    public boolean last() {
+        reset();
+        TFNode node = tree.root();
+        if (node == null) {
+            return false;
+        }
+        descendRightmost(node);
+        return settle();
+    }
+
+    /**
+     * Moves to the first item whose key is greater than or equal to key
+     * @param key
+     * @return true if there is such an item
+     */
+    public boolean seek(Object key) {
+        reset();
+        TFNode node = tree.root();
+        if (node == null) {
+            return false;
+        }
+
+        // Descend to the gap before the first item not less than key;
+        // equal items in internal nodes may have equal keys to their left,
+        // so the descent always goes on to a leaf
+        while (true) {
+            int index = tree.findIndex(node, key);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            push(node, index);
+            if (node.isLeaf()) {
+                break;
+            }
+            node = node.getChild(index);
+        }
+
+        // Past the end of the leaf, the item is the nearest ancestor
+        // separator to the right
+        if (pathIndex[pathDepth - 1] == node.getNumItems()) {
+            climbRight();
+        }
+        return settle();
+    }
+
+    /**
+     * Moves to the next item in key order
+     * @return true if there is one
+     */
+    public boolean next() {
+        revalidate();
+        if (pathDepth == 0) {
+            return false;
+        }
+        if (pending > 0) {
+            pending = 0;
+            return true;
+        }
+        pending = 0;
+        int level = pathDepth - 1;
+        TFNode node = pathNodes[level];
+        int index = pathIndex[level];
+
+        // Internal: the successor is leftmost in the subtree to the right
+        if (!node.isLeaf()) {
+            pathIndex[level] = index + 1;
+            descendLeftmost(node.getChild(index + 1));
+        }
+        else if (index + 1 < node.getNumItems()) {
+            pathIndex[level] = index + 1;
+        }
+        else {
+            pathIndex[level] = index + 1;
+            climbRight();
+        }
+        return settle();
+    }
+
+    /**
+     * Moves to the previous item in key order
+     * @return true if there is one
+     */
+    public boolean prev() {
+        revalidate();
+        if (pathDepth == 0) {
+            return false;
+        }
+        if (pending < 0) {
+            pending = 0;
+            return true;
+        }
+        pending = 0;
+        int level = pathDepth - 1;
+        TFNode node = pathNodes[level];
+        int index = pathIndex[level];
+
+        // Internal: the predecessor is rightmost in the subtree to the left
+        if (!node.isLeaf()) {
+            descendRightmost(node.getChild(index));
+        }
+        else if (index > 0) {
+            pathIndex[level] = index - 1;
+        }
+        else {
+            climbLeft();
+        }
+        return settle();
+    }
+
+    /**
+     * Returns the current item
+     * @return item the cursor is on
+     */
+    Item item() {
+        revalidate();
+        if (pathDepth == 0) {
+            throw new TwoFourTreeException("Cursor is not on an item");
+        }
+        return current;
+    }
+
+    /**
+     * Takes note of the item the path now ends at
+     * @return true if the cursor is on an item
+     */
+    private boolean settle() {
+        current = (pathDepth > 0)
+                  ? pathNodes[pathDepth - 1].getItem(pathIndex[pathDepth - 1])
+                  : null;
+        return (pathDepth > 0);
+    }
+
+    /**
+     * Takes the leftmost path down from node to a leaf
+     * @param node
+     */
+    private void descendLeftmost(TFNode node) {
+        while (!node.isLeaf()) {
+            push(node, 0);
+            node = node.getChild(0);
+        }
+        push(node, 0);
+    }
+
+    /**
+     * Takes the rightmost path down from node to a leaf
+     * @param node
+     */
+    private void descendRightmost(TFNode node) {
+        while (!node.isLeaf()) {
+            push(node, node.getNumItems());
+            node = node.getChild(node.getNumItems());
+        }
+        push(node, node.getNumItems() - 1);
+    }
+
+    /**
+     * Pops the path up to the first ancestor entered from a child that has
+     * an item to its right, and stops on that item
+     */
+    private void climbRight() {
+        do {
+            pathNodes[--pathDepth] = null;
+        } while (pathDepth > 0
+                 && pathIndex[pathDepth - 1] == pathNodes[pathDepth - 1].getNumItems());
+    }
+
+    /**
+     * Pops the path up to the first ancestor entered from a child that has
+     * an item to its left, and stops on that item
+     */
+    private void climbLeft() {
+        do {
+            pathNodes[--pathDepth] = null;
+        } while (pathDepth > 0 && pathIndex[pathDepth - 1] == 0);
+        if (pathDepth > 0) {
+            pathIndex[pathDepth - 1]--;
+        }
+    }
+
+    /**
+     * Records a node and the index taken from it as the next path level
+     * @param node
+     * @param index
+     */
+    private void push(TFNode node, int index) {
+        // Grow the stack if the tree got taller than it has room for
+        if (pathDepth == pathNodes.length) {
+            TFNode[] newNodes = new TFNode[pathDepth * 2];
+            int[] newIndex = new int[pathDepth * 2];
+            System.arraycopy(pathNodes, 0, newNodes, 0, pathDepth);
+            System.arraycopy(pathIndex, 0, newIndex, 0, pathDepth);
+            pathNodes = newNodes;
+            pathIndex = newIndex;
+        }
+        pathNodes[pathDepth] = node;
+        pathIndex[pathDepth] = index;
+        pathDepth++;
+    }
+
+    /**
+     * Empties the path and takes the current modification count
+     */
+    private void reset() {
+        while (pathDepth > 0) {
+            pathNodes[--pathDepth] = null;
+        }
+        pending = 0;
+        expectedModCount = tree.modCount();
+    }
+
+    /**
+     * Rebuilds the path if the tree has changed since it was taken
+     */
+    private void revalidate() {
+        if (expectedModCount == tree.modCount()) {
+            return;
+        }
+        if (pathDepth == 0) {
+            expectedModCount = tree.modCount();
+            return;
+        }
+        Item item = current;
+        int wasPending = pending;
+        Object key = item.key();
+
+        // Items keep their identity through splits, fusions and transfers,
+        // so look for this very item among those with an equal key
+        Comparator comp = tree.comparator();
+        seek(key);
+        while (current != null && current != item
+               && comp.compare(current.key(), key) == 0) {
+            next();
+        }
+        if (current == item) {
+            pending = wasPending;
+            return;
+        }
+
+        // The item is gone; stand on the first item with a key not less
+        // than its own, or on the last item if there is none
+        if (seek(key)) {
+            pending = 1;
+        }
+        else if (last()) {
+            pending = -1;
+        }
+    }
+}
@@ -18,4 +18,7 @@ public class TwoFourTreeException extends RuntimeException {
     public TwoFourTreeException(String errorMsg) {
         super (errorMsg);
     }
+    public TwoFourTreeException(String errorMsg, Throwable cause) {
+        super (errorMsg, cause);
+    }
 }
\ No newline at end of file
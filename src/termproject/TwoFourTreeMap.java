@@ -0,0 +1,734 @@
+package termproject;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+/**
+ * Title:        Term Project 2-4 Trees
+ * Description:  A java.util.NavigableMap backed directly by a TwoFourTree.
+ *               Keys are unique: put() replaces the element of an existing
+ *               Item in place instead of inserting a duplicate.  Sub-maps,
+ *               head/tail maps and descending maps are views over the same
+ *               tree, described only by their bounds and direction, so
+ *               creating one is O(1) and range queries never copy entries;
+ *               the navigation methods each cost one descent of the tree.
+ *               Keys may not be null.
+ * @version 1.0
+ */
+
+public class TwoFourTreeMap<K,V> extends AbstractMap<K,V>
+        implements NavigableMap<K,V> {
+
+    private final TwoFourTree tree;
+    private final Comparator treeComp;
+    private final java.util.Comparator<? super K> keyComp;
+
+    // Bounds of this view in ascending key order; the full map has none
+    private final boolean hasLow;
+    private final K low;
+    private final boolean lowInclusive;
+    private final boolean hasHigh;
+    private final K high;
+    private final boolean highInclusive;
+    private final boolean descending;
+
+    private transient EntrySet entrySet;
+    private transient KeySet<K> keySet;
+
+    /**
+     * Creates an empty map ordered by the keys' natural ordering
+     */
+    public TwoFourTreeMap() {
+        this (null, 4);
+    }
+
+    /**
+     * Creates an empty map ordered by comp
+     * @param comp
+     */
+    public TwoFourTreeMap(java.util.Comparator<? super K> comp) {
+        this (comp, 4);
+    }
+
+    /**
+     * Creates an empty map ordered by comp, backed by a tree of the given order
+     * @param comp null for natural ordering
+     * @param order
+     */
+    public TwoFourTreeMap(java.util.Comparator<? super K> comp, int order) {
+        keyComp = comp;
+        treeComp = new ComparatorAdapter(comp);
+        tree = new TwoFourTree(treeComp, order);
+        hasLow = false;
+        low = null;
+        lowInclusive = false;
+        hasHigh = false;
+        high = null;
+        highInclusive = false;
+        descending = false;
+    }
+
+    /**
+     * Creates a view of the map's tree
+     */
+    private TwoFourTreeMap(TwoFourTreeMap<K,V> map,
+                           boolean hasLow, K low, boolean lowInclusive,
+                           boolean hasHigh, K high, boolean highInclusive,
+                           boolean descending) {
+        tree = map.tree;
+        treeComp = map.treeComp;
+        keyComp = map.keyComp;
+        this.hasLow = hasLow;
+        this.low = low;
+        this.lowInclusive = lowInclusive;
+        this.hasHigh = hasHigh;
+        this.high = high;
+        this.highInclusive = highInclusive;
+        this.descending = descending;
+    }
+
+    // ----- bounds
+
+    private boolean tooLow(Object key) {
+        if (!hasLow) {
+            return false;
+        }
+        int cmp = treeComp.compare(key, low);
+        return (cmp < 0 || (cmp == 0 && !lowInclusive));
+    }
+
+    private boolean tooHigh(Object key) {
+        if (!hasHigh) {
+            return false;
+        }
+        int cmp = treeComp.compare(key, high);
+        return (cmp > 0 || (cmp == 0 && !highInclusive));
+    }
+
+    private boolean inRange(Object key) {
+        return (!tooLow(key) && !tooHigh(key));
+    }
+
+        // whether key may be a new bound of a narrower view: an inclusive
+        // bound must be in this view, while an exclusive one may also sit
+        // on either of its bounds, inclusive or not
+    private boolean inRange(Object key, boolean inclusive) {
+        if (inclusive) {
+            return inRange(key);
+        }
+        return ((!hasLow || treeComp.compare(key, low) >= 0) &&
+                (!hasHigh || treeComp.compare(key, high) <= 0));
+    }
+
+    private boolean isBounded() {
+        return (hasLow || hasHigh);
+    }
+
+        // keys given to put() and to sub-map factories must be checked
+        // explicitly, since null or foreign keys only fail in the comparator
+    private static void checkKey(Object key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+    }
+
+    // ----- navigation in ascending key order, clipped to the bounds
+
+    private Item absLowest() {
+        Item item = hasLow ? tree.ceilingItem(low, lowInclusive)
+                           : tree.firstItem();
+        return (item == null || tooHigh(item.key())) ? null : item;
+    }
+
+    private Item absHighest() {
+        Item item = hasHigh ? tree.floorItem(high, highInclusive)
+                            : tree.lastItem();
+        return (item == null || tooLow(item.key())) ? null : item;
+    }
+
+    private Item absCeiling(Object key, boolean inclusive) {
+        if (tooLow(key)) {
+            return absLowest();
+        }
+        Item item = tree.ceilingItem(key, inclusive);
+        return (item == null || tooHigh(item.key())) ? null : item;
+    }
+
+    private Item absFloor(Object key, boolean inclusive) {
+        if (tooHigh(key)) {
+            return absHighest();
+        }
+        Item item = tree.floorItem(key, inclusive);
+        return (item == null || tooLow(item.key())) ? null : item;
+    }
+
+    // ----- navigation in this view's direction
+
+    private Item first() {
+        return descending ? absHighest() : absLowest();
+    }
+
+    private Item last() {
+        return descending ? absLowest() : absHighest();
+    }
+
+    private Item ceiling(Object key, boolean inclusive) {
+        checkKey(key);
+        return descending ? absFloor(key, inclusive) : absCeiling(key, inclusive);
+    }
+
+    private Item floor(Object key, boolean inclusive) {
+        checkKey(key);
+        return descending ? absCeiling(key, inclusive) : absFloor(key, inclusive);
+    }
+
+    @SuppressWarnings("unchecked")
+    private K keyOf(Item item) {
+        if (item == null) {
+            throw new NoSuchElementException();
+        }
+        return (K) item.key();
+    }
+
+    private K keyOrNull(Item item) {
+        return (item == null) ? null : keyOf(item);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map.Entry<K,V> exportEntry(Item item) {
+        if (item == null) {
+            return null;
+        }
+        return new AbstractMap.SimpleImmutableEntry<K,V>((K) item.key(),
+                                                         (V) item.element());
+    }
+
+    // ----- Map
+
+    public int size() {
+        if (!isBounded()) {
+            return tree.size();
+        }
+        // The subtree counts give the number of keys on the far side of
+        // each bound in one descent apiece
+        int upToHigh = hasHigh ? tree.countBelow(high, highInclusive) : tree.size();
+        int belowLow = hasLow ? tree.countBelow(low, !lowInclusive) : 0;
+        return Math.max(0, upToHigh - belowLow);
+    }
+
+    public boolean isEmpty() {
+        return (first() == null);
+    }
+
+    public boolean containsKey(Object key) {
+        checkKey(key);
+        return (inRange(key) && tree.findItem(key) != null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        checkKey(key);
+        if (!inRange(key)) {
+            return null;
+        }
+        Item item = tree.findItem(key);
+        return (item == null) ? null : (V) item.element();
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        checkKey(key);
+        if (!inRange(key)) {
+            throw new IllegalArgumentException("key out of range");
+        }
+            // replace in place rather than adding a duplicate Item
+        Item item = tree.findItem(key);
+        if (item != null) {
+            V oldValue = (V) item.element();
+            item.setElement(value);
+            return oldValue;
+        }
+        tree.insertElement(key, value);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        checkKey(key);
+        if (!inRange(key) || tree.findItem(key) == null) {
+            return null;
+        }
+        return (V) tree.removeElement(key);
+    }
+
+    public void clear() {
+        if (!isBounded()) {
+            tree.clear();
+            return;
+        }
+        for (Iterator<Map.Entry<K,V>> it = entryIterator(); it.hasNext(); ) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    public Set<K> keySet() {
+        return navigableKeySet();
+    }
+
+    // ----- SortedMap
+
+    public java.util.Comparator<? super K> comparator() {
+        if (!descending) {
+            return keyComp;
+        }
+        if (keyComp == null) {
+            return Collections.reverseOrder();
+        }
+        return Collections.reverseOrder(keyComp);
+    }
+
+    public K firstKey() {
+        return keyOf(first());
+    }
+
+    public K lastKey() {
+        return keyOf(last());
+    }
+
+    public SortedMap<K,V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    public SortedMap<K,V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    public SortedMap<K,V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    // ----- NavigableMap
+
+    public Map.Entry<K,V> lowerEntry(K key) {
+        return exportEntry(floor(key, false));
+    }
+
+    public K lowerKey(K key) {
+        return keyOrNull(floor(key, false));
+    }
+
+    public Map.Entry<K,V> floorEntry(K key) {
+        return exportEntry(floor(key, true));
+    }
+
+    public K floorKey(K key) {
+        return keyOrNull(floor(key, true));
+    }
+
+    public Map.Entry<K,V> ceilingEntry(K key) {
+        return exportEntry(ceiling(key, true));
+    }
+
+    public K ceilingKey(K key) {
+        return keyOrNull(ceiling(key, true));
+    }
+
+    public Map.Entry<K,V> higherEntry(K key) {
+        return exportEntry(ceiling(key, false));
+    }
+
+    public K higherKey(K key) {
+        return keyOrNull(ceiling(key, false));
+    }
+
+    public Map.Entry<K,V> firstEntry() {
+        return exportEntry(first());
+    }
+
+    public Map.Entry<K,V> lastEntry() {
+        return exportEntry(last());
+    }
+
+    public Map.Entry<K,V> pollFirstEntry() {
+        Map.Entry<K,V> entry = exportEntry(first());
+        if (entry != null) {
+            tree.removeElement(entry.getKey());
+        }
+        return entry;
+    }
+
+    public Map.Entry<K,V> pollLastEntry() {
+        Map.Entry<K,V> entry = exportEntry(last());
+        if (entry != null) {
+            tree.removeElement(entry.getKey());
+        }
+        return entry;
+    }
+
+    public NavigableMap<K,V> descendingMap() {
+        return new TwoFourTreeMap<K,V>(this, hasLow, low, lowInclusive,
+                                       hasHigh, high, highInclusive,
+                                       !descending);
+    }
+
+    public NavigableSet<K> navigableKeySet() {
+        if (keySet == null) {
+            keySet = new KeySet<K>(this);
+        }
+        return keySet;
+    }
+
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    public NavigableMap<K,V> subMap(K fromKey, boolean fromInclusive,
+                                    K toKey, boolean toInclusive) {
+        checkKey(fromKey);
+        checkKey(toKey);
+        if (descending) {
+            return absSubMap(true, toKey, toInclusive, true, fromKey, fromInclusive);
+        }
+        return absSubMap(true, fromKey, fromInclusive, true, toKey, toInclusive);
+    }
+
+    public NavigableMap<K,V> headMap(K toKey, boolean inclusive) {
+        checkKey(toKey);
+        if (descending) {
+            return absSubMap(true, toKey, inclusive, false, null, false);
+        }
+        return absSubMap(false, null, false, true, toKey, inclusive);
+    }
+
+    public NavigableMap<K,V> tailMap(K fromKey, boolean inclusive) {
+        checkKey(fromKey);
+        if (descending) {
+            return absSubMap(false, null, false, true, fromKey, inclusive);
+        }
+        return absSubMap(true, fromKey, inclusive, false, null, false);
+    }
+
+    /**
+     * Narrows this view to new bounds, given in ascending order; a bound
+     * may not reach outside the current ones
+     */
+    private NavigableMap<K,V> absSubMap(boolean newHasLow, K newLow,
+                                        boolean newLowInclusive,
+                                        boolean newHasHigh, K newHigh,
+                                        boolean newHighInclusive) {
+        if (newHasLow && newHasHigh && treeComp.compare(newLow, newHigh) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        if (newHasLow) {
+            if (!inRange(newLow, newLowInclusive)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+        }
+        else {
+            newHasLow = hasLow;
+            newLow = low;
+            newLowInclusive = lowInclusive;
+        }
+        if (newHasHigh) {
+            if (!inRange(newHigh, newHighInclusive)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+        }
+        else {
+            newHasHigh = hasHigh;
+            newHigh = high;
+            newHighInclusive = highInclusive;
+        }
+        return new TwoFourTreeMap<K,V>(this, newHasLow, newLow, newLowInclusive,
+                                       newHasHigh, newHigh, newHighInclusive,
+                                       descending);
+    }
+
+    // ----- iteration
+
+    Iterator<Map.Entry<K,V>> entryIterator() {
+        return new EntryIterator();
+    }
+
+    Iterator<K> keyIterator() {
+        final Iterator<Map.Entry<K,V>> entries = entryIterator();
+        return new Iterator<K>() {
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+            public K next() {
+                return entries.next().getKey();
+            }
+            public void remove() {
+                entries.remove();
+            }
+        };
+    }
+
+    /**
+     * Walks the view in its direction with a cursor on the last entry
+     * returned; after remove() the cursor finds its place again by itself
+     */
+    private class EntryIterator implements Iterator<Map.Entry<K,V>> {
+        private final TwoFourTreeCursor cursor = tree.cursor();
+        private boolean started = false;
+        // true when the cursor has already moved to the entry next() returns
+        private boolean advanced = false;
+        private boolean atEnd = false;
+        private Item lastItem = null;
+
+        public boolean hasNext() {
+            if (!advanced) {
+                boolean valid;
+                if (!started) {
+                    Item item = first();
+                    valid = (item != null && cursor.seek(item.key()));
+                    started = true;
+                }
+                else {
+                    valid = !atEnd && (descending ? cursor.prev() : cursor.next());
+                }
+                atEnd = !valid || (descending ? tooLow(cursor.key())
+                                              : tooHigh(cursor.key()));
+                advanced = true;
+            }
+            return !atEnd;
+        }
+
+        public Map.Entry<K,V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            advanced = false;
+            lastItem = cursor.item();
+            return new ItemEntry(lastItem);
+        }
+
+        public void remove() {
+            if (lastItem == null) {
+                throw new IllegalStateException();
+            }
+            tree.removeElement(lastItem.key());
+            lastItem = null;
+        }
+    }
+
+    /**
+     * Entry that reads and writes through to the Item in the tree
+     */
+    private class ItemEntry implements Map.Entry<K,V> {
+        private final Item item;
+
+        ItemEntry(Item item) {
+            this.item = item;
+        }
+
+        @SuppressWarnings("unchecked")
+        public K getKey() {
+            return (K) item.key();
+        }
+
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            return (V) item.element();
+        }
+
+        @SuppressWarnings("unchecked")
+        public V setValue(V value) {
+            V oldValue = (V) item.element();
+            item.setElement(value);
+            return oldValue;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?,?> entry = (Map.Entry<?,?>) obj;
+            return eq(getKey(), entry.getKey()) && eq(getValue(), entry.getValue());
+        }
+
+        public int hashCode() {
+            Object key = getKey();
+            Object value = getValue();
+            return ((key == null) ? 0 : key.hashCode())
+                   ^ ((value == null) ? 0 : value.hashCode());
+        }
+
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+    private static boolean eq(Object obj1, Object obj2) {
+        return (obj1 == null) ? (obj2 == null) : obj1.equals(obj2);
+    }
+
+    private class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public Iterator<Map.Entry<K,V>> iterator() {
+            return entryIterator();
+        }
+
+        public int size() {
+            return TwoFourTreeMap.this.size();
+        }
+
+        public boolean isEmpty() {
+            return TwoFourTreeMap.this.isEmpty();
+        }
+
+        public void clear() {
+            TwoFourTreeMap.this.clear();
+        }
+
+        public boolean contains(Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?,?> entry = (Map.Entry<?,?>) obj;
+            Object key = entry.getKey();
+            if (key == null || !inRange(key)) {
+                return false;
+            }
+            Item item = tree.findItem(key);
+            return (item != null && eq(item.element(), entry.getValue()));
+        }
+
+        public boolean remove(Object obj) {
+            if (!contains(obj)) {
+                return false;
+            }
+            tree.removeElement(((Map.Entry<?,?>) obj).getKey());
+            return true;
+        }
+    }
+
+    /**
+     * NavigableSet view of the keys of a TwoFourTreeMap
+     */
+    private static class KeySet<E> extends AbstractSet<E>
+            implements NavigableSet<E> {
+        private final TwoFourTreeMap<E,?> map;
+
+        KeySet(TwoFourTreeMap<E,?> map) {
+            this.map = map;
+        }
+
+        public Iterator<E> iterator() {
+            return map.keyIterator();
+        }
+
+        public Iterator<E> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        public int size() {
+            return map.size();
+        }
+
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        public boolean contains(Object obj) {
+            return map.containsKey(obj);
+        }
+
+        public boolean remove(Object obj) {
+            if (!map.containsKey(obj)) {
+                return false;
+            }
+            map.remove(obj);
+            return true;
+        }
+
+        public void clear() {
+            map.clear();
+        }
+
+        public java.util.Comparator<? super E> comparator() {
+            return map.comparator();
+        }
+
+        public E first() {
+            return map.firstKey();
+        }
+
+        public E last() {
+            return map.lastKey();
+        }
+
+        public E lower(E e) {
+            return map.lowerKey(e);
+        }
+
+        public E floor(E e) {
+            return map.floorKey(e);
+        }
+
+        public E ceiling(E e) {
+            return map.ceilingKey(e);
+        }
+
+        public E higher(E e) {
+            return map.higherKey(e);
+        }
+
+        public E pollFirst() {
+            Map.Entry<E,?> entry = map.pollFirstEntry();
+            return (entry == null) ? null : entry.getKey();
+        }
+
+        public E pollLast() {
+            Map.Entry<E,?> entry = map.pollLastEntry();
+            return (entry == null) ? null : entry.getKey();
+        }
+
+        public NavigableSet<E> descendingSet() {
+            return map.descendingMap().navigableKeySet();
+        }
+
+        public NavigableSet<E> subSet(E fromElement, boolean fromInclusive,
+                                      E toElement, boolean toInclusive) {
+            return map.subMap(fromElement, fromInclusive,
+                              toElement, toInclusive).navigableKeySet();
+        }
+
+        public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+            return map.headMap(toElement, inclusive).navigableKeySet();
+        }
+
+        public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+            return map.tailMap(fromElement, inclusive).navigableKeySet();
+        }
+
+        public SortedSet<E> subSet(E fromElement, E toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        public SortedSet<E> headSet(E toElement) {
+            return headSet(toElement, false);
+        }
+
+        public SortedSet<E> tailSet(E fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+}
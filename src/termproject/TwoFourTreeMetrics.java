@@ -0,0 +1,276 @@
+package termproject;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This class collects the metrics of one TwoFourTree.
+ *
+ * Title: Term Project 2-4 Trees
+ * @version 1.0
+ * File: TwoFourTreeMetrics.java
+ * Description: Once a tree's metrics are turned on with
+ * TwoFourTree.setMetricsEnabled(), the tree reports to one of these: the
+ * latency of every findElement(), insertElement() and removeElement() in a
+ * LatencyHistogram, each split, transfer and fusion, and every call to its
+ * comparator. Splits are also counted per insert, and the longest run of
+ * them, a split cascading from a leaf to the root, is kept, since that is
+ * what makes one insert much slower than the rest.
+ *
+ * The counts are StripedCounters, so trees written by different threads
+ * never share a counter cell. The gauges (height, nodes, items, fill
+ * factor) are read from the tree when asked for; the node count is kept as
+ * nodes are made and dropped, by whichever thread holds the tree for
+ * writing. register() publishes the metrics as a JMX MBean.
+ */
+
+public class TwoFourTreeMetrics implements TwoFourTreeMetricsMBean {
+
+    // Variable declaration
+    private final TwoFourTree tree;
+    private final LatencyHistogram findLatency = new LatencyHistogram();
+    private final LatencyHistogram insertLatency = new LatencyHistogram();
+    private final LatencyHistogram removeLatency = new LatencyHistogram();
+    private final StripedCounter splits = new StripedCounter();
+    private final StripedCounter rootSplits = new StripedCounter();
+    private final StripedCounter transfers = new StripedCounter();
+    private final StripedCounter fusions = new StripedCounter();
+    private final StripedCounter comparisons = new StripedCounter();
+    // Written only by the thread changing the tree
+    private volatile int nodeCount;
+    private volatile int longestSplitCascade = 0;
+
+    /**
+     * Creates metrics for a tree, counting the nodes it already has
+     * @param tree
+     * @param nodeCount nodes in the tree now
+     */
+    TwoFourTreeMetrics(TwoFourTree tree, int nodeCount) {
+        this.tree = tree;
+        this.nodeCount = nodeCount;
+    }
+
+    /**
+     * Publishes the metrics under the name
+     * termproject:type=TwoFourTree,name=<i>name</i>
+     * @param name
+     * @return the name registered
+     * @exception JMException if the name is taken or not valid
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName(
+                "termproject:type=TwoFourTree,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    // ----- reported by the tree
+
+    void recordFind(long nanos) {
+        findLatency.record(nanos);
+    }
+
+    void recordInsert(long nanos) {
+        insertLatency.record(nanos);
+    }
+
+    void recordRemove(long nanos) {
+        removeLatency.record(nanos);
+    }
+
+        // splits made by one insert; the last one split the root if
+        // rootSplit is set
+    void recordSplits(int count, boolean rootSplit) {
+        splits.add(count);
+        if (rootSplit) {
+            rootSplits.increment();
+        }
+        if (count > longestSplitCascade) {
+            longestSplitCascade = count;
+        }
+    }
+
+    void recordTransfer() {
+        transfers.increment();
+    }
+
+    void recordFusion() {
+        fusions.increment();
+    }
+
+    void nodeCreated() {
+        nodeCount++;
+    }
+
+    void nodeDropped() {
+        nodeCount--;
+    }
+
+    void treeCleared() {
+        nodeCount = 0;
+    }
+
+        // after a join, split or set operation, which does not report its
+        // nodes one at a time
+    void nodesCounted(int count) {
+        nodeCount = count;
+    }
+
+        // wraps the tree's comparator so every call is counted
+    Comparator countingComparator(Comparator comp) {
+        return new CountingComparator(comp);
+    }
+
+        // the comparator a countingComparator() wraps; comp itself if it
+        // is not one
+    static Comparator uncounted(Comparator comp) {
+        if (comp instanceof CountingComparator) {
+            return ((CountingComparator) comp).comp;
+        }
+        return comp;
+    }
+
+    // ----- TwoFourTreeMetricsMBean
+
+    public long getFinds() {
+        return findLatency.getCount();
+    }
+
+    public long getInserts() {
+        return insertLatency.getCount();
+    }
+
+    public long getRemoves() {
+        return removeLatency.getCount();
+    }
+
+    public long getSplits() {
+        return splits.sum();
+    }
+
+    public long getRootSplits() {
+        return rootSplits.sum();
+    }
+
+    public int getLongestSplitCascade() {
+        return longestSplitCascade;
+    }
+
+    public long getTransfers() {
+        return transfers.sum();
+    }
+
+    public long getFusions() {
+        return fusions.sum();
+    }
+
+    public long getComparisons() {
+        return comparisons.sum();
+    }
+
+    public double getComparisonsPerOperation() {
+        long operations = getFinds() + getInserts() + getRemoves();
+        return (operations == 0) ? 0 : (double) getComparisons() / operations;
+    }
+
+    public int getHeight() {
+        int height = 0;
+        for (TFNode node = tree.root(); node != null; node = node.getChild(0)) {
+            height++;
+        }
+        return height;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getItemCount() {
+        return tree.size();
+    }
+
+    public double getFillFactor() {
+        int nodes = nodeCount;
+        if (nodes == 0) {
+            return 0;
+        }
+        return (double) tree.size() / ((long) nodes * (tree.order() - 1));
+    }
+
+    public long getFindLatencyMedian() {
+        return findLatency.getPercentile(0.5);
+    }
+
+    public long getFindLatency99() {
+        return findLatency.getPercentile(0.99);
+    }
+
+    public long getFindLatencyMax() {
+        return findLatency.getMax();
+    }
+
+    public long getInsertLatencyMedian() {
+        return insertLatency.getPercentile(0.5);
+    }
+
+    public long getInsertLatency99() {
+        return insertLatency.getPercentile(0.99);
+    }
+
+    public long getInsertLatencyMax() {
+        return insertLatency.getMax();
+    }
+
+    public long getRemoveLatencyMedian() {
+        return removeLatency.getPercentile(0.5);
+    }
+
+    public long getRemoveLatency99() {
+        return removeLatency.getPercentile(0.99);
+    }
+
+    public long getRemoveLatencyMax() {
+        return removeLatency.getMax();
+    }
+
+    /**
+     * Passes every call on to the tree's own comparator, counting it
+     */
+    private class CountingComparator implements Comparator {
+        private final Comparator comp;
+
+        CountingComparator(Comparator comp) {
+            this.comp = comp;
+        }
+
+        public int compare(Object obj1, Object obj2) {
+            comparisons.increment();
+            return comp.compare(obj1, obj2);
+        }
+
+        public boolean isLessThan(Object obj1, Object obj2) {
+            return (compare(obj1, obj2) < 0);
+        }
+
+        public boolean isLessThanOrEqualTo(Object obj1, Object obj2) {
+            return (compare(obj1, obj2) <= 0);
+        }
+
+        public boolean isGreaterThan(Object obj1, Object obj2) {
+            return (compare(obj1, obj2) > 0);
+        }
+
+        public boolean isGreaterThanOrEqualTo(Object obj1, Object obj2) {
+            return (compare(obj1, obj2) >= 0);
+        }
+
+        public boolean isEqual(Object obj1, Object obj2) {
+            return (compare(obj1, obj2) == 0);
+        }
+
+        public boolean isComparable(Object obj) {
+            return comp.isComparable(obj);
+        }
+    }
+}
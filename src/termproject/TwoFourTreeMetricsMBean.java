@@ -0,0 +1,39 @@
+package termproject;
+
+/**
+ * Title:        Term Project 2-4 Trees
+ * Description:  The attributes of TwoFourTreeMetrics that are published
+ *               over JMX.  Counts run from when metrics were turned on;
+ *               latencies are in nanoseconds, to within a factor of two.
+ * @version 1.0
+ */
+
+public interface TwoFourTreeMetricsMBean {
+
+    public long getFinds();
+    public long getInserts();
+    public long getRemoves();
+
+    public long getSplits();
+    public long getRootSplits();
+    public int getLongestSplitCascade();
+    public long getTransfers();
+    public long getFusions();
+    public long getComparisons();
+    public double getComparisonsPerOperation();
+
+    public int getHeight();
+    public int getNodeCount();
+    public int getItemCount();
+    public double getFillFactor();
+
+    public long getFindLatencyMedian();
+    public long getFindLatency99();
+    public long getFindLatencyMax();
+    public long getInsertLatencyMedian();
+    public long getInsertLatency99();
+    public long getInsertLatencyMax();
+    public long getRemoveLatencyMedian();
+    public long getRemoveLatency99();
+    public long getRemoveLatencyMax();
+}
@@ -0,0 +1,293 @@
+package termproject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+/**
+ * Title:        Term Project 2-4 Trees
+ * Description:  Writes a whole TwoFourTree out in a compact binary format
+ *               and reads it back.  The format is
+ *
+ *                   int     MAGIC ("24SN")
+ *                   int     VERSION
+ *                   int     order of the tree
+ *                   int     number of items
+ *                   int     height, the number of levels; 0 when empty
+ *                   then every node in post-order:
+ *                       varint  number of items, times two, plus one
+ *                               for internal nodes
+ *                       varint  distance back from the start of this
+ *                               record to the start of each child's
+ *                               record, for internal nodes
+ *                       for each item:
+ *                           varint  key length, then the key's bytes
+ *                           varint  element length, then its bytes
+ *                   long    offset of the root's record
+ *
+ *               where a varint is 7 bits per byte, low bits first, and the
+ *               key and element bytes come from pluggable Codecs.
+ *
+ *               Writing children before their parent means every distance
+ *               is known by the time it is needed, so write() makes one
+ *               pass, encodes each key and element once and keeps only
+ *               the path to the current node.  The distances and the
+ *               trailing root offset let MappedTwoFourTree search the file
+ *               in place, jumping straight to the child it wants; read()
+ *               instead streams the records, links each node's items in
+ *               between its children's, and hands them in key order to
+ *               TwoFourTree.bulkLoad, so loading takes no key comparisons
+ *               beyond the bulk load's check of the order.
+ * @version 1.0
+ */
+
+public class TwoFourTreeSnapshot {
+
+    public static final int MAGIC = 0x3234534E;    // "24SN"
+    public static final int VERSION = 2;
+        // bytes before the first node
+    public static final int HEADER_BYTES = 20;
+        // bytes after the last node
+    public static final int TRAILER_BYTES = 8;
+
+    private TwoFourTreeSnapshot() {
+    }
+
+    /**
+     * Writes a tree to a stream; the stream is flushed but not closed
+     * @param tree
+     * @param stream
+     * @param keyCodec
+     * @param elementCodec
+     * @exception IOException
+     */
+    public static void write(TwoFourTree tree, OutputStream stream,
+                             Codec keyCodec, Codec elementCodec)
+            throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(stream));
+        TFNode root = tree.root();
+        int height = 0;
+        for (TFNode node = root; node != null;
+             node = node.isLeaf() ? null : node.getChild(0)) {
+            height++;
+        }
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(tree.order());
+        out.writeInt(tree.size());
+        out.writeInt(height);
+        long rootStart = HEADER_BYTES;
+        if (root != null) {
+            rootStart = new Writer(out, keyCodec, elementCodec, height,
+                                   tree.order()).writeNode(root, 0);
+        }
+        out.writeLong(rootStart);
+        out.flush();
+    }
+
+    /**
+     * Reads a tree written by write()
+     * @param stream
+     * @param comp
+     * @param keyCodec
+     * @param elementCodec
+     * @return a new tree holding the items read
+     * @exception IOException if the stream is not a snapshot this version
+     * can read
+     */
+    public static TwoFourTree read(InputStream stream, Comparator comp,
+                                   Codec keyCodec, Codec elementCodec)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a tree snapshot");
+        }
+        if (in.readInt() != VERSION) {
+            throw new IOException("Unsupported snapshot version");
+        }
+        int order = in.readInt();
+        int size = in.readInt();
+        int height = in.readInt();
+        if (size < 0 || height < 0 || (size == 0) != (height == 0)) {
+            throw new IOException("Corrupt snapshot header");
+        }
+
+        if (height > 0 && (order < 3 || height > size)) {
+            throw new IOException("Corrupt snapshot header");
+        }
+
+        // Items go into the list as the records come, children before
+        // their parent; next[] then threads them into key order.  Each
+        // finished subtree not yet claimed by its parent waits on the
+        // stack as the first and last index of its thread.
+        ArrayList<Item> items = new ArrayList<Item>(size);
+        int[] next = new int[size];
+        int[] firsts = new int[height * order + 1];
+        int[] lasts = new int[firsts.length];
+        int pending = 0;
+        while (items.size() < size) {
+            long header = readVarint(in);
+            int numItems = (int) (header >>> 1);
+            boolean internal = ((header & 1) != 0);
+            if (numItems < 1 || numItems > size - items.size() ||
+                    (internal && pending < numItems + 1)) {
+                throw new IOException("Corrupt snapshot node");
+            }
+            if (internal) {
+                for (int i = 0; i <= numItems; i++) {
+                    readVarint(in);
+                }
+            }
+            int start = items.size();
+            for (int i = 0; i < numItems; i++) {
+                Object key = decode(in, keyCodec);
+                items.add(new Item(key, decode(in, elementCodec)));
+            }
+
+            int first = start;
+            int last = start + numItems - 1;
+            if (internal) {
+                pending -= numItems + 1;
+                first = firsts[pending];
+                for (int i = 0; i < numItems; i++) {
+                    next[lasts[pending + i]] = start + i;
+                    next[start + i] = firsts[pending + i + 1];
+                }
+                last = lasts[pending + numItems];
+            }
+            else {
+                for (int i = start; i < last; i++) {
+                    next[i] = i + 1;
+                }
+            }
+            if (pending == firsts.length) {
+                throw new IOException("Corrupt snapshot node");
+            }
+            firsts[pending] = first;
+            lasts[pending] = last;
+            pending++;
+        }
+        if (pending > 1) {
+            throw new IOException("Snapshot holds " + pending +
+                                  " subtrees without a root");
+        }
+
+        ArrayList<Item> ordered = new ArrayList<Item>(size);
+        for (int i = (size > 0) ? firsts[0] : 0; ordered.size() < size;
+             i = next[i]) {
+            ordered.add(items.get(i));
+        }
+        TwoFourTree tree = new TwoFourTree(comp, order);
+        tree.bulkLoad(ordered.iterator(), 1.0);
+        return tree;
+    }
+
+    private static Object decode(DataInputStream in, Codec codec)
+            throws IOException {
+        byte[] bytes = new byte[(int) readVarint(in)];
+        in.readFully(bytes);
+        return codec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    public static void writeVarint(DataOutput out, long value)
+            throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarint(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    public static int varintLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Writes nodes in post-order, counting the bytes as it goes so each
+     * node can give the distances back to its children's records.  Those
+     * start positions are the only thing kept between records: one row
+     * per level, for the path down to the current node.
+     */
+    private static class Writer {
+        private final DataOutputStream out;
+        private final Codec keyCodec;
+        private final Codec elementCodec;
+        private final long[][] childStarts;
+        private final ByteArrayOutputStream scratch = new ByteArrayOutputStream();
+        private final DataOutputStream scratchOut = new DataOutputStream(scratch);
+        private long position = HEADER_BYTES;
+
+        Writer(DataOutputStream out, Codec keyCodec, Codec elementCodec,
+               int height, int order) {
+            this.out = out;
+            this.keyCodec = keyCodec;
+            this.elementCodec = elementCodec;
+            childStarts = new long[height][order];
+        }
+
+        // writes the subtree under node; returns where node's record starts
+        long writeNode(TFNode node, int depth) throws IOException {
+            int numItems = node.getNumItems();
+            boolean internal = !node.isLeaf();
+            if (internal) {
+                for (int i = 0; i <= numItems; i++) {
+                    childStarts[depth][i] = writeNode(node.getChild(i), depth + 1);
+                }
+            }
+            long start = position;
+            writeCount(2L * numItems + (internal ? 1 : 0));
+            if (internal) {
+                for (int i = 0; i <= numItems; i++) {
+                    writeCount(start - childStarts[depth][i]);
+                }
+            }
+            for (int i = 0; i < numItems; i++) {
+                Item item = node.getItem(i);
+                writeEncoded(keyCodec, item.key());
+                writeEncoded(elementCodec, item.element());
+            }
+            return start;
+        }
+
+        private void writeCount(long value) throws IOException {
+            writeVarint(out, value);
+            position += varintLength(value);
+        }
+
+        private void writeEncoded(Codec codec, Object obj) throws IOException {
+            scratch.reset();
+            codec.write(scratchOut, obj);
+            scratchOut.flush();
+            writeCount(scratch.size());
+            scratch.writeTo(out);
+            position += scratch.size();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package termproject;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * This class splits the items of a TwoFourTree into parts for parallel
+ * streams.
+ *
+ * Title: Term Project 2-4 Trees
+ * @version 1.0
+ * File: TwoFourTreeSpliterator.java
+ * Description: A spliterator covers a run of one node's children and the
+ * items between them, in key order: pair i is child i followed by item i,
+ * and the last pair of an internal node is its last child alone. trySplit()
+ * hands the first half of the pairs to a new spliterator; once a single
+ * pair is left it hands off the child's whole subtree and keeps the item.
+ * The parts therefore follow the tree's own shape, cost nothing to cut, and
+ * their sizes come exactly from the subtree item counts, so the stream
+ * knows how much work each part holds.
+ *
+ * Items are visited in key order. The tree must not be changed while a
+ * stream over it runs; a change is detected when a part finishes, and
+ * reported with a ConcurrentModificationException.
+ */
+
+public class TwoFourTreeSpliterator implements Spliterator<Item> {
+
+    // Variable declaration
+    private final TwoFourTree tree;
+    private final int expectedModCount;
+    private final TFNode node;
+    // Pairs from lo up to but not including hi are covered
+    private int lo;
+    private final int hi;
+    // Set when the child of pair lo has been handed off already
+    private boolean firstChildDone;
+    // Stack for tryAdvance(); null until the first call. stackPair[d] is the
+    // next pair to visit in stackNodes[d], and stackOnItem[d] is set once
+    // its child has been visited
+    private TFNode[] stackNodes;
+    private int[] stackPair;
+    private int[] stackEnd;
+    private boolean[] stackOnItem;
+    private int depth;
+
+    /**
+     * Creates a spliterator over every item in the tree
+     * @param tree
+     */
+    public TwoFourTreeSpliterator(TwoFourTree tree) {
+        this(tree, tree.modCount(), tree.root(), 0, pairs(tree.root()), false);
+    }
+
+    private TwoFourTreeSpliterator(TwoFourTree tree, int expectedModCount,
+                                   TFNode node, int lo, int hi,
+                                   boolean firstChildDone) {
+        this.tree = tree;
+        this.expectedModCount = expectedModCount;
+        this.node = node;
+        this.lo = lo;
+        this.hi = hi;
+        this.firstChildDone = firstChildDone;
+    }
+
+    // number of pairs in a node; 0 for no node
+    private static int pairs(TFNode node) {
+        if (node == null) {
+            return 0;
+        }
+        return node.isLeaf() ? node.getNumItems() : node.getNumItems() + 1;
+    }
+
+    public Spliterator<Item> trySplit() {
+        // A part that has started walking keeps the rest
+        if (stackNodes != null || lo >= hi) {
+            return null;
+        }
+        if (hi - lo >= 2) {
+            int mid = (lo + hi) >>> 1;
+            TwoFourTreeSpliterator prefix = new TwoFourTreeSpliterator(
+                    tree, expectedModCount, node, lo, mid, firstChildDone);
+            lo = mid;
+            firstChildDone = false;
+            return prefix;
+        }
+
+        // One pair left: give away its child's subtree, keep its item
+        if (node.isLeaf() || firstChildDone) {
+            return null;
+        }
+        TFNode child = node.getChild(lo);
+        firstChildDone = true;
+        if (lo == node.getNumItems()) {
+            // The last pair has no item, so this part is now empty
+            lo = hi;
+        }
+        return new TwoFourTreeSpliterator(tree, expectedModCount, child, 0,
+                                          pairs(child), false);
+    }
+
+    public long estimateSize() {
+        if (stackNodes != null) {
+            return countStack();
+        }
+        long count = 0;
+        for (int i = lo; i < hi; i++) {
+            count += pairSize(node, i, i == lo && firstChildDone);
+        }
+        return count;
+    }
+
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL;
+    }
+
+    public void forEachRemaining(Consumer<? super Item> action) {
+        if (stackNodes != null) {
+            while (tryAdvance(action)) {
+            }
+            return;
+        }
+        // Not started: walk the pairs recursively, which needs no stack
+        for (int i = lo; i < hi; i++) {
+            if (!node.isLeaf() && !(i == lo && firstChildDone)) {
+                visitSubtree(node.getChild(i), action);
+            }
+            if (i < node.getNumItems()) {
+                action.accept(node.getItem(i));
+            }
+        }
+        lo = hi;
+        checkForComodification();
+    }
+
+    public boolean tryAdvance(Consumer<? super Item> action) {
+        if (stackNodes == null) {
+            stackNodes = new TFNode[16];
+            stackPair = new int[16];
+            stackEnd = new int[16];
+            stackOnItem = new boolean[16];
+            depth = 0;
+            if (lo < hi) {
+                push(node, lo, hi, firstChildDone);
+            }
+            lo = hi;
+        }
+        while (depth > 0) {
+            int top = depth - 1;
+            TFNode current = stackNodes[top];
+            int pair = stackPair[top];
+            if (pair >= stackEnd[top]) {
+                stackNodes[top] = null;
+                depth--;
+                continue;
+            }
+            if (!stackOnItem[top]) {
+                stackOnItem[top] = true;
+                if (!current.isLeaf()) {
+                    TFNode child = current.getChild(pair);
+                    push(child, 0, pairs(child), false);
+                }
+                continue;
+            }
+            stackOnItem[top] = false;
+            stackPair[top]++;
+            if (pair < current.getNumItems()) {
+                action.accept(current.getItem(pair));
+                return true;
+            }
+        }
+        checkForComodification();
+        return false;
+    }
+
+    // visits every item under node in key order
+    private void visitSubtree(TFNode start, Consumer<? super Item> action) {
+        int numItems = start.getNumItems();
+        if (start.isLeaf()) {
+            for (int i = 0; i < numItems; i++) {
+                action.accept(start.getItem(i));
+            }
+            return;
+        }
+        for (int i = 0; i < numItems; i++) {
+            visitSubtree(start.getChild(i), action);
+            action.accept(start.getItem(i));
+        }
+        visitSubtree(start.getChild(numItems), action);
+    }
+
+    private void push(TFNode pushed, int from, int to, boolean childDone) {
+        if (depth == stackNodes.length) {
+            int length = depth * 2;
+            stackNodes = Arrays.copyOf(stackNodes, length);
+            stackPair = Arrays.copyOf(stackPair, length);
+            stackEnd = Arrays.copyOf(stackEnd, length);
+            stackOnItem = Arrays.copyOf(stackOnItem, length);
+        }
+        stackNodes[depth] = pushed;
+        stackPair[depth] = from;
+        stackEnd[depth] = to;
+        stackOnItem[depth] = childDone;
+        depth++;
+    }
+
+    // items not yet visited by tryAdvance()
+    private long countStack() {
+        long count = 0;
+        for (int d = 0; d < depth; d++) {
+            TFNode current = stackNodes[d];
+            for (int i = stackPair[d]; i < stackEnd[d]; i++) {
+                count += pairSize(current, i, i == stackPair[d] && stackOnItem[d]);
+            }
+        }
+        return count;
+    }
+
+    // items in pair i of a node, leaving out its child if childDone
+    private static long pairSize(TFNode pairNode, int i, boolean childDone) {
+        long count = (i < pairNode.getNumItems()) ? 1 : 0;
+        if (!pairNode.isLeaf() && !childDone) {
+            count += pairNode.getChild(i).getSubtreeItems();
+        }
+        return count;
+    }
+
+    private void checkForComodification() {
+        if (tree.modCount() != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package termproject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Title:        Term Project 2-4 Trees
+ * Description:  An append-only log of the inserts and removes made to a
+ *               Dictionary, written ahead of the changes themselves so they
+ *               can be replayed after a crash.
+ *
+ *               Each record is
+ *
+ *                   int     length of the body
+ *                   int     CRC-32 of the body
+ *                   body:   long lsn, byte op, key, and for an insert the
+ *                           element, both written by their Codecs
+ *
+ *               where the lsn (log sequence number) counts up from 1 and
+ *               keeps counting across checkpoints.  A record whose length
+ *               or checksum does not add up marks the end of the log; that
+ *               is what a write cut short by a crash looks like.
+ *
+ *               append() only adds the record to a buffer in memory.  A
+ *               flusher thread writes the buffer out and forces it to disk
+ *               once it holds batchSize records, or once its oldest record
+ *               has waited maxDelayMillis, whichever comes first; callers
+ *               wait for their record with awaitDurable().  Every writer
+ *               that arrives while one force is in progress shares the next
+ *               one, so the number of forces per second stays bounded by
+ *               the disk while the writes per second are not.  That holds
+ *               even with a maxDelayMillis of 0; a delay only pays when the
+ *               writers are many and the disk is quick, and otherwise adds
+ *               its length to every write.
+ * @version 1.0
+ */
+
+public class WriteAheadLog implements Closeable {
+
+    public static final byte INSERT = 1;
+    public static final byte REMOVE = 2;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final Codec keyCodec;
+    private final Codec elementCodec;
+    private final int batchSize;
+    private final long maxDelayNanos;
+
+        // all of the below are guarded by this log's monitor
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private ByteArrayOutputStream spare = new ByteArrayOutputStream();
+    private int pendingCount = 0;
+    private long firstPendingNanos;
+    private long lastLsn = 0;
+    private long durableLsn = 0;
+    private boolean syncRequested = false;
+    private boolean recovered = false;
+    private boolean closing = false;
+    private IOException failure;
+    private Thread flusher;
+
+        // scratch space for encoding one record
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Opens a log file, creating it if it does not exist; recover() must be
+     * called before anything is appended
+     * @param path
+     * @param keyCodec
+     * @param elementCodec
+     * @param batchSize records that trigger a force at once
+     * @param maxDelayMillis longest a record waits for its force
+     * @exception IOException
+     */
+    public WriteAheadLog(File path, Codec keyCodec, Codec elementCodec,
+                         int batchSize, long maxDelayMillis) throws IOException {
+        if (batchSize < 1 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException("Bad group commit settings");
+        }
+        this.keyCodec = keyCodec;
+        this.elementCodec = elementCodec;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = maxDelayMillis * 1000000L;
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+    }
+
+    /**
+     * Applies the records after a given lsn to a dictionary, cuts off any
+     * torn record at the end, and readies the log for appending
+     * @param afterLsn records up to this one are already in target
+     * @param target
+     * @return number of records applied
+     * @exception IOException
+     */
+    public synchronized int recover(long afterLsn, Dictionary target)
+            throws IOException {
+        if (recovered) {
+            throw new TwoFourTreeException("Log already recovered");
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(0))));
+        long validEnd = 0;
+        long lsn = afterLsn;
+        int applied = 0;
+        while (true) {
+            byte[] body;
+            try {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < 9 || length > channel.size() - validEnd - 8) {
+                    break;
+                }
+                body = new byte[length];
+                in.readFully(body);
+                crc.reset();
+                crc.update(body, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                validEnd += 8 + length;
+            }
+            catch (EOFException exc) {
+                break;
+            }
+
+            DataInputStream bodyIn = new DataInputStream(
+                    new ByteArrayInputStream(body));
+            long recordLsn = bodyIn.readLong();
+            byte op = bodyIn.readByte();
+            Object key = keyCodec.read(bodyIn);
+            if (recordLsn <= afterLsn) {
+                continue;
+            }
+            if (op == INSERT) {
+                target.insertElement(key, elementCodec.read(bodyIn));
+            }
+            else if (op == REMOVE) {
+                target.removeElement(key);
+            }
+            else {
+                throw new IOException("Bad log record at lsn " + recordLsn);
+            }
+            lsn = recordLsn;
+            applied++;
+        }
+
+        // Whatever follows the last good record was never acknowledged
+        channel.truncate(validEnd);
+        channel.position(validEnd);
+        channel.force(true);
+        lastLsn = lsn;
+        durableLsn = lsn;
+        recovered = true;
+        return applied;
+    }
+
+    /**
+     * Adds a record to the log
+     * @param op INSERT or REMOVE
+     * @param key
+     * @param element for an insert; ignored for a remove
+     * @return lsn of the record, to pass to awaitDurable()
+     * @exception TwoFourTreeException if the log has failed or is closed
+     */
+    public synchronized long append(byte op, Object key, Object element) {
+        checkOpen();
+        long lsn = lastLsn + 1;
+        try {
+            record.reset();
+            recordOut.writeLong(lsn);
+            recordOut.writeByte(op);
+            keyCodec.write(recordOut, key);
+            if (op == INSERT) {
+                elementCodec.write(recordOut, element);
+            }
+            recordOut.flush();
+        }
+        catch (IOException exc) {
+            throw new TwoFourTreeException("Cannot encode log record", exc);
+        }
+        crc.reset();
+        crc.update(record.toByteArray(), 0, record.size());
+
+        DataOutputStream out = new DataOutputStream(pending);
+        try {
+            out.writeInt(record.size());
+            out.writeInt((int) crc.getValue());
+            record.writeTo(out);
+        }
+        catch (IOException exc) {
+            throw new TwoFourTreeException("Cannot buffer log record", exc);
+        }
+        lastLsn = lsn;
+        if (pendingCount++ == 0) {
+            firstPendingNanos = System.nanoTime();
+        }
+        if (flusher == null) {
+            flusher = new Thread(new Runnable() {
+                public void run() {
+                    flushLoop();
+                }
+            }, "WriteAheadLog flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+        notifyAll();
+        return lsn;
+    }
+
+    /**
+     * Waits until a record is on disk
+     * @param lsn as returned by append()
+     * @exception TwoFourTreeException if the log failed before it got there
+     */
+    public synchronized void awaitDurable(long lsn) {
+        boolean interrupted = false;
+        while (durableLsn < lsn) {
+            if (failure != null) {
+                throw new TwoFourTreeException("Log write failed", failure);
+            }
+            if (closing && flusher == null) {
+                throw new TwoFourTreeException("Log closed");
+            }
+            try {
+                wait();
+            }
+            catch (InterruptedException exc) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Forces every appended record to disk without waiting out the delay
+     */
+    public void sync() {
+        long lsn;
+        synchronized (this) {
+            lsn = lastLsn;
+            syncRequested = true;
+            notifyAll();
+        }
+        awaitDurable(lsn);
+    }
+
+    /**
+     * Returns the lsn of the last record appended
+     * @return last lsn; 0 if there have been none
+     */
+    public synchronized long lastLsn() {
+        return lastLsn;
+    }
+
+    /**
+     * Empties the log once a checkpoint covers every record in it; the
+     * caller must keep appends out until this returns
+     * @exception IOException
+     */
+    public void truncate() throws IOException {
+        sync();
+        synchronized (this) {
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Forces what is left to disk and closes the file
+     * @exception IOException
+     */
+    public void close() throws IOException {
+        Thread thread;
+        synchronized (this) {
+            closing = true;
+            notifyAll();
+            thread = flusher;
+        }
+        if (thread != null) {
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                }
+                catch (InterruptedException exc) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            flusher = null;
+            notifyAll();
+        }
+        file.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void checkOpen() {
+        if (!recovered) {
+            throw new TwoFourTreeException("Log not recovered");
+        }
+        if (closing) {
+            throw new TwoFourTreeException("Log closed");
+        }
+        if (failure != null) {
+            throw new TwoFourTreeException("Log write failed", failure);
+        }
+    }
+
+        // body of the flusher thread: gathers a batch, writes it and forces
+        // it outside the monitor, then wakes the writers it covered
+    private void flushLoop() {
+        while (true) {
+            ByteArrayOutputStream batch;
+            long batchLsn;
+            synchronized (this) {
+                try {
+                    while (pendingCount == 0 && !closing) {
+                        wait();
+                    }
+                    while (pendingCount > 0 && pendingCount < batchSize &&
+                           !closing && !syncRequested) {
+                        long left = firstPendingNanos + maxDelayNanos - System.nanoTime();
+                        if (left <= 0) {
+                            break;
+                        }
+                        wait(left / 1000000, (int) (left % 1000000));
+                    }
+                }
+                catch (InterruptedException exc) {
+                    // only close() stops the flusher
+                    continue;
+                }
+                if (pendingCount == 0) {
+                    syncRequested = false;
+                    notifyAll();
+                    if (closing) {
+                        return;
+                    }
+                    continue;
+                }
+                batch = pending;
+                pending = spare;
+                spare = batch;
+                pendingCount = 0;
+                batchLsn = lastLsn;
+                syncRequested = false;
+            }
+
+            IOException error = null;
+            try {
+                ByteBuffer buf = ByteBuffer.wrap(batch.toByteArray());
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+                channel.force(false);
+            }
+            catch (IOException exc) {
+                error = exc;
+            }
+
+            synchronized (this) {
+                batch.reset();
+                if (error != null) {
+                    failure = error;
+                    notifyAll();
+                    return;
+                }
+                durableLsn = batchLsn;
+                notifyAll();
+            }
+        }
+    }
+}